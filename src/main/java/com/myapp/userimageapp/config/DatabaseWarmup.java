@@ -0,0 +1,44 @@
+package com.myapp.userimageapp.config;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Reads the indexes used on the request path once at startup, so their pages are in the database cache
+// before the first request instead of being read from disk by it (db.warmup.enabled, on in the durable profile)
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "db.warmup.enabled", havingValue = "true")
+public class DatabaseWarmup {
+
+    // each query is answered from one index without reading table rows (checked with EXPLAIN on H2):
+    // login/duplicate check, token lookup, local image listing (named, H2 would pick the owner foreign key index), image id
+    private static final List<String> WARMUP_QUERIES = List.of(
+            "select count(username) from user_model where username >= ''",
+            "select count(username) from imgur_token where username >= ''",
+            "select count(owner_id) from image_record use index (idx_image_record_owner_created) where owner_id >= 0",
+            "select count(image_id) from image_record where image_id >= ''");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long start = System.nanoTime();
+        for (String query : WARMUP_QUERIES) {
+            try {
+                jdbcTemplate.queryForObject(query, Long.class);
+            } catch (Exception ex) {
+                log.warn("Warm-up query failed: {}", ex.getMessage());
+            }
+        }
+        log.info("Database warm-up done in {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,139 @@
+package com.myapp.userimageapp.config;
+
+import java.util.Map;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ContainerPausingBackOffHandler;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.listener.ListenerContainerPauseService;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.backoff.ExponentialBackOff;
+import org.springframework.util.backoff.FixedBackOff;
+
+import com.myapp.userimageapp.model.UploadJob;
+import com.myapp.userimageapp.service.AsyncUploadService;
+import com.myapp.userimageapp.service.ImgurUnavailableException;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Kafka plumbing for async uploads (imgur.upload.async.enabled=true): the job topic and its dead letter topic,
+// a JSON producer for UploadJob, and the listener factory used by the upload workers
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "imgur.upload.async.enabled", havingValue = "true")
+public class KafkaUploadConfig {
+
+    @Value("${imgur.upload.async.topic:imgur-uploads}")
+    private String topic;
+
+    @Value("${imgur.upload.async.partitions:6}")
+    private int partitions;
+
+    @Value("${imgur.upload.async.concurrency:3}")
+    private int concurrency;
+
+    @Value("${imgur.upload.async.retry-initial-interval-ms:1000}")
+    private long retryInitialInterval;
+
+    @Value("${imgur.upload.async.retry-max-elapsed-ms:60000}")
+    private long retryMaxElapsed;
+
+    @Value("${imgur.upload.async.max-deferral-ms:86400000}")
+    private long maxDeferral;
+
+    @Bean
+    public NewTopic uploadJobTopic() {
+        return TopicBuilder.name(topic).partitions(partitions).build();
+    }
+
+    // failed jobs end up here (same partition as the original), with the exception in the headers
+    @Bean
+    public NewTopic uploadJobDeadLetterTopic() {
+        return TopicBuilder.name(topic + "-dlt").partitions(partitions).build();
+    }
+
+    @Bean
+    public ProducerFactory<String, UploadJob> uploadJobProducerFactory(KafkaProperties kafkaProperties) {
+        Map<String, Object> config = kafkaProperties.buildProducerProperties(null);
+        return new DefaultKafkaProducerFactory<>(config, new StringSerializer(), new JsonSerializer<>());
+    }
+
+    @Bean
+    public KafkaTemplate<String, UploadJob> uploadJobKafkaTemplate(ProducerFactory<String, UploadJob> uploadJobProducerFactory) {
+        return new KafkaTemplate<>(uploadJobProducerFactory);
+    }
+
+    @Bean
+    public ConsumerFactory<String, UploadJob> uploadJobConsumerFactory(KafkaProperties kafkaProperties) {
+        Map<String, Object> config = kafkaProperties.buildConsumerProperties(null);
+        JsonDeserializer<UploadJob> jsonDeserializer = new JsonDeserializer<>(UploadJob.class, false);
+        jsonDeserializer.addTrustedPackages(UploadJob.class.getPackageName());
+        // an unreadable message goes to the dead letter topic instead of failing the consumer forever
+        return new DefaultKafkaConsumerFactory<>(config, new StringDeserializer(), new ErrorHandlingDeserializer<>(jsonDeserializer));
+    }
+
+    // Retries with exponential backoff, then hands the job to the dead letter topic and deletes its spooled file.
+    // A job whose user has no Imgur token can't succeed later, so that goes there straight away.
+    // A job Imgur can't take yet (out of credits, circuit open) is retried once Retry-After has passed, typically the
+    // credit reset, for up to max-deferral-ms. While waiting the consumer is paused rather than asleep, so it keeps
+    // polling and stays in the group; the other jobs on its partitions wait too, they'd be turned away all the same.
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, UploadJob> uploadJobListenerFactory(
+            ConsumerFactory<String, UploadJob> uploadJobConsumerFactory, KafkaTemplate<String, UploadJob> uploadJobKafkaTemplate,
+            AsyncUploadService asyncUploadService, TaskScheduler taskScheduler) {
+        ExponentialBackOff backOff = new ExponentialBackOff(retryInitialInterval, 2.0);
+        backOff.setMaxElapsedTime(retryMaxElapsed);
+        DeadLetterPublishingRecoverer deadLetter = new DeadLetterPublishingRecoverer(uploadJobKafkaTemplate);
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler((record, ex) -> {
+            deadLetter.accept(record, ex);
+            // null when the message couldn't be deserialized
+            if (record.value() instanceof UploadJob job) {
+                asyncUploadService.discard(job);
+            }
+        }, backOff, new ContainerPausingBackOffHandler(new ListenerContainerPauseService(null, taskScheduler)));
+        errorHandler.setBackOffFunction((record, ex) -> {
+            ImgurUnavailableException unavailable = unavailable(ex);
+            if (unavailable == null) {
+                return null;
+            }
+            long wait = unavailable.getRetryAfterSeconds() * 1000;
+            return new FixedBackOff(wait, Math.max(1, maxDeferral / wait));
+        });
+        errorHandler.addNotRetryableExceptions(IllegalStateException.class);
+
+        ConcurrentKafkaListenerContainerFactory<String, UploadJob> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(uploadJobConsumerFactory);
+        factory.setConcurrency(concurrency);
+        factory.setCommonErrorHandler(errorHandler);
+        log.info("Async uploads on topic {} ({} partitions, {} consumers)", topic, partitions, concurrency);
+        return factory;
+    }
+
+    // The ImgurUnavailableException behind a listener failure, null for other failures
+    private static ImgurUnavailableException unavailable(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ImgurUnavailableException unavailable) {
+                return unavailable;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,103 @@
+package com.myapp.userimageapp.config;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@Configuration
+public class RestClientConfig {
+
+    //pool sizing, the pool is the max-in-flight limit towards Imgur
+    @Value("${imgur.http.max-total:200}")
+    private int maxTotal;
+
+    @Value("${imgur.http.max-per-route:100}")
+    private int maxPerRoute;
+
+    //timeouts in milliseconds
+    @Value("${imgur.http.connect-timeout:2000}")
+    private long connectTimeout;
+
+    @Value("${imgur.http.read-timeout:15000}")
+    private long readTimeout;
+
+    @Value("${imgur.http.acquire-timeout:1000}")
+    private long acquireTimeout;
+
+    @Value("${imgur.http.idle-timeout:30000}")
+    private long idleTimeout;
+
+    @Value("${imgur.http.time-to-live:300000}")
+    private long timeToLive;
+
+    // Shared connection pool for every Imgur call, keeps TLS connections alive between requests
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager imgurConnectionManager() {
+        log.info("Creating Imgur connection pool (maxTotal={}, maxPerRoute={})", maxTotal, maxPerRoute);
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.LAX)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeout))
+                        .setTimeToLive(TimeValue.ofMilliseconds(timeToLive))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient imgurHttpClient(PoolingHttpClientConnectionManager imgurConnectionManager) {
+        return HttpClients.custom()
+                .setConnectionManager(imgurConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(acquireTimeout))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeout))
+                        .build())
+                .evictIdleConnections(TimeValue.ofMilliseconds(idleTimeout))
+                .evictExpiredConnections()
+                .build();
+    }
+
+    // RestTemplate injected into ImageService and AuthService
+    @Bean
+    public RestTemplate restTemplate(CloseableHttpClient imgurHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(imgurHttpClient));
+    }
+
+    // Pool usage exposed under /actuator/metrics/imgur.http.pool.*
+    @Bean
+    public MeterBinder imgurConnectionPoolMetrics(PoolingHttpClientConnectionManager imgurConnectionManager) {
+        return registry -> {
+            Gauge.builder("imgur.http.pool.leased", imgurConnectionManager, pool -> pool.getTotalStats().getLeased())
+                    .description("Connections currently in use")
+                    .register(registry);
+            Gauge.builder("imgur.http.pool.available", imgurConnectionManager, pool -> pool.getTotalStats().getAvailable())
+                    .description("Idle keep-alive connections ready for reuse")
+                    .register(registry);
+            Gauge.builder("imgur.http.pool.pending", imgurConnectionManager, pool -> pool.getTotalStats().getPending())
+                    .description("Requests waiting for a connection")
+                    .register(registry);
+            Gauge.builder("imgur.http.pool.max", imgurConnectionManager, pool -> pool.getTotalStats().getMax())
+                    .description("Maximum number of pooled connections")
+                    .register(registry);
+        };
+    }
+}
@@ -0,0 +1,147 @@
+package com.myapp.userimageapp.controller;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.myapp.userimageapp.security.JwtAuthenticationFilter;
+import com.myapp.userimageapp.service.AuthService;
+import com.myapp.userimageapp.service.ImageRecordService;
+import com.myapp.userimageapp.service.ImgurUnavailableException;
+import com.myapp.userimageapp.service.ReactiveImageService;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+// Same image endpoints as User under /api/rx, served by ReactiveImageService. Uploads and deletes are recorded
+// in the local image records as on the blocking endpoints.
+@Slf4j
+@RestController
+@RequestMapping("/api/rx")
+@ConditionalOnProperty(name = "imgur.reactive.enabled", havingValue = "true")
+public class ReactiveUser {
+
+    @Autowired
+    private ReactiveImageService reactiveImageService;
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private ImageRecordService imageRecordService;
+
+    // Imgur calls turned away by the circuit breaker, bulkhead or a long rate limit, the client is told when to come back
+    @ExceptionHandler(ImgurUnavailableException.class)
+    public ResponseEntity<String> imgurUnavailable(ImgurUnavailableException ex) {
+        log.warn("Imgur unavailable: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(ex.getMessage());
+    }
+
+    // the reactive call pool and its queue are full
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> overloaded(RejectedExecutionException ex) {
+        log.warn("Reactive image calls overloaded, request rejected");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many requests, try again");
+    }
+
+    // Upload image to Imgur (use OAuth access token)
+    @PostMapping("/upload-image")
+    public Mono<ResponseEntity<String>> uploadImage(@RequestParam("file") MultipartFile file, @RequestHeader("Authorization") String authHeader) {
+        log.info("In reactive upload process..");
+        String accessToken = extractAccessTokenFromAuthHeader(authHeader);
+        if (accessToken == null) {
+            return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).body("User not authenticated"));
+        }
+        String username = JwtAuthenticationFilter.authenticatedUsername();
+        return reactiveImageService.uploadImage(file, accessToken, username)
+                .map(image -> {
+                    recordUpload(username, image);
+                    return ResponseEntity.ok((String) image.get("link"));
+                })
+                .defaultIfEmpty(ResponseEntity.status(500).body("Failed to upload image"));
+    }
+
+    // View image (use OAuth access token)
+    @GetMapping("/{imageId}")
+    public Mono<ResponseEntity<Map<String, Object>>> getImage(@PathVariable String imageId, @RequestHeader("Authorization") String authHeader) {
+        log.info("In reactive image retrieval..");
+        String accessToken = extractAccessTokenFromAuthHeader(authHeader);
+        if (accessToken == null) {
+            return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+        }
+        return reactiveImageService.getImage(imageId, accessToken)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.status(404).build());
+    }
+
+    // Delete image from Imgur (use OAuth access token)
+    @DeleteMapping("/{deleteHash}")
+    public Mono<ResponseEntity<String>> deleteImage(@PathVariable String deleteHash, @RequestHeader("Authorization") String authHeader) {
+        log.info("In reactive image deletion..");
+        String accessToken = extractAccessTokenFromAuthHeader(authHeader);
+        if (accessToken == null) {
+            return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).body("User not authenticated"));
+        }
+        String username = JwtAuthenticationFilter.authenticatedUsername();
+        return reactiveImageService.deleteImage(deleteHash, accessToken, username)
+                .map(isDeleted -> {
+                    if (!isDeleted) {
+                        return ResponseEntity.status(404).body("Image not found");
+                    }
+                    imageRecordService.removeImage(username, deleteHash);
+                    return ResponseEntity.ok("Image deleted successfully");
+                });
+    }
+
+    // View all images of a user, the same JSON array and error responses as User
+    @GetMapping("/user/images")
+    public Mono<ResponseEntity<List<Map<String, Object>>>> getAllImages(@RequestHeader("Authorization") String authHeader) {
+        log.info("In reactive all images retrieval..");
+        String accessToken = extractAccessTokenFromAuthHeader(authHeader);
+        if (accessToken == null) {
+            return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Collections.singletonList(Collections.singletonMap("error", "User not authenticated"))));
+        }
+        return reactiveImageService.getUserImages(accessToken, JwtAuthenticationFilter.authenticatedUsername())
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.status(500).body(Collections.emptyList()));
+    }
+
+    private void recordUpload(String username, Map<String, Object> image) {
+        try {
+            imageRecordService.recordUpload(username, image);
+        } catch (Exception ex) {
+            // the image is on Imgur either way, only the local listing misses it
+            log.error("Recording image failed: {}", ex.getMessage());
+        }
+    }
+
+    // Imgur access token of the session user, null without a session
+    private String extractAccessTokenFromAuthHeader(String authHeader) {
+        String username = JwtAuthenticationFilter.authenticatedUsername();
+        if (username == null) {
+            log.warn("Invalid token!");
+            return null;
+        }
+        return authService.getAccessTokenForUser(username);
+    }
+}
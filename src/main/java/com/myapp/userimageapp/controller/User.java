@@ -1,32 +1,65 @@
 package com.myapp.userimageapp.controller;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.myapp.userimageapp.model.BulkRegistrationResult;
+import com.myapp.userimageapp.model.ImgurTokenResponse;
+import com.myapp.userimageapp.model.UploadJobStatus;
+import com.myapp.userimageapp.model.UploadResult;
 import com.myapp.userimageapp.model.UserModel;
+import com.myapp.userimageapp.model.UserRegistration;
+import com.myapp.userimageapp.repository.ImageSummary;
+import com.myapp.userimageapp.security.JwtAuthenticationFilter;
+import com.myapp.userimageapp.security.JwtService;
+import com.myapp.userimageapp.security.LoginAttemptThrottle;
+import com.myapp.userimageapp.service.AsyncUploadService;
 import com.myapp.userimageapp.service.AuthService;
+import com.myapp.userimageapp.service.BatchUploadService;
+import com.myapp.userimageapp.service.ImageContentCache;
+import com.myapp.userimageapp.service.ImageProxyService;
+import com.myapp.userimageapp.service.ImageRecordService;
 import com.myapp.userimageapp.service.ImageService;
+import com.myapp.userimageapp.service.ImgurUnavailableException;
+import com.myapp.userimageapp.service.ThumbnailService;
+import com.myapp.userimageapp.service.UploadJobRegistry;
+import com.myapp.userimageapp.service.UploadProgress;
 import com.myapp.userimageapp.service.UserService;
 
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -44,6 +77,32 @@ public class User {
     @Autowired
     private AuthService authService;
 
+    @Autowired
+    private BatchUploadService batchUploadService;
+
+    @Autowired
+    private ImageRecordService imageRecordService;
+
+    // only present with imgur.upload.async.enabled=true
+    @Autowired(required = false)
+    private AsyncUploadService asyncUploadService;
+
+    @Autowired
+    private UploadJobRegistry uploadJobRegistry;
+
+    // only present with imgur.proxy.enabled=true
+    @Autowired(required = false)
+    private ImageProxyService imageProxyService;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private LoginAttemptThrottle loginAttemptThrottle;
+
     //we set these values in applications.properties as env variables 
     @Value("${imgur.clientId}")
     private String imgurClientId;
@@ -54,30 +113,130 @@ public class User {
     @Value("${imgur.redirectUri}")
     private String imgurRedirectUri;
 
+    @Value("${imgur.batch.max-files:200}")
+    private int batchMaxFiles;
+
+    @Value("${imgur.batch.timeout:600000}")
+    private long batchTimeout;
+
+    @Value("${user.bulk.max-users:100}")
+    private int bulkMaxUsers;
+
+    // request attributes of Tomcat's sendfile support
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // how long a file handed to sendfile stays pinned, Tomcat opens it right after the request returns
+    @Value("${imgur.proxy.sendfile-pin-ms:60000}")
+    private long sendfilePinMillis;
+
+    @Value("${imgur.jobs.stream-timeout-ms:1800000}")
+    private long jobStreamTimeout;
+
+    // Imgur calls turned away by the circuit breaker, bulkhead or a long rate limit, the client is told when to come back
+    @ExceptionHandler(ImgurUnavailableException.class)
+    public ResponseEntity<String> imgurUnavailable(ImgurUnavailableException ex) {
+        log.warn("Imgur unavailable: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(ex.getMessage());
+    }
+
     // Register User API call
     @PostMapping("/register")
     public ResponseEntity<String> registerUser(@RequestParam String firstname, @RequestParam String lastname, @RequestParam String username, @RequestParam String password) {
-        if (userService.authenticateUser(username, password) != null) {
+        if (userService.isUserAlreadyRegistered(username)) {
             log.warn("Username {} already exists. User needs to authorize.", username);
             return ResponseEntity.badRequest().body("Username already exists!Proceed to authorize.");
         }
-        userService.registerUser(firstname, lastname, username, password);
+        try {
+            userService.registerUser(firstname, lastname, username, password);
+        } catch (RejectedExecutionException ex) {
+            log.warn("Password hashing overloaded, registration rejected");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many registrations, try again");
+        }
         log.info("User {} successfully registered.", username);
         return ResponseEntity.ok("User successfully registered, proceed to authorize");
     }
 
-    // Redirect user to Imgur's OAuth authorization page
+    // Bulk registration for onboarding (admins only), body is a JSON array of {firstname, lastname, username, password}
+    @PostMapping("/register/bulk")
+    public ResponseEntity<BulkRegistrationResult> registerUsers(@RequestBody List<UserRegistration> registrations) {
+        log.info("In bulk registration process..");
+        if (registrations.size() > bulkMaxUsers) {
+            log.warn("Bulk registration of {} users exceeds limit of {}", registrations.size(), bulkMaxUsers);
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            BulkRegistrationResult result = userService.registerUsers(registrations);
+            log.info("{} users successfully registered.", result.registered());
+            return ResponseEntity.ok(result);
+        } catch (DataIntegrityViolationException ex) {
+            // a username was registered concurrently, nothing from this request was saved
+            log.warn("Bulk registration conflicted with another registration");
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (RejectedExecutionException ex) {
+            log.warn("Password hashing overloaded, bulk registration rejected");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    // Login API call, returns a session token to send as "Authorization: Bearer <token>"
+    @PostMapping("/login")
+    public ResponseEntity<Map<String, Object>> login(@RequestParam String username, @RequestParam String password, HttpServletRequest request) {
+        log.info("In login process..");
+        // with server.forward-headers-strategy=native Tomcat resolves this from X-Forwarded-For, trusting it only from
+        // the proxies in server.tomcat.remoteip.internal-proxies, so clients can't pick their own address
+        String clientIp = request.getRemoteAddr();
+        // counted before any lookup or hashing, so guessing passwords costs us next to nothing and parallel
+        // attempts can't get past the limits while the first ones are still being checked
+        if (!loginAttemptThrottle.tryAcquire(username, clientIp)) {
+            log.warn("Too many failed logins for {} from {}", username, clientIp);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(loginAttemptThrottle.retryAfterSeconds(username, clientIp)))
+                    .body(Collections.singletonMap("error", "Too many failed logins, try again later"));
+        }
+        try {
+            if (userService.authenticateUser(username, password) == null) {
+                loginAttemptThrottle.recordFailure(username, clientIp);
+                log.warn("Login failed for {}", username);
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Collections.singletonMap("error", "Invalid username or password"));
+            }
+        } catch (RejectedExecutionException ex) {
+            loginAttemptThrottle.release(username, clientIp);
+            log.warn("Password hashing overloaded, login rejected");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Collections.singletonMap("error", "Too many logins, try again"));
+        } catch (RuntimeException ex) {
+            // not the caller's failure, e.g. the database is down
+            loginAttemptThrottle.release(username, clientIp);
+            throw ex;
+        }
+        loginAttemptThrottle.recordSuccess(username, clientIp);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("token", jwtService.issueToken(username));
+        body.put("tokenType", "Bearer");
+        body.put("expiresIn", jwtService.getExpirationSeconds());
+        log.info("User {} logged in.", username);
+        return ResponseEntity.ok(body);
+    }
+
+    // Redirect the session user to Imgur's OAuth authorization page
     @GetMapping("/authorize")
-    public ResponseEntity<String> authorizeUser(@RequestParam String username) {
+    public ResponseEntity<String> authorizeUser(@RequestParam(required = false) String username) {
         log.info("In authorize process..");
-        if (!userService.isUserAlreadyRegistered(username)) {
-            log.warn("User not registered!");
-            return ResponseEntity.badRequest().body("Please register first.");
+        String sessionUser = JwtAuthenticationFilter.authenticatedUsername();
+        if (sessionUser == null || (username != null && !username.equals(sessionUser))) {
+            log.warn("Authorization not started by the user's own session!");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Log in as the user to authorize");
         }
+        // a one-time state tied to the session user, the callback stores the tokens for whoever started the flow
         String authorizationUrl = "https://api.imgur.com/oauth2/authorize" +
                 "?client_id=" + imgurClientId +
                 "&response_type=code" +
-                "&redirect_uri=" +  URLEncoder.encode(imgurRedirectUri, StandardCharsets.UTF_8);
+                "&redirect_uri=" +  URLEncoder.encode(imgurRedirectUri, StandardCharsets.UTF_8) +
+                "&state=" + authService.startAuthorization(sessionUser);
         
         log.info("User Authorized successfully!");
 
@@ -88,14 +247,19 @@ public class User {
 
     //After authorize call, this callback method is called to get access token for requests to Imgur
     @GetMapping("/callback")
-    public ResponseEntity<String> callback(@RequestParam("code") String authorizationCode) {
+    public ResponseEntity<String> callback(@RequestParam("code") String authorizationCode, @RequestParam(value = "state", required = false) String state) {
         log.info("In callback process..");
+        String username = authService.completeAuthorization(state);
+        if (username == null) {
+            log.warn("Callback with an unknown or already used state!");
+            return ResponseEntity.badRequest().body("Unknown or expired authorization, start again from /api/authorize");
+        }
         try {
-            // Exchange the authorization code for an access token
-            String accessToken = authService.exchangeAuthCodeForAccessToken(authorizationCode);
-            // Store the access token in your system 
+            // Exchange the authorization code and store the tokens for the user who started the flow
+            ImgurTokenResponse tokens = authService.exchangeAuthCode(authorizationCode);
+            authService.storeTokens(username, tokens);
             log.info("Callback success. Access token provided.");
-            return ResponseEntity.ok("Access Token: " + accessToken);
+            return ResponseEntity.ok("Access Token: " + tokens.accessToken());
         } catch (Exception e) {
             log.error("Error exchanging authorization code");
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -113,14 +277,152 @@ public class User {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("User not authenticated");
         }
 
+        // with a session the upload is tracked as a job, so its progress can be followed on /api/upload-jobs/stream
+        String username = JwtAuthenticationFilter.authenticatedUsername();
+        UploadJobRegistry.Job job = username != null
+                ? uploadJobRegistry.start(username, null, file.getOriginalFilename(), file.getSize())
+                : null;
         try {
-            Map<String, Object> image = imageService.uploadImage(file, accessToken);
+            Map<String, Object> image;
+            if (job == null) {
+                image = imageService.uploadImage(file, accessToken);
+            } else {
+                job.uploading();
+                image = imageService.uploadImage(file, accessToken, username, job);
+            }
+            if (image == null) {
+                log.error("Upload failed!");
+                if (job != null) {
+                    job.failed("Imgur upload failed");
+                }
+                return ResponseEntity.status(500).body("Failed to upload image");
+            }
+            if (job != null) {
+                job.done((String) image.get("link"));
+            }
+            recordUpload(image);
             log.info("Image upload successful!");
             return ResponseEntity.ok((String) image.get("link"));
         } catch (IOException ex) {
             log.error("Upload failed!");
+            if (job != null) {
+                job.failed(ex.getMessage());
+            }
             return ResponseEntity.status(500).body("Failed to upload image: " + ex.getMessage());
+        } catch (ImgurUnavailableException ex) {
+            if (job != null) {
+                job.failed(ex.getMessage());
+            }
+            throw ex;
+        }
+    }
+
+    // Queue an upload (?async=true): the file is spooled and uploaded by a background worker, the response carries the job id.
+    // Needs a session token, the worker uploads with the user's stored Imgur token.
+    @PostMapping(value = "/upload-image", params = "async=true")
+    public ResponseEntity<Map<String, Object>> uploadImageAsync(@RequestParam("file") MultipartFile file) {
+        log.info("In async upload process..");
+        String username = JwtAuthenticationFilter.authenticatedUsername();
+        if (username == null) {
+            log.warn("User not authenticated!");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Collections.singletonMap("error", "User not authenticated"));
+        }
+        if (asyncUploadService == null) {
+            return ResponseEntity.badRequest().body(Collections.singletonMap("error", "Async uploads are disabled"));
+        }
+
+        try {
+            String jobId = asyncUploadService.submit(file, username);
+            log.info("Upload job {} queued.", jobId);
+            return ResponseEntity.accepted().body(Collections.singletonMap("jobId", jobId));
+        } catch (IOException ex) {
+            log.error("Queueing upload failed!");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Collections.singletonMap("error", "Failed to queue upload: " + ex.getMessage()));
+        }
+    }
+
+    // Upload image to Imgur by streaming the raw request body (Content-Type image/* or application/octet-stream),
+    // the image is never fully held in memory or spooled to disk
+    @PostMapping("/upload-image/stream")
+    public ResponseEntity<String> uploadImageStream(InputStream imageStream, @RequestParam(value = "filename", required = false) String filename,
+            @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType, @RequestHeader("Authorization") String authHeader) {
+        log.info("In streaming upload process..");
+        String accessToken = extractAccessTokenFromAuthHeader(authHeader);
+        if (accessToken == null) {
+            log.warn("User not authenticated!");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("User not authenticated");
+        }
+
+        String username = JwtAuthenticationFilter.authenticatedUsername();
+        Map<String, Object> image;
+        try {
+            image = imageService.uploadImageStream(imageStream, filename, contentType, accessToken, username, UploadProgress.NONE);
+        } catch (IOException ex) {
+            log.error("Streaming upload failed!");
+            return ResponseEntity.status(500).body("Failed to upload image: " + ex.getMessage());
+        }
+        recordUpload(image);
+        log.info("Image upload successful!");
+        return ResponseEntity.ok((String) image.get("link"));
+    }
+
+    // Upload many images in one request, results are streamed back as NDJSON as each upload completes
+    @PostMapping("/upload-images")
+    public ResponseEntity<ResponseBodyEmitter> uploadImages(@RequestParam("files") List<MultipartFile> files, @RequestHeader("Authorization") String authHeader) {
+        log.info("In batch upload process..");
+        String accessToken = extractAccessTokenFromAuthHeader(authHeader);
+        if (accessToken == null) {
+            log.warn("User not authenticated!");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (files.size() > batchMaxFiles) {
+            log.warn("Batch of {} files exceeds limit of {}", files.size(), batchMaxFiles);
+            return ResponseEntity.badRequest().build();
+        }
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(batchTimeout);
+        String username = JwtAuthenticationFilter.authenticatedUsername();
+        batchUploadService.uploadImages(files, username, accessToken, username, result -> {
+            if (result.getId() != null) {
+                recordUpload(username, result);
+            }
+            synchronized (emitter) {
+                try {
+                    emitter.send(result, MediaType.APPLICATION_JSON);
+                    emitter.send("\n", MediaType.TEXT_PLAIN);
+                } catch (IOException ex) {
+                    log.warn("Client went away during batch upload: {}", ex.getMessage());
+                }
+            }
+        }, emitter::complete);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
+
+    // Status of an upload job of the session user
+    @GetMapping("/upload-jobs/{jobId}")
+    public ResponseEntity<UploadJobStatus> getUploadJob(@PathVariable String jobId) {
+        String username = JwtAuthenticationFilter.authenticatedUsername();
+        if (username == null) {
+            log.warn("User not authenticated!");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        UploadJobStatus status = uploadJobRegistry.find(username, jobId);
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    // Server-sent events with every state and progress change of the session user's upload jobs,
+    // starting with the jobs already known, so clients don't have to poll
+    @GetMapping(value = "/upload-jobs/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamUploadJobs() {
+        String username = JwtAuthenticationFilter.authenticatedUsername();
+        if (username == null) {
+            log.warn("User not authenticated!");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
+        return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(uploadJobRegistry.subscribe(username, jobStreamTimeout));
     }
 
     // View image (use OAuth access token)
@@ -143,6 +445,144 @@ public class User {
         return ResponseEntity.ok(image);
     }
 
+    // Image bytes served from the local disk cache (imgur.proxy.enabled=true) instead of Imgur's link.
+    // Supports If-None-Match and a single byte range, several ranges get the whole image.
+    @GetMapping("/{imageId}/content")
+    public ResponseEntity<StreamingResponseBody> getImageContent(@PathVariable String imageId, @RequestHeader("Authorization") String authHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange, HttpServletRequest request) {
+        log.info("In image content retrieval..");
+        String accessToken = extractAccessTokenFromAuthHeader(authHeader);
+        if (accessToken == null) {
+            log.warn("User not authenticated");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (imageProxyService == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        ImageContentCache.Content content;
+        try {
+            content = imageProxyService.getContent(imageId, accessToken);
+        } catch (IOException ex) {
+            log.error("Image content retrieval failed: {}", ex.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+        }
+        if (content == null) {
+            log.warn("Image not found!");
+            return ResponseEntity.notFound().build();
+        }
+        // the content is pinned, it's released here unless the response below takes it over
+        boolean handedOver = false;
+        try {
+            String etag = content.getEtag();
+            if (ifNoneMatch != null && etagMatches(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+
+            long size = content.getSize();
+            long start = 0;
+            long end = size - 1;
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            // a range is only honoured while the client's copy (If-Range) is still the current one,
+            // a malformed Range header is ignored and the whole image is sent
+            List<HttpRange> ranges = List.of();
+            if (range != null && (ifRange == null || ifRange.equals(etag))) {
+                try {
+                    ranges = HttpRange.parseRanges(range);
+                } catch (IllegalArgumentException ex) {
+                    log.warn("Ignoring malformed Range header: {}", range);
+                }
+            }
+            if (ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(size);
+                end = ranges.get(0).getRangeEnd(size);
+                // well formed but starting past the last byte
+                if (start >= size || end < start) {
+                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size).build();
+                }
+                response = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            }
+            String contentType = content.getContentType() != null ? content.getContentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+            response.eTag(etag)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .contentType(MediaType.parseMediaType(contentType))
+                    .contentLength(end - start + 1);
+
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                // Tomcat opens the file by name and writes it to the socket itself (sendfile) once the headers are out,
+                // the pin keeps the file from being deleted until then
+                request.setAttribute(SENDFILE_FILENAME, content.getFile().toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, end + 1);
+                content.releaseAfter(sendfilePinMillis);
+                handedOver = true;
+                return response.build();
+            }
+            // the file is opened before returning, the body reads from this channel whatever happens to the entry
+            FileChannel channel = content.open();
+            long position = start;
+            long count = end - start + 1;
+            handedOver = true;
+            return response.body(out -> {
+                try (channel) {
+                    ImageContentCache.Content.transferTo(channel, position, count, out);
+                } finally {
+                    content.release();
+                }
+            });
+        } catch (IOException ex) {
+            log.error("Image content retrieval failed: {}", ex.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+        } finally {
+            if (!handedOver) {
+                content.release();
+            }
+        }
+    }
+
+    // Downscaled variant of an image, size is the longest side in pixels and one of imgur.thumbnails.sizes
+    @GetMapping("/{imageId}/thumbnail")
+    public ResponseEntity<byte[]> getThumbnail(@PathVariable String imageId, @RequestParam(defaultValue = "320") int size,
+            @RequestHeader("Authorization") String authHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        log.info("In thumbnail retrieval..");
+        String accessToken = extractAccessTokenFromAuthHeader(authHeader);
+        if (accessToken == null) {
+            log.warn("User not authenticated");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (!thumbnailService.isSupportedSize(size)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        ThumbnailService.Thumbnail thumbnail;
+        try {
+            thumbnail = thumbnailService.getThumbnail(imageId, size, accessToken);
+        } catch (RejectedExecutionException ex) {
+            log.warn("Thumbnail queue full, request rejected");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (IOException ex) {
+            log.error("Thumbnail generation failed: {}", ex.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+        }
+        if (thumbnail == null) {
+            log.warn("Image not found!");
+            return ResponseEntity.notFound().build();
+        }
+        if (ifNoneMatch != null && etagMatches(ifNoneMatch, thumbnail.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(thumbnail.etag()).build();
+        }
+        log.info("Thumbnail retrieved successfully!");
+        return ResponseEntity.ok()
+                .eTag(thumbnail.etag())
+                .contentType(MediaType.parseMediaType(thumbnail.contentType()))
+                .body(thumbnail.bytes());
+    }
+
     // Delete image from Imgur (use OAuth access token)
     @DeleteMapping("/{deleteHash}")
     public ResponseEntity<String> deleteImage(@PathVariable String deleteHash, @RequestHeader("Authorization") String authHeader) {
@@ -154,8 +594,12 @@ public class User {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("User not authenticated");
         }
 
-        Boolean isDeleted = imageService.deleteImage(deleteHash, accessToken);
+        String username = JwtAuthenticationFilter.authenticatedUsername();
+        Boolean isDeleted = imageService.deleteImage(deleteHash, accessToken, username);
         if (isDeleted) {
+            if (username != null) {
+                imageRecordService.removeImage(username, deleteHash);
+            }
             log.info("Image deleted successfully!");
             return ResponseEntity.ok("Image deleted successfully");
         } else {
@@ -176,7 +620,7 @@ public class User {
         }
 
         try {
-            List<Map<String, Object>> userImages = imageService.getUserImages(accessToken);
+            List<Map<String, Object>> userImages = imageService.getUserImages(accessToken, JwtAuthenticationFilter.authenticatedUsername());
             log.info("User images retrieved successfully!");
             return ResponseEntity.ok(userImages);
         } catch (Exception e) {
@@ -185,6 +629,66 @@ public class User {
         }
     }
 
+    // View one page of a user's images, X-Next-Page is set while more pages may follow
+    @GetMapping(value = "/user/images", params = "page")
+    public ResponseEntity<List<Map<String, Object>>> getImagesPage(@RequestParam int page, @RequestHeader("Authorization") String authHeader) {
+        log.info("In paged images retrieval process..");
+        String accessToken = extractAccessTokenFromAuthHeader(authHeader);
+        if (accessToken == null) {
+            log.warn("User not authenticated!");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Collections.singletonList(Collections.singletonMap("error", "User not authenticated")));
+        }
+        if (page < 0) {
+            return ResponseEntity.badRequest().body(Collections.emptyList());
+        }
+
+        try {
+            List<Map<String, Object>> userImages = imageService.getUserImagesPage(accessToken, page);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (userImages != null && userImages.size() >= ImageService.IMGUR_PAGE_SIZE) {
+                response.header("X-Next-Page", String.valueOf(page + 1));
+            }
+            log.info("User images page retrieved successfully!");
+            return response.body(userImages);
+        } catch (Exception e) {
+            log.error("Images page retrieval failed!");
+            return ResponseEntity.status(500).body(Collections.emptyList());
+        }
+    }
+
+    // View one page of the session user's images from the local image records, newest first (no Imgur call)
+    @GetMapping("/user/images/local")
+    public ResponseEntity<List<ImageSummary>> getLocalImages(@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "50") int size) {
+        log.info("In local images retrieval process..");
+        String username = JwtAuthenticationFilter.authenticatedUsername();
+        if (username == null) {
+            log.warn("User not authenticated!");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (page < 0) {
+            return ResponseEntity.badRequest().body(Collections.emptyList());
+        }
+        Page<ImageSummary> images = imageRecordService.listImages(username, page, size);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().header("X-Total-Count", String.valueOf(images.getTotalElements()));
+        if (images.hasNext()) {
+            response.header("X-Next-Page", String.valueOf(page + 1));
+        }
+        return response.body(images.getContent());
+    }
+
+    // Stream all images of a user as NDJSON, written as each Imgur page arrives
+    @GetMapping(value = "/user/images/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllImages(@RequestHeader("Authorization") String authHeader) {
+        log.info("In streamed images retrieval process..");
+        String accessToken = extractAccessTokenFromAuthHeader(authHeader);
+        if (accessToken == null) {
+            log.warn("User not authenticated!");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        StreamingResponseBody body = out -> imageService.writeUserImagesAsNdjson(accessToken, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     //API call to get details of the current authenticated user
     @GetMapping("/user-details")
     public ResponseEntity<UserModel> getUserDetails(@RequestParam String username, @RequestHeader("Authorization") String authHeader){
@@ -201,13 +705,48 @@ public class User {
         return ResponseEntity.ok(user);
     }
 
-    // Extract the access token from the Authorization header
+    // Record an upload in the local image records when it was made by a session user
+    private void recordUpload(Map<String, Object> image) {
+        String username = JwtAuthenticationFilter.authenticatedUsername();
+        if (username == null || image == null) {
+            return;
+        }
+        try {
+            imageRecordService.recordUpload(username, image);
+        } catch (Exception ex) {
+            // the image is on Imgur either way, only the local listing misses it
+            log.error("Recording image failed: {}", ex.getMessage());
+        }
+    }
+
+    private void recordUpload(String username, UploadResult result) {
+        try {
+            imageRecordService.recordUpload(username, result.getId(), result.getDeletehash(), result.getLink(), null, null, Instant.now());
+        } catch (Exception ex) {
+            log.error("Recording image failed: {}", ex.getMessage());
+        }
+    }
+
+    // If-None-Match holds one or more ETags (or *), compared weakly as for GET
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        String tag = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || (value.startsWith("W/") ? value.substring(2) : value).equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Imgur access token for the request: the stored token of the user whose session token is in the Authorization
+    // header (JwtAuthenticationFilter has verified it), null without a session or before the user authorized Imgur
     private String extractAccessTokenFromAuthHeader(String authHeader) {
-        log.info("Extracting access token from authentication header..");
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            return authHeader.substring(7);  // Extract the token (remove "Bearer " prefix)
+        String username = JwtAuthenticationFilter.authenticatedUsername();
+        if (username == null) {
+            log.warn("Invalid token!");
+            return null;
         }
-        log.warn("Invalid token!");
-        return null;  // Return null if the token is invalid or not present
+        return authService.getAccessTokenForUser(username);
     }
 }
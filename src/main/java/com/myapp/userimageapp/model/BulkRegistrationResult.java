@@ -0,0 +1,7 @@
+package com.myapp.userimageapp.model;
+
+import java.util.List;
+
+// Outcome of a bulk registration: how many users were created and which usernames were skipped as duplicates
+public record BulkRegistrationResult(int registered, List<String> skipped) {
+}
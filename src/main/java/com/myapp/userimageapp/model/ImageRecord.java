@@ -0,0 +1,48 @@
+package com.myapp.userimageapp.model;
+
+import java.time.Instant;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+// Local record of an image a user uploaded to Imgur, so listing a user's images is a local query
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "image_record", indexes = {
+        @Index(name = "idx_image_record_owner_created", columnList = "owner_id, created_at"),
+        @Index(name = "idx_image_record_image_id", columnList = "image_id", unique = true)
+})
+public class ImageRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "image_record_seq")
+    @SequenceGenerator(name = "image_record_seq", sequenceName = "image_record_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "image_id", nullable = false, length = 32)
+    private String imageId;
+
+    @Column(name = "delete_hash", length = 64)
+    private String deleteHash;
+
+    @Column(length = 512)
+    private String link;
+
+    private Long size;
+
+    @Column(name = "mime_type", length = 64)
+    private String mimeType;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @ToString.Exclude
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "owner_id", nullable = false)
+    private UserModel owner;
+}
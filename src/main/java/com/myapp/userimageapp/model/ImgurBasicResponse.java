@@ -0,0 +1,8 @@
+package com.myapp.userimageapp.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// Imgur response where only the outcome matters, e.g. DELETE /3/image
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ImgurBasicResponse(boolean success, int status) {
+}
@@ -0,0 +1,48 @@
+package com.myapp.userimageapp.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// The image fields we use from Imgur's image model, everything else is skipped by the parser
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ImgurImage(
+        String id,
+        String title,
+        String description,
+        Long datetime,
+        String type,
+        Integer width,
+        Integer height,
+        Long size,
+        String deletehash,
+        String link) {
+
+    // Same keys as Imgur's "data" object, absent fields are left out
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>(16);
+        putIfPresent(map, "id", id);
+        putIfPresent(map, "title", title);
+        putIfPresent(map, "description", description);
+        putIfPresent(map, "datetime", datetime);
+        putIfPresent(map, "type", type);
+        putIfPresent(map, "width", width);
+        putIfPresent(map, "height", height);
+        putIfPresent(map, "size", size);
+        putIfPresent(map, "deletehash", deletehash);
+        putIfPresent(map, "link", link);
+        return map;
+    }
+
+    // Copy without the deletehash, Imgur only shows it to the image's owner
+    public ImgurImage withoutDeleteHash() {
+        return deletehash == null ? this : new ImgurImage(id, title, description, datetime, type, width, height, size, null, link);
+    }
+
+    private static void putIfPresent(Map<String, Object> map, String key, Object value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+}
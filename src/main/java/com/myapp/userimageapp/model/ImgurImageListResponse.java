@@ -0,0 +1,10 @@
+package com.myapp.userimageapp.model;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// Imgur response wrapping a list of images, e.g. GET /3/account/me/images
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ImgurImageListResponse(List<ImgurImage> data, boolean success, int status) {
+}
@@ -0,0 +1,8 @@
+package com.myapp.userimageapp.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// Imgur response wrapping a single image, e.g. GET/POST /3/image
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ImgurImageResponse(ImgurImage data, boolean success, int status) {
+}
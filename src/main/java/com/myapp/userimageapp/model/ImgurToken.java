@@ -0,0 +1,31 @@
+package com.myapp.userimageapp.model;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Imgur OAuth tokens of one of our users, replaced as a whole on every change
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class ImgurToken {
+
+    @Id
+    private String username;
+
+    @Column(nullable = false, length = 512)
+    private String accessToken;
+
+    @Column(length = 512)
+    private String refreshToken;
+
+    private Instant expiresAt;  // null when Imgur didn't tell us
+
+    private Instant updatedAt;
+}
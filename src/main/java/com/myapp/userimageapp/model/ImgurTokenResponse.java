@@ -0,0 +1,13 @@
+package com.myapp.userimageapp.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// Imgur OAuth token response (POST /oauth2/token)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ImgurTokenResponse(
+        @JsonProperty("access_token") String accessToken,
+        @JsonProperty("refresh_token") String refreshToken,
+        @JsonProperty("expires_in") Long expiresIn,
+        @JsonProperty("account_username") String accountUsername) {
+}
@@ -0,0 +1,9 @@
+package com.myapp.userimageapp.model;
+
+import java.time.Instant;
+
+// Message on the async upload topic: a spooled file waiting to be uploaded to Imgur for a user.
+// spoolPath is relative to the spool directory.
+public record UploadJob(String jobId, String username, String spoolPath, String filename, String contentType, long size,
+        Instant createdAt) {
+}
@@ -0,0 +1,15 @@
+package com.myapp.userimageapp.model;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// Snapshot of an upload job as returned by /api/upload-jobs and sent on the SSE stream
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record UploadJobStatus(String jobId, State state, String filename, long totalBytes, long bytesSent, String link,
+        String error, Instant updatedAt) {
+
+    public enum State {
+        QUEUED, UPLOADING, DONE, FAILED
+    }
+}
@@ -0,0 +1,30 @@
+package com.myapp.userimageapp.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Per-file outcome of a batch upload, either id/link/deletehash or error is set (jobId when tracked as an upload job)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UploadResult {
+
+    private String filename;
+    private String id;
+    private String link;
+    private String deletehash;
+    private String error;
+    private String jobId;
+
+    public static UploadResult success(String filename, String id, String link, String deletehash) {
+        return new UploadResult(filename, id, link, deletehash, null, null);
+    }
+
+    public static UploadResult failure(String filename, String error) {
+        return new UploadResult(filename, null, null, null, error, null);
+    }
+}
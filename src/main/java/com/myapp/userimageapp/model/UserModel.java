@@ -1,7 +1,5 @@
 package com.myapp.userimageapp.model;
 
-import java.util.List;
-
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -13,8 +11,10 @@ import lombok.NoArgsConstructor;
 @Entity
 public class UserModel {
 
+    // Sequence ids handed out 50 at a time, IDENTITY would stop Hibernate from batching inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_seq")
+    @SequenceGenerator(name = "user_seq", sequenceName = "user_seq", allocationSize = 50)
     private Long id;
 
     private String firstname;
@@ -26,8 +26,6 @@ public class UserModel {
     @Column(nullable = false)
     private String password;
 
-    private List<String> imageUrls;  // List to hold Imgur image URLs
-
     // Add the custom constructor with three parameters
     public UserModel(String firstname, String lastname, String username) {
         this.firstname = firstname;
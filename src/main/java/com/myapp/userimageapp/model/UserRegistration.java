@@ -0,0 +1,5 @@
+package com.myapp.userimageapp.model;
+
+// One user in a bulk registration request
+public record UserRegistration(String firstname, String lastname, String username, String password) {
+}
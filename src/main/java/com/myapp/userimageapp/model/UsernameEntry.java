@@ -0,0 +1,5 @@
+package com.myapp.userimageapp.model;
+
+// Id and username of a user, what the username filter is loaded from
+public record UsernameEntry(Long id, String username) {
+}
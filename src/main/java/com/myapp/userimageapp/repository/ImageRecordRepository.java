@@ -0,0 +1,25 @@
+package com.myapp.userimageapp.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.myapp.userimageapp.model.ImageRecord;
+
+@Repository
+public interface ImageRecordRepository extends JpaRepository<ImageRecord, Long> {
+
+    // Served by idx_image_record_owner_created, newest first
+    Page<ImageSummary> findByOwnerIdOrderByCreatedAtDesc(Long ownerId, Pageable pageable);
+
+    // Imgur deletes by deletehash or image id, so either may be given
+    @Modifying
+    @Transactional
+    @Query("delete from ImageRecord r where r.owner.id = :ownerId and (r.deleteHash = :key or r.imageId = :key)")
+    int deleteByOwnerIdAndKey(@Param("ownerId") Long ownerId, @Param("key") String imageIdOrDeleteHash);
+}
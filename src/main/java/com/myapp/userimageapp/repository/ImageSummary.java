@@ -0,0 +1,19 @@
+package com.myapp.userimageapp.repository;
+
+import java.time.Instant;
+
+// Columns needed to list images, read straight from image_record without loading entities
+public interface ImageSummary {
+
+    String getImageId();
+
+    String getDeleteHash();
+
+    String getLink();
+
+    Long getSize();
+
+    String getMimeType();
+
+    Instant getCreatedAt();
+}
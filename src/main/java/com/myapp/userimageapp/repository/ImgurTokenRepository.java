@@ -0,0 +1,14 @@
+package com.myapp.userimageapp.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.myapp.userimageapp.model.ImgurToken;
+
+@Repository
+public interface ImgurTokenRepository extends JpaRepository<ImgurToken, String> {
+    List<ImgurToken> findByRefreshTokenIsNotNullAndExpiresAtBefore(Instant instant);
+}
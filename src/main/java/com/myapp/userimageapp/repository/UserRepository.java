@@ -1,15 +1,28 @@
 package com.myapp.userimageapp.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.myapp.userimageapp.model.UserModel;
+import com.myapp.userimageapp.model.UsernameEntry;
 
 @Repository
 public interface UserRepository extends JpaRepository<UserModel,Long>{
     Optional<UserModel> findByUsername(String username);
 
     boolean existsByUsername(String username);
+
+    // Users after the given id in id order, read in batches so the username filter is kept current without a full scan
+    @Query("select new com.myapp.userimageapp.model.UsernameEntry(u.id, u.username) from UserModel u where u.id > :afterId order by u.id")
+    List<UsernameEntry> findUsernamesAfter(@Param("afterId") long afterId, Limit limit);
+
+    @Query("select u.username from UserModel u where u.username in :usernames")
+    List<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
 }
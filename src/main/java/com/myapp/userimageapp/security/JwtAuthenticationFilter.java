@@ -0,0 +1,61 @@
+package com.myapp.userimageapp.security;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// Authenticates requests carrying a session token from /api/login ("Authorization: Bearer <jwt>").
+// No session or database lookup, the token itself is the identity. Usernames listed as admins get ROLE_ADMIN.
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final List<GrantedAuthority> ADMIN = List.of(new SimpleGrantedAuthority("ROLE_ADMIN"));
+
+    private final JwtService jwtService;
+
+    private final Set<String> adminUsernames;
+
+    public JwtAuthenticationFilter(JwtService jwtService, Set<String> adminUsernames) {
+        this.jwtService = jwtService;
+        this.adminUsernames = adminUsernames;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String authHeader = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            String username = jwtService.verify(authHeader.substring(7));
+            if (username != null) {
+                SecurityContext context = SecurityContextHolder.createEmptyContext();
+                context.setAuthentication(new UsernamePasswordAuthenticationToken(username, null,
+                        adminUsernames.contains(username) ? ADMIN : Collections.emptyList()));
+                SecurityContextHolder.setContext(context);
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    // Username of the session token on the current request, null when the request has none
+    public static String authenticatedUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication instanceof UsernamePasswordAuthenticationToken && authentication.isAuthenticated()) {
+            return authentication.getName();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,108 @@
+package com.myapp.userimageapp.security;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+import javax.crypto.SecretKey;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import lombok.extern.slf4j.Slf4j;
+
+// Issues and verifies the signed session tokens handed out at login.
+// The key and parser are built once, verified tokens are remembered so repeat requests skip the signature check.
+@Slf4j
+@Component
+public class JwtService {
+
+    private final SecretKey key;
+
+    private final JwtParser parser;
+
+    private final long expirationSeconds;
+
+    // token -> verified session, entries never outlive the token itself
+    private final Cache<String, Session> verifiedTokens;
+
+    private record Session(String username, Instant expiresAt) {
+    }
+
+    // HS256 needs a key of at least 256 bits
+    private static final int MIN_SECRET_BYTES = 32;
+
+    @Autowired
+    public JwtService(@Value("${jwt.secret:}") String secret,
+            @Value("${jwt.expiration-seconds:3600}") long expirationSeconds,
+            @Value("${jwt.cache.max-size:10000}") long cacheMaxSize) {
+        this.key = Keys.hmacShaKeyFor(validSecret(secret));
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
+        this.expirationSeconds = expirationSeconds;
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, Math.min(expirationSeconds, 300))))
+                .build();
+    }
+
+    public long getExpirationSeconds() {
+        return expirationSeconds;
+    }
+
+    // Signed session token for a user who just logged in
+    public String issueToken(String username) {
+        Instant now = Instant.now();
+        return Jwts.builder()
+                .setSubject(username)
+                .setIssuedAt(Date.from(now))
+                .setExpiration(Date.from(now.plusSeconds(expirationSeconds)))
+                .signWith(key, SignatureAlgorithm.HS256)
+                .compact();
+    }
+
+    // Username the token was issued to, or null if it is not a valid, unexpired session token
+    public String verify(String token) {
+        Session session = verifiedTokens.getIfPresent(token);
+        if (session == null) {
+            try {
+                Claims claims = parser.parseClaimsJws(token).getBody();
+                session = new Session(claims.getSubject(), claims.getExpiration().toInstant());
+            } catch (JwtException | IllegalArgumentException ex) {
+                log.debug("Rejected session token: {}", ex.getMessage());
+                return null;
+            }
+            verifiedTokens.put(token, session);
+        }
+        if (!session.expiresAt().isAfter(Instant.now())) {
+            verifiedTokens.invalidate(token);
+            return null;
+        }
+        return session.username();
+    }
+
+    // Refuses to start with a missing, placeholder or short secret, anyone knowing it can sign sessions for any user
+    private static byte[] validSecret(String secret) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("jwt.secret is not set");
+        }
+        if (secret.startsWith("<") && secret.endsWith(">")) {
+            throw new IllegalStateException("jwt.secret is still the placeholder " + secret);
+        }
+        byte[] bytes = secret.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < MIN_SECRET_BYTES) {
+            throw new IllegalStateException("jwt.secret must be at least " + MIN_SECRET_BYTES * 8 + " bits, got " + bytes.length * 8);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,238 @@
+package com.myapp.userimageapp.security;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+// Counts failed logins per (username, client IP), per username and per client IP over a sliding window.
+// Each attempt is counted as a failure before the user lookup and password check (tryAcquire) and taken back when the
+// login succeeds, so a burst of parallel attempts can't get past the limits while the first ones are still hashing.
+// The (username, client IP) limit is the low one, so a user isn't locked out by failures sent from elsewhere until those
+// reach the higher per-username limit, which caps guessing spread over many clients.
+@Slf4j
+@Component
+public class LoginAttemptThrottle implements MeterBinder {
+
+    // the window is split into this many buckets, the oldest one drops out as time moves on
+    private static final int BUCKETS = 6;
+
+    private final int maxFailuresPerUser;
+
+    private final int maxFailuresPerAccount;
+
+    private final int maxFailuresPerIp;
+
+    private final long bucketMillis;
+
+    private final Clock clock;
+
+    // bounded so a spray of random usernames can't grow memory, idle keys expire after one window
+    private final Cache<String, Window> windows;
+
+    private Counter failedCounter;
+
+    private Counter blockedCounter;
+
+    @Autowired
+    public LoginAttemptThrottle(@Value("${login.throttle.max-failures-per-user:5}") int maxFailuresPerUser,
+            @Value("${login.throttle.max-failures-per-account:20}") int maxFailuresPerAccount,
+            @Value("${login.throttle.max-failures-per-ip:50}") int maxFailuresPerIp,
+            @Value("${login.throttle.window-seconds:900}") long windowSeconds,
+            @Value("${login.throttle.max-tracked-keys:100000}") long maxTrackedKeys) {
+        this(maxFailuresPerUser, maxFailuresPerAccount, maxFailuresPerIp, windowSeconds, maxTrackedKeys, Clock.systemUTC());
+    }
+
+    public LoginAttemptThrottle(int maxFailuresPerUser, int maxFailuresPerAccount, int maxFailuresPerIp, long windowSeconds,
+            long maxTrackedKeys, Clock clock) {
+        this.maxFailuresPerUser = maxFailuresPerUser;
+        this.maxFailuresPerAccount = maxFailuresPerAccount;
+        this.maxFailuresPerIp = maxFailuresPerIp;
+        this.bucketMillis = Math.max(1, windowSeconds * 1000 / BUCKETS);
+        this.clock = clock;
+        this.windows = Caffeine.newBuilder()
+                .maximumSize(maxTrackedKeys)
+                .expireAfterAccess(Duration.ofSeconds(windowSeconds))
+                .build();
+    }
+
+    // Counts the attempt as a failure for the username from this client, the username and the client.
+    // False, with nothing counted, when one of them has used up its failures for the current window
+    public boolean tryAcquire(String username, String ip) {
+        long bucket = currentBucket();
+        boolean acquired = reserve(userKey(username, ip), bucket, maxFailuresPerUser);
+        if (acquired && !reserve(accountKey(username), bucket, maxFailuresPerAccount)) {
+            refund(userKey(username, ip), bucket);
+            acquired = false;
+        }
+        if (acquired && ip != null && !reserve(ipKey(ip), bucket, maxFailuresPerIp)) {
+            refund(userKey(username, ip), bucket);
+            refund(accountKey(username), bucket);
+            acquired = false;
+        }
+        if (!acquired && blockedCounter != null) {
+            blockedCounter.increment();
+        }
+        return acquired;
+    }
+
+    // The acquired attempt failed, it stays counted
+    public void recordFailure(String username, String ip) {
+        if (failedCounter != null) {
+            failedCounter.increment();
+        }
+    }
+
+    // The acquired attempt succeeded: it's taken back, and the username's failures from this client are cleared.
+    // The username and the IP keep their earlier failures
+    public void recordSuccess(String username, String ip) {
+        long bucket = currentBucket();
+        windows.invalidate(userKey(username, ip));
+        refund(accountKey(username), bucket);
+        if (ip != null) {
+            refund(ipKey(ip), bucket);
+        }
+    }
+
+    // The acquired attempt was never checked (hashing overloaded), it's taken back
+    public void release(String username, String ip) {
+        long bucket = currentBucket();
+        refund(userKey(username, ip), bucket);
+        refund(accountKey(username), bucket);
+        if (ip != null) {
+            refund(ipKey(ip), bucket);
+        }
+    }
+
+    // Seconds until enough failures have left the window for this username and client to get through, for Retry-After
+    public long retryAfterSeconds(String username, String ip) {
+        long bucket = currentBucket();
+        long unblockAt = Math.max(unblockAt(userKey(username, ip), bucket, maxFailuresPerUser),
+                unblockAt(accountKey(username), bucket, maxFailuresPerAccount));
+        if (ip != null) {
+            unblockAt = Math.max(unblockAt, unblockAt(ipKey(ip), bucket, maxFailuresPerIp));
+        }
+        long millis = unblockAt - clock.millis();
+        return Math.max(1, (millis + 999) / 1000);
+    }
+
+    private long unblockAt(String key, long bucket, int maxFailures) {
+        Window window = windows.getIfPresent(key);
+        return window == null ? 0 : window.unblockAt(bucket, maxFailures) * bucketMillis;
+    }
+
+    private static String userKey(String username, String ip) {
+        return "user:" + username + '@' + ip;
+    }
+
+    private static String accountKey(String username) {
+        return "account:" + username;
+    }
+
+    private static String ipKey(String ip) {
+        return "ip:" + ip;
+    }
+
+    // Counted first and checked after, so of any number of parallel attempts at most maxFailures get through
+    private boolean reserve(String key, long bucket, int maxFailures) {
+        Window window = windows.get(key, k -> new Window());
+        window.increment(bucket);
+        if (window.sum(bucket) > maxFailures) {
+            window.decrement(bucket);
+            return false;
+        }
+        return true;
+    }
+
+    private void refund(String key, long bucket) {
+        Window window = windows.getIfPresent(key);
+        if (window != null) {
+            window.decrement(bucket);
+        }
+    }
+
+    private long currentBucket() {
+        return clock.millis() / bucketMillis;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        failedCounter = Counter.builder("login.attempts.failed").register(registry);
+        blockedCounter = Counter.builder("login.attempts.blocked").register(registry);
+        Gauge.builder("login.throttle.tracked", windows, Cache::estimatedSize).register(registry);
+    }
+
+    // Ring of per-bucket counts, each slot stamped with the bucket it currently counts.
+    // Updates are CAS only, no locks.
+    private static final class Window {
+
+        private final AtomicLongArray stamps = new AtomicLongArray(BUCKETS);
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        void increment(long bucket) {
+            int slot = (int) (bucket % BUCKETS);
+            long stamp = stamps.get(slot);
+            if (stamp != bucket && stamps.compareAndSet(slot, stamp, bucket)) {
+                // slot held an expired bucket, start it over (a racing increment may be lost, which is fine for a limit)
+                counts.set(slot, 0);
+            }
+            counts.incrementAndGet(slot);
+        }
+
+        // Takes back an increment made in this bucket, a slot that has moved on to a newer bucket is left alone
+        void decrement(long bucket) {
+            int slot = (int) (bucket % BUCKETS);
+            if (stamps.get(slot) == bucket) {
+                counts.updateAndGet(slot, count -> Math.max(0, count - 1));
+            }
+        }
+
+        // First bucket at which fewer than limit failures are left in the window, bucket itself if already below
+        long unblockAt(long bucket, int limit) {
+            long[][] live = new long[BUCKETS][];
+            int size = 0;
+            long total = 0;
+            for (int slot = 0; slot < BUCKETS; slot++) {
+                long stamp = stamps.get(slot);
+                if (bucket - stamp < BUCKETS) {
+                    long count = counts.get(slot);
+                    live[size++] = new long[] {stamp, count};
+                    total += count;
+                }
+            }
+            // oldest first, each leaves the window BUCKETS buckets after its own
+            Arrays.sort(live, 0, size, (a, b) -> Long.compare(a[0], b[0]));
+            for (int i = 0; i < size && total >= limit; i++) {
+                total -= live[i][1];
+                if (total < limit) {
+                    return live[i][0] + BUCKETS;
+                }
+            }
+            return bucket;
+        }
+
+        long sum(long bucket) {
+            long total = 0;
+            for (int slot = 0; slot < BUCKETS; slot++) {
+                if (bucket - stamps.get(slot) < BUCKETS) {
+                    total += counts.get(slot);
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.myapp.userimageapp.security;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// Password hashing with a configurable algorithm (bcrypt, argon2, pbkdf2).
+// Hashes are stored with an {id} prefix, older unprefixed hashes are read as bcrypt.
+// All hashing runs on a small bounded pool so a burst of logins can't take every request thread.
+@Slf4j
+@Component
+public class PasswordHasher implements MeterBinder {
+
+    private final PasswordEncoder encoder;
+
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public PasswordHasher(@Value("${password.hash.algorithm:bcrypt}") String algorithm,
+            @Value("${password.hash.bcrypt-strength:10}") int bcryptStrength,
+            @Value("${password.hash.argon2-memory-kb:19456}") int argon2MemoryKb,
+            @Value("${password.hash.argon2-iterations:2}") int argon2Iterations,
+            @Value("${password.hash.pbkdf2-iterations:310000}") int pbkdf2Iterations,
+            @Value("${password.hash.threads:0}") int threads,
+            @Value("${password.hash.queue-capacity:256}") int queueCapacity) {
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(bcryptStrength);
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put("bcrypt", bcrypt);
+        encoders.put("argon2", new Argon2PasswordEncoder(16, 32, 1, argon2MemoryKb, argon2Iterations));
+        encoders.put("pbkdf2", new Pbkdf2PasswordEncoder("", 16, pbkdf2Iterations,
+                Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm.PBKDF2WithHmacSHA256));
+        if (!encoders.containsKey(algorithm)) {
+            throw new IllegalArgumentException("Unknown password.hash.algorithm: " + algorithm);
+        }
+        DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder(algorithm, encoders);
+        delegating.setDefaultPasswordEncoderForMatches(bcrypt);
+        this.encoder = delegating;
+
+        // hashing is CPU bound, more threads than cores only adds queueing inside the CPU
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        log.info("Password hashing with {} on {} threads", algorithm, poolSize);
+    }
+
+    public PasswordHasher() {
+        this("bcrypt", 10, 19456, 2, 310000, 0, 256);
+    }
+
+    // Hash a password with the configured algorithm
+    public String encode(String rawPassword) {
+        return run(() -> encoder.encode(rawPassword));
+    }
+
+    // Hash many passwords at once, spread over the pool but never more queued than it has threads
+    public List<String> encodeAll(List<String> rawPasswords) {
+        int window = Math.max(1, executor.getMaximumPoolSize());
+        List<String> encoded = new ArrayList<>(rawPasswords.size());
+        for (int from = 0; from < rawPasswords.size(); from += window) {
+            List<Future<String>> futures = new ArrayList<>(window);
+            for (String rawPassword : rawPasswords.subList(from, Math.min(from + window, rawPasswords.size()))) {
+                futures.add(executor.submit(() -> encoder.encode(rawPassword)));
+            }
+            for (Future<String> future : futures) {
+                encoded.add(await(future));
+            }
+        }
+        return encoded;
+    }
+
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return run(() -> encoder.matches(rawPassword, encodedPassword));
+    }
+
+    // True when the hash was made with another algorithm or a lower cost than configured now
+    public boolean needsRehash(String encodedPassword) {
+        return encoder.upgradeEncoding(encodedPassword);
+    }
+
+    // Runs on the hashing pool, throws RejectedExecutionException when its queue is full
+    private <T> T run(Callable<T> task) {
+        return await(executor.submit(task));
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for password hashing", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("password.hash.active", executor, ThreadPoolExecutor::getActiveCount).register(registry);
+        Gauge.builder("password.hash.queued", executor, e -> e.getQueue().size()).register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
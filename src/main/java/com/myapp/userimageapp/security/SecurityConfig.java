@@ -1,13 +1,17 @@
 package com.myapp.userimageapp.security;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import jakarta.servlet.DispatcherType;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -16,17 +20,23 @@ import lombok.extern.slf4j.Slf4j;
 public class SecurityConfig {
 
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, JwtService jwtService,
+            @Value("${security.admin-usernames:}") Set<String> adminUsernames) throws Exception {
         log.info("Configuring security filter chain");
 
         // Configure the security filter chain
         return http
-            .csrf().disable()  // Disables CSRF (important for APIs)
-            .authorizeHttpRequests()
-                .requestMatchers("/api/register")
+            .csrf(csrf -> csrf.disable())  // Disables CSRF (important for APIs)
+            .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))  // identity comes from the JWT on each request
+            .authorizeHttpRequests(auth -> auth
+                .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR)
+                .permitAll()  // streamed responses complete on an async dispatch of an already authorized request
+                .requestMatchers("/api/register", "/api/login", "/api/callback")
                 .permitAll()  // Allow these endpoints without authentication
-                .anyRequest().authenticated()  // All other requests require authentication
-            .and()
+                .requestMatchers("/api/register/bulk")
+                .hasRole("ADMIN")  // onboarding only, one call hashes many passwords
+                .anyRequest().authenticated())  // All other requests require authentication
+            .addFilterBefore(new JwtAuthenticationFilter(jwtService, adminUsernames), UsernamePasswordAuthenticationFilter.class)
             .build();
     }
 }
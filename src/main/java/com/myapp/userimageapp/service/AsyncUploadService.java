@@ -0,0 +1,100 @@
+package com.myapp.userimageapp.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.myapp.userimageapp.model.UploadJob;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Accepts uploads for later: the file goes to the spool directory and an UploadJob to Kafka,
+// UploadJobWorker does the Imgur upload. The caller only waits for the disk write and the broker ack.
+// Any instance may pick up the job, so with more than one instance imgur.upload.async.spool-dir has to be a volume
+// shared by all of them (NFS, EFS, ...). Jobs carry the file name only, resolved against the local mount point.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "imgur.upload.async.enabled", havingValue = "true")
+public class AsyncUploadService {
+
+    private final KafkaTemplate<String, UploadJob> kafkaTemplate;
+
+    private final String topic;
+
+    private final Path spoolDir;
+
+    private final long sendTimeout;
+
+    private final UploadJobRegistry uploadJobRegistry;
+
+    @Autowired
+    public AsyncUploadService(KafkaTemplate<String, UploadJob> uploadJobKafkaTemplate, UploadJobRegistry uploadJobRegistry,
+            @Value("${imgur.upload.async.topic:imgur-uploads}") String topic,
+            @Value("${imgur.upload.async.spool-dir:${java.io.tmpdir}/userimageapp-spool}") String spoolDir,
+            @Value("${imgur.upload.async.send-timeout-ms:5000}") long sendTimeout) throws IOException {
+        this.kafkaTemplate = uploadJobKafkaTemplate;
+        this.topic = topic;
+        this.spoolDir = Files.createDirectories(Paths.get(spoolDir)).toAbsolutePath().normalize();
+        this.sendTimeout = sendTimeout;
+        this.uploadJobRegistry = uploadJobRegistry;
+        log.info("Spooling async uploads to {}", this.spoolDir);
+    }
+
+    // Returns the job id once the file is spooled and the job is on the topic
+    public String submit(MultipartFile file, String username) throws IOException {
+        String jobId = UUID.randomUUID().toString();
+        Path spoolFile = spoolDir.resolve(jobId);
+        file.transferTo(spoolFile);
+
+        UploadJob job = new UploadJob(jobId, username, jobId, file.getOriginalFilename(), file.getContentType(),
+                file.getSize(), Instant.now());
+        // registered before sending, a worker on this instance may finish the job before the ack comes back
+        uploadJobRegistry.start(username, jobId, job.filename(), job.size());
+        try {
+            // keyed by user, so one user's jobs stay in order on one partition
+            kafkaTemplate.send(topic, username, job).get(sendTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            uploadJobRegistry.remove(jobId);
+            Files.deleteIfExists(spoolFile);
+            throw new IOException("Interrupted while queueing upload", ex);
+        } catch (ExecutionException | TimeoutException ex) {
+            uploadJobRegistry.remove(jobId);
+            Files.deleteIfExists(spoolFile);
+            throw new IOException("Could not queue upload: " + ex.getMessage(), ex);
+        }
+        log.info("Queued upload job {} for {}", jobId, username);
+        return jobId;
+    }
+
+    // Spooled file of a job. Throws IllegalStateException (not retried) when the message points outside the spool directory.
+    public Path spoolFile(UploadJob job) {
+        Path spoolFile = spoolDir.resolve(job.spoolPath()).normalize();
+        if (!spoolFile.startsWith(spoolDir) || spoolFile.equals(spoolDir)) {
+            throw new IllegalStateException("Spool path of job " + job.jobId() + " is outside the spool directory");
+        }
+        return spoolFile;
+    }
+
+    // Called once a job is dead-lettered, nothing will read its file any more
+    public void discard(UploadJob job) {
+        try {
+            Files.deleteIfExists(spoolFile(job));
+        } catch (IOException | IllegalStateException ex) {
+            log.warn("Could not delete spooled file of job {}: {}", job.jobId(), ex.getMessage());
+        }
+    }
+}
@@ -1,19 +1,32 @@
 package com.myapp.userimageapp.service;
 
-import java.util.HashMap;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestTemplate;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.myapp.userimageapp.model.ImgurToken;
+import com.myapp.userimageapp.model.ImgurTokenResponse;
+
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -29,56 +42,83 @@ public class AuthService {
     @Value("${imgur.redirectUri}")
     private String redirectUri;
 
+    // Tokens expiring within this window are refreshed ahead of time
+    @Value("${imgur.token.refresh-skew-seconds:300}")
+    private long refreshSkewSeconds = 300;
+
+    // After an inline refresh fails, requests use the current token this long before trying again
+    @Value("${imgur.token.refresh-failure-backoff-seconds:30}")
+    private long refreshFailureBackoffSeconds = 30;
+
     private static final String IMGUR_TOKEN_URL = "https://api.imgur.com/oauth2/token";
 
-    // In-memory storage for user access tokens (use persistent storage in production)
-    private final Map<String, String> userAccessTokens = new HashMap<>();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // OAuth flows started by /api/authorize, one-time state -> user who started it. Kept in memory,
+    // so the callback has to reach the instance that started the flow (sticky sessions behind a load balancer)
+    private final Cache<String, String> pendingAuthorizations = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
+
+    // Users whose last refresh failed -> when requests may try again
+    private final Cache<String, Instant> refreshBackoff = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterWrite(Duration.ofHours(1))
+            .build();
+
+    // Refreshes in flight per user, so concurrent callers share one call to Imgur
+    private final Map<String, CompletableFuture<ImgurToken>> refreshes = new ConcurrentHashMap<>();
+
+    // Storage for user tokens, JPA backed by default (see TokenStore)
+    private final TokenStore tokenStore;
 
     //private final RestTemplate restTemplate = new RestTemplate();
 
     private final RestTemplate restTemplate;
 
-    // Constructor injection
-    public AuthService(RestTemplate restTemplate) {
+    private final ImgurResilience resilience;
+
+    // Constructor injection, uses the pooled RestTemplate from RestClientConfig
+    @Autowired
+    public AuthService(RestTemplate restTemplate, TokenStore tokenStore, ImgurResilience resilience) {
         this.restTemplate = restTemplate;
+        this.tokenStore = tokenStore;
+        this.resilience = resilience;
+    }
+
+    public AuthService(RestTemplate restTemplate, TokenStore tokenStore) {
+        this(restTemplate, tokenStore, new ImgurResilience());
+    }
+
+    public AuthService(RestTemplate restTemplate) {
+        this(restTemplate, new InMemoryTokenStore());
     }
 
     // Default constructor for scenarios where you don't want dependency injection
     public AuthService() {
-        this.restTemplate = new RestTemplate(); // default RestTemplate if no injection
+        this(new RestTemplate()); // default RestTemplate if no injection
+    }
+
+    // Starts an OAuth flow for a user, returns the random state to send to Imgur's authorization page
+    public String startAuthorization(String username) {
+        byte[] nonce = new byte[32];
+        RANDOM.nextBytes(nonce);
+        String state = Base64.getUrlEncoder().withoutPadding().encodeToString(nonce);
+        pendingAuthorizations.put(state, username);
+        return state;
+    }
+
+    // The user who started the flow with this state, null if it's unknown, expired or already used
+    public String completeAuthorization(String state) {
+        return state == null ? null : pendingAuthorizations.asMap().remove(state);
     }
 
     // Exchange authorization code for an access token
     public String exchangeAuthCodeForAccessToken(String authorizationCode) {
         log.info("In exchanging authentication code for access token process..");
         try{
-            // Prepare request data
-            MultiValueMap<String, String> requestData = new LinkedMultiValueMap<>();
-            requestData.add("client_id", clientId);
-            requestData.add("client_secret", clientSecret);
-            requestData.add("code", authorizationCode);
-            requestData.add("grant_type", "authorization_code");
-            requestData.add("redirect_uri", redirectUri);
-
-            // Set headers for the request
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-
-            // Create HttpEntity with data and headers
-            HttpEntity<MultiValueMap<String, String>> entity = new HttpEntity<>(requestData, headers);
-
-            // Make POST request to Imgur's token endpoint
-            ResponseEntity<Map> response = restTemplate.exchange(IMGUR_TOKEN_URL, HttpMethod.POST, entity, Map.class);
-
-            // Parse and return the access token
-            Map<String, Object> responseBody = response.getBody();
-            if (responseBody != null) {
-                log.info("Access token retrieved!");
-                return (String) responseBody.get("access_token");
-            } else {
-                log.warn("Failed to retrieve access token!");
-                throw new RuntimeException("Failed to retrieve access token");
-            }
+            return exchangeAuthCode(authorizationCode).accessToken();
         }
         catch(Exception ex)
         {
@@ -87,15 +127,130 @@ public class AuthService {
         }
     }
 
+    // Exchange authorization code for the full token response (access token, refresh token, expiry)
+    public ImgurTokenResponse exchangeAuthCode(String authorizationCode) {
+        // Prepare request data
+        MultiValueMap<String, String> requestData = new LinkedMultiValueMap<>();
+        requestData.add("client_id", clientId);
+        requestData.add("client_secret", clientSecret);
+        requestData.add("code", authorizationCode);
+        requestData.add("grant_type", "authorization_code");
+        requestData.add("redirect_uri", redirectUri);
+        return requestToken(requestData);
+    }
+
+    // POST to Imgur's token endpoint
+    private ImgurTokenResponse requestToken(MultiValueMap<String, String> requestData) {
+        // Set headers for the request
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+
+        // Create HttpEntity with data and headers
+        HttpEntity<MultiValueMap<String, String>> entity = new HttpEntity<>(requestData, headers);
+
+        // Make POST request to Imgur's token endpoint (codes are single use, so only retried when Imgur didn't take it)
+        ResponseEntity<ImgurTokenResponse> response = resilience.call("oauth.token", ImgurResilience.CallType.WRITE,
+                () -> restTemplate.exchange(IMGUR_TOKEN_URL, HttpMethod.POST, entity, ImgurTokenResponse.class));
+
+        // Parse and return the tokens
+        ImgurTokenResponse responseBody = response.getBody();
+        if (responseBody != null && responseBody.accessToken() != null) {
+            log.info("Access token retrieved!");
+            return responseBody;
+        } else {
+            log.warn("Failed to retrieve access token!");
+            throw new RuntimeException("Failed to retrieve access token");
+        }
+    }
+
     // Store access token for a user
     public void storeAccessToken(String username, String accessToken) {
-        log.info("Storing access token in local..");
-        userAccessTokens.put(username, accessToken);
+        log.info("Storing access token..");
+        tokenStore.save(new ImgurToken(username, accessToken, null, null, Instant.now()));
+    }
+
+    // Store access token, refresh token and expiry for a user
+    public void storeTokens(String username, ImgurTokenResponse tokens) {
+        log.info("Storing tokens..");
+        Instant now = Instant.now();
+        Instant expiresAt = tokens.expiresIn() != null ? now.plusSeconds(tokens.expiresIn()) : null;
+        tokenStore.save(new ImgurToken(username, tokens.accessToken(), tokens.refreshToken(), expiresAt, now));
     }
 
-    // Get the stored access token for a user
+    // Get the stored access token for a user, refreshing it first when it is about to expire
     public String getAccessTokenForUser(String username) {
         log.info("Access token for a user..");
-        return userAccessTokens.get(username);
+        Optional<ImgurToken> stored = tokenStore.find(username);
+        if (stored.isEmpty()) {
+            return null;
+        }
+        ImgurToken token = stored.get();
+        Instant now = Instant.now();
+        Instant retryAt = refreshBackoff.getIfPresent(username);
+        if (needsRefresh(token, now) && (retryAt == null || !now.isBefore(retryAt))) {
+            try {
+                token = refreshAccessToken(username);
+            } catch (Exception ex) {
+                // keep using the current token, requests only try again after the backoff (the scheduler keeps trying)
+                refreshBackoff.put(username, now.plusSeconds(refreshFailureBackoffSeconds));
+                log.warn("Refreshing access token failed: {}", ex.getMessage());
+            }
+        }
+        return token.getAccessToken();
+    }
+
+    // Refresh a user's tokens. Callers arriving while a refresh is running wait for that one.
+    public ImgurToken refreshAccessToken(String username) {
+        CompletableFuture<ImgurToken> refresh = new CompletableFuture<>();
+        CompletableFuture<ImgurToken> running = refreshes.putIfAbsent(username, refresh);
+        if (running != null) {
+            return running.join();
+        }
+        try {
+            ImgurToken token = tokenStore.reload(username).orElseThrow(() -> new IllegalStateException("No token stored for " + username));
+            // another caller, or another instance, may have refreshed just before we got here
+            if (!needsRefresh(token, Instant.now())) {
+                refresh.complete(token);
+                return token;
+            }
+            MultiValueMap<String, String> requestData = new LinkedMultiValueMap<>();
+            requestData.add("client_id", clientId);
+            requestData.add("client_secret", clientSecret);
+            requestData.add("refresh_token", token.getRefreshToken());
+            requestData.add("grant_type", "refresh_token");
+            ImgurTokenResponse tokens = requestToken(requestData);
+            if (tokens.refreshToken() == null) {
+                // Imgur rotates refresh tokens, but keep the old one if none came back
+                tokens = new ImgurTokenResponse(tokens.accessToken(), token.getRefreshToken(), tokens.expiresIn(), tokens.accountUsername());
+            }
+            storeTokens(username, tokens);
+            ImgurToken refreshed = tokenStore.find(username).orElseThrow();
+            refreshBackoff.invalidate(username);
+            log.info("Access token refreshed");
+            refresh.complete(refreshed);
+            return refreshed;
+        } catch (RuntimeException ex) {
+            refresh.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            refreshes.remove(username, refresh);
+        }
+    }
+
+    // Background refresh of tokens that expire soon, so requests don't hit an expired token
+    @Scheduled(fixedDelayString = "${imgur.token.refresh-interval-ms:60000}")
+    public void refreshExpiringTokens() {
+        for (ImgurToken token : tokenStore.findExpiringBefore(Instant.now().plusSeconds(refreshSkewSeconds))) {
+            try {
+                refreshAccessToken(token.getUsername());
+            } catch (Exception ex) {
+                log.error("Refreshing access token failed: {}", ex.getMessage());
+            }
+        }
+    }
+
+    private boolean needsRefresh(ImgurToken token, Instant now) {
+        return token.getRefreshToken() != null && token.getExpiresAt() != null
+                && token.getExpiresAt().isBefore(now.plusSeconds(refreshSkewSeconds));
     }
 }
@@ -0,0 +1,209 @@
+package com.myapp.userimageapp.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.myapp.userimageapp.model.UploadResult;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@Service
+public class BatchUploadService {
+
+    private final ImageService imageService;
+
+    private final UploadJobRegistry uploadJobRegistry;
+
+    private final int perUserConcurrency;
+
+    // Global limit of concurrent batch uploads to Imgur across all users
+    private final Semaphore globalPermits;
+
+    private final ExecutorService uploadExecutor;
+
+    // Uploads of each user waiting or running, shared by all batches of the user so parallel batches can't exceed
+    // the per-user limit. Only users with uploads in progress have a lane.
+    private final Map<String, UserLane> userLanes = new ConcurrentHashMap<>();
+
+    @Autowired
+    public BatchUploadService(ImageService imageService, UploadJobRegistry uploadJobRegistry,
+            @Value("${imgur.batch.global-concurrency:32}") int globalConcurrency,
+            @Value("${imgur.batch.per-user-concurrency:4}") int perUserConcurrency,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.imageService = imageService;
+        this.uploadJobRegistry = uploadJobRegistry;
+        this.perUserConcurrency = perUserConcurrency;
+        this.globalPermits = new Semaphore(globalConcurrency);
+        if (virtualThreads) {
+            // blocked uploads park their virtual thread instead of holding a platform thread
+            log.info("Batch uploads running on virtual threads");
+            this.uploadExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("imgur-batch-", 1).factory());
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.uploadExecutor = Executors.newFixedThreadPool(globalConcurrency, runnable -> {
+                Thread thread = new Thread(runnable, "imgur-batch-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public BatchUploadService(ImageService imageService, int globalConcurrency, int perUserConcurrency, boolean virtualThreads) {
+        this(imageService, new UploadJobRegistry(), globalConcurrency, perUserConcurrency, virtualThreads);
+    }
+
+    // Uploads all files concurrently, onResult is called as soon as each file finishes and onComplete after the last one
+    public void uploadImages(List<MultipartFile> files, String userKey, String accessToken, Consumer<UploadResult> onResult, Runnable onComplete) {
+        uploadImages(files, userKey, accessToken, null, onResult, onComplete);
+    }
+
+    // Same, and when jobOwner (a username) is given every file is tracked as an upload job of that user
+    public void uploadImages(List<MultipartFile> files, String userKey, String accessToken, String jobOwner,
+            Consumer<UploadResult> onResult, Runnable onComplete) {
+        log.info("Starting batch upload of {} files..", files.size());
+        if (files.isEmpty()) {
+            onComplete.run();
+            return;
+        }
+        // jobs are registered up front, so the whole batch shows up as queued right away
+        Map<MultipartFile, UploadJobRegistry.Job> jobs = new IdentityHashMap<>();
+        if (jobOwner != null) {
+            for (MultipartFile file : files) {
+                jobs.put(file, uploadJobRegistry.start(jobOwner, null, file.getOriginalFilename(), file.getSize()));
+            }
+        }
+        AtomicInteger remaining = new AtomicInteger(files.size());
+        List<Runnable> uploads = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            uploads.add(() -> {
+                onResult.accept(uploadOne(file, userKey, accessToken, jobs.get(file)));
+                if (remaining.decrementAndGet() == 0) {
+                    log.info("Batch upload finished.");
+                    onComplete.run();
+                }
+            });
+        }
+        enqueue(userKey, uploads);
+    }
+
+    // Number of users with batch uploads waiting or running
+    public int activeUsers() {
+        return userLanes.size();
+    }
+
+    // Uploads wait in the user's lane and only reach the pool once the user is below the per-user limit,
+    // so pool threads never block on another user's limit and users take turns on the pool
+    private void enqueue(String userKey, List<Runnable> uploads) {
+        List<Runnable> ready = new ArrayList<>();
+        userLanes.compute(userKey, (key, lane) -> {
+            UserLane current = lane != null ? lane : new UserLane();
+            current.pending.addAll(uploads);
+            current.take(perUserConcurrency, ready);
+            return current;
+        });
+        submit(userKey, ready);
+    }
+
+    private void finished(String userKey) {
+        List<Runnable> ready = new ArrayList<>();
+        userLanes.computeIfPresent(userKey, (key, lane) -> {
+            lane.running--;
+            lane.take(perUserConcurrency, ready);
+            // idle lanes are dropped, the map doesn't grow with every user who ever uploaded
+            return lane.running == 0 && lane.pending.isEmpty() ? null : lane;
+        });
+        submit(userKey, ready);
+    }
+
+    private void submit(String userKey, List<Runnable> uploads) {
+        for (Runnable upload : uploads) {
+            uploadExecutor.execute(() -> {
+                try {
+                    upload.run();
+                } finally {
+                    finished(userKey);
+                }
+            });
+        }
+    }
+
+    // Only touched inside userLanes.compute, which serializes access per user
+    private static final class UserLane {
+
+        private final Queue<Runnable> pending = new ArrayDeque<>();
+
+        private int running;
+
+        void take(int limit, List<Runnable> ready) {
+            while (running < limit && !pending.isEmpty()) {
+                running++;
+                ready.add(pending.poll());
+            }
+        }
+    }
+
+    // job is null when the batch isn't tracked
+    private UploadResult uploadOne(MultipartFile file, String userKey, String accessToken, UploadJobRegistry.Job job) {
+        UploadResult result = upload(file, userKey, accessToken, job);
+        if (job != null) {
+            result.setJobId(job.getJobId());
+            if (result.getError() == null) {
+                job.done(result.getLink());
+            } else {
+                job.failed(result.getError());
+            }
+        }
+        return result;
+    }
+
+    private UploadResult upload(MultipartFile file, String userKey, String accessToken, UploadJobRegistry.Job job) {
+        String filename = file.getOriginalFilename();
+        try {
+            globalPermits.acquire();
+            // batch uploads queue behind interactive Imgur requests
+            try (ImgurRequestScheduler.Scope bulk = ImgurRequestScheduler.bulk()) {
+                Map<String, Object> image;
+                if (job == null) {
+                    image = imageService.uploadImage(file, accessToken, userKey, UploadProgress.NONE);
+                } else {
+                    job.uploading();
+                    image = imageService.uploadImage(file, accessToken, userKey, job);
+                }
+                if (image == null) {
+                    return UploadResult.failure(filename, "Failed to upload image");
+                }
+                return UploadResult.success(filename, (String) image.get("id"), (String) image.get("link"), (String) image.get("deletehash"));
+            } finally {
+                globalPermits.release();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return UploadResult.failure(filename, "Upload interrupted");
+        } catch (Exception ex) {
+            log.error("Batch upload of {} failed: {}", filename, ex.getMessage());
+            return UploadResult.failure(filename, ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadExecutor.shutdown();
+    }
+}
@@ -0,0 +1,226 @@
+package com.myapp.userimageapp.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+// Image bytes kept on local disk by image id, bounded by imgur.proxy.max-bytes (the least used images are evicted).
+// Only the index is in memory, so files left from an earlier run are removed on startup.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "imgur.proxy.enabled", havingValue = "true")
+public class ImageContentCache implements MeterBinder {
+
+    private static final String SUFFIX = ".img";
+
+    private final Path dir;
+
+    private final Cache<String, Content> contents;
+
+    // Deleting an image drops its bytes along with the metadata
+    @Autowired
+    public ImageContentCache(@Value("${imgur.proxy.cache-dir:${java.io.tmpdir}/userimageapp-images}") String dir,
+            @Value("${imgur.proxy.max-bytes:1073741824}") long maxBytes, ImageMetadataCache metadataCache) throws IOException {
+        this(dir, maxBytes);
+        metadataCache.addInvalidationListener(this::invalidate);
+    }
+
+    public ImageContentCache(String dir, long maxBytes) throws IOException {
+        this.dir = Files.createDirectories(Paths.get(dir));
+        removeFiles(this.dir);
+        log.info("Caching image content in {} (maxBytes={})", this.dir, maxBytes);
+        this.contents = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String imageId, Content content) -> (int) Math.min(Integer.MAX_VALUE, content.getSize()))
+                // a file is deleted once its entry is gone and no response or thumbnail still has it pinned. The listener
+                // runs on the thread that evicted, so an unpinned file is gone by the time put or invalidate returns
+                .executor(Runnable::run)
+                .removalListener((String imageId, Content content, RemovalCause cause) -> {
+                    if (content != null) {
+                        content.removed();
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    public Content get(String imageId) {
+        return contents.getIfPresent(imageId);
+    }
+
+    // Stores the body under a new file (a file being sent is never overwritten) and replaces any older entry
+    public Content put(String imageId, InputStream body, String contentType, String etag) throws IOException {
+        Path file = Files.createTempFile(dir, imageId.replaceAll("[^A-Za-z0-9_-]", "_") + "-", SUFFIX);
+        try {
+            long size = Files.copy(body, file, StandardCopyOption.REPLACE_EXISTING);
+            // without an upstream ETag one is made up, it changes whenever the bytes are fetched again
+            String tag = etag != null ? etag : "\"" + Long.toHexString(size) + "-" + Long.toHexString(System.currentTimeMillis()) + "\"";
+            Content content = new Content(file, size, contentType, tag);
+            contents.put(imageId, content);
+            return content;
+        } catch (IOException | RuntimeException ex) {
+            delete(file);
+            throw ex;
+        }
+    }
+
+    public void invalidate(String imageId) {
+        contents.invalidate(imageId);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, contents, "imgur.image.content");
+        Gauge.builder("imgur.image.content.bytes", contents,
+                cache -> cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .description("Bytes of image content cached on disk")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private static void removeFiles(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                delete(file);
+            }
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            log.warn("Could not delete cached image {}: {}", file, ex.getMessage());
+        }
+    }
+
+    // One cached image: the file, its type and the ETag it's served (and revalidated) with
+    public static final class Content {
+
+        private final Path file;
+
+        private final long size;
+
+        private final String contentType;
+
+        private final String etag;
+
+        // last time Imgur confirmed the bytes (fetch or 304)
+        private volatile long validatedAt = System.currentTimeMillis();
+
+        // responses and thumbnail reads holding the file, see pin()
+        private int pins;
+
+        private boolean removed;
+
+        private boolean deleted;
+
+        Content(Path file, long size, String contentType, String etag) {
+            this.file = file;
+            this.size = size;
+            this.contentType = contentType;
+            this.etag = etag;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public long getValidatedAt() {
+            return validatedAt;
+        }
+
+        public void revalidated() {
+            validatedAt = System.currentTimeMillis();
+        }
+
+        // Keeps the file on disk until release(). False when the entry was already removed and its file deleted,
+        // the caller has to look the image up again
+        public synchronized boolean pin() {
+            if (deleted) {
+                return false;
+            }
+            pins++;
+            return true;
+        }
+
+        public synchronized void release() {
+            pins--;
+            deleteIfUnused();
+        }
+
+        // Releases the pin after delayMillis, for readers that open the file by name after the request returns (sendfile)
+        public void releaseAfter(long delayMillis) {
+            CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS).execute(this::release);
+        }
+
+        public FileChannel open() throws IOException {
+            return FileChannel.open(file, StandardOpenOption.READ);
+        }
+
+        synchronized void removed() {
+            removed = true;
+            deleteIfUnused();
+        }
+
+        private void deleteIfUnused() {
+            if (removed && pins == 0 && !deleted) {
+                deleted = true;
+                delete(file);
+            }
+        }
+
+        // Copies count bytes from position of the channel to out. The servlet stream is wrapped in a plain channel,
+        // so transferTo copies through a buffer here, only Tomcat's sendfile hands the file to the socket directly.
+        public static void transferTo(FileChannel channel, long position, long count, OutputStream out) throws IOException {
+            WritableByteChannel target = Channels.newChannel(out);
+            long sent = 0;
+            while (sent < count) {
+                long n = channel.transferTo(position + sent, count - sent, target);
+                if (n <= 0) {
+                    break;
+                }
+                sent += n;
+            }
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.myapp.userimageapp.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.myapp.userimageapp.model.ImgurImage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+// Bounded read-through cache of Imgur image metadata keyed by image id.
+// Metadata doesn't change after upload, so entries only leave on delete, TTL or weight eviction.
+// Entries are shared by every caller, so they're stored without the owner-only deletehash.
+@Slf4j
+@Component
+public class ImageMetadataCache implements MeterBinder {
+
+    private static final long DEFAULT_MAX_WEIGHT = 16 * 1024 * 1024;
+    private static final long DEFAULT_TTL_SECONDS = 3600;
+
+    private final Cache<String, ImgurImage> images;
+
+    // deletehash -> image id, so a delete by hash can invalidate the cached image. Only looked up, never returned
+    private final Cache<String, String> imageIdsByDeleteHash;
+
+    // caches holding data derived from an image (content, thumbnails), told the image id when it's invalidated
+    private final List<Consumer<String>> invalidationListeners = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public ImageMetadataCache(@Value("${imgur.cache.metadata.max-weight:16777216}") long maxWeight,
+            @Value("${imgur.cache.metadata.ttl-seconds:3600}") long ttlSeconds) {
+        log.info("Creating image metadata cache (maxWeight={}, ttl={}s)", maxWeight, ttlSeconds);
+        this.images = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((String imageId, ImgurImage image) -> estimateWeight(image))
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        this.imageIdsByDeleteHash = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxWeight / 256))
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    public ImageMetadataCache() {
+        this(DEFAULT_MAX_WEIGHT, DEFAULT_TTL_SECONDS);
+    }
+
+    public ImgurImage get(String imageId) {
+        return images.getIfPresent(imageId);
+    }
+
+    // Caches an image returned by Imgur without its deletehash, ignored if it has no id. Returns the image as given
+    public ImgurImage put(ImgurImage image) {
+        if (image == null || image.id() == null) {
+            return image;
+        }
+        images.put(image.id(), image.withoutDeleteHash());
+        if (image.deletehash() != null) {
+            imageIdsByDeleteHash.put(image.deletehash(), image.id());
+        }
+        return image;
+    }
+
+    // Accepts either an image id or a deletehash, Imgur allows deleting by both. The image id (the argument when it
+    // isn't a known deletehash) is passed on to the invalidation listeners
+    public void invalidate(String imageIdOrDeleteHash) {
+        String imageId = imageIdsByDeleteHash.getIfPresent(imageIdOrDeleteHash);
+        if (imageId != null) {
+            imageIdsByDeleteHash.invalidate(imageIdOrDeleteHash);
+            images.invalidate(imageId);
+        }
+        images.invalidate(imageIdOrDeleteHash);
+        String invalidated = imageId != null ? imageId : imageIdOrDeleteHash;
+        for (Consumer<String> listener : invalidationListeners) {
+            listener.accept(invalidated);
+        }
+    }
+
+    public void addInvalidationListener(Consumer<String> listener) {
+        invalidationListeners.add(listener);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, images, "imgur.image.metadata");
+    }
+
+    // Rough retained size in bytes: record and boxed numbers plus string characters
+    private static int estimateWeight(ImgurImage image) {
+        return 160 + length(image.id()) + length(image.title()) + length(image.description())
+                + length(image.type()) + length(image.deletehash()) + length(image.link());
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : 40 + text.length() * 2;
+    }
+}
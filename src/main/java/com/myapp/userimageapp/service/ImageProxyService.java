@@ -0,0 +1,115 @@
+package com.myapp.userimageapp.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import com.myapp.userimageapp.service.ImageContentCache.Content;
+import com.myapp.userimageapp.service.ImgurResilience.CallType;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Serves image bytes through this service instead of sending clients to Imgur's link: the image is fetched once
+// into the disk cache and revalidated with If-None-Match once it's older than imgur.proxy.revalidate-after-seconds.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "imgur.proxy.enabled", havingValue = "true")
+public class ImageProxyService {
+
+    private final RestTemplate restTemplate;
+
+    private final ImageService imageService;
+
+    private final ImageContentCache contentCache;
+
+    private final ImgurResilience resilience;
+
+    private final RequestCoalescer coalescer;
+
+    private final long revalidateAfterMillis;
+
+    @Autowired
+    public ImageProxyService(RestTemplate restTemplate, ImageService imageService, ImageContentCache contentCache,
+            ImgurResilience resilience, RequestCoalescer coalescer,
+            @Value("${imgur.proxy.revalidate-after-seconds:300}") long revalidateAfterSeconds) {
+        this.restTemplate = restTemplate;
+        this.imageService = imageService;
+        this.contentCache = contentCache;
+        this.resilience = resilience;
+        this.coalescer = coalescer;
+        this.revalidateAfterMillis = revalidateAfterSeconds * 1000;
+    }
+
+    // The cached content of an image, fetched or revalidated first when needed. Null if Imgur doesn't have the image.
+    // The content comes back pinned so eviction can't delete its file, the caller releases it once done reading.
+    public Content getContent(String imageId, String accessToken) throws IOException {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Content content = lookup(imageId, accessToken);
+            if (content == null || content.pin()) {
+                return content;
+            }
+            // evicted (and deleted) between the lookup and the pin
+        }
+        throw new IOException("Image content of " + imageId + " evicted before it could be read");
+    }
+
+    private Content lookup(String imageId, String accessToken) throws IOException {
+        Content cached = contentCache.get(imageId);
+        if (cached != null && System.currentTimeMillis() - cached.getValidatedAt() < revalidateAfterMillis) {
+            return cached;
+        }
+        // concurrent misses and revalidations of the same image share one download
+        try {
+            return coalescer.execute("image-content", imageId, () -> load(imageId, accessToken, cached));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private Content load(String imageId, String accessToken, Content cached) {
+        // the link and type come from the (cached) metadata
+        Map<String, Object> image = imageService.getImage(imageId, accessToken);
+        if (image == null || image.get("link") == null) {
+            contentCache.invalidate(imageId);
+            return null;
+        }
+        String link = (String) image.get("link");
+        String type = (String) image.get("type");
+        try {
+            // image links are served by Imgur's CDN, outside the API credit limits, so the scheduler isn't involved
+            return resilience.call("image.content", CallType.IDEMPOTENT, () -> restTemplate.execute(link, HttpMethod.GET, request -> {
+                if (cached != null) {
+                    request.getHeaders().setIfNoneMatch(cached.getEtag());
+                }
+            }, response -> {
+                if (cached != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                    log.info("Image content of {} revalidated..", imageId);
+                    cached.revalidated();
+                    return cached;
+                }
+                MediaType contentType = response.getHeaders().getContentType();
+                log.info("Image content of {} fetched..", imageId);
+                return contentCache.put(imageId, response.getBody(), contentType != null ? contentType.toString() : type,
+                        response.getHeaders().getETag());
+            }));
+        } catch (HttpClientErrorException.NotFound ex) {
+            log.warn("Image content of {} no longer on Imgur", imageId);
+            contentCache.invalidate(imageId);
+            return null;
+        } catch (ResourceAccessException ex) {
+            // includes failures writing the cache file, RestTemplate wraps those too
+            throw new UncheckedIOException(new IOException(ex.getMessage(), ex));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.myapp.userimageapp.service;
+
+import java.time.Instant;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import com.myapp.userimageapp.model.ImageRecord;
+import com.myapp.userimageapp.model.UserModel;
+import com.myapp.userimageapp.repository.ImageRecordRepository;
+import com.myapp.userimageapp.repository.ImageSummary;
+import com.myapp.userimageapp.repository.UserRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Keeps image_record in step with uploads and deletes made through the app
+@Slf4j
+@Service
+public class ImageRecordService {
+
+    public static final int MAX_PAGE_SIZE = 200;
+
+    @Autowired
+    private ImageRecordRepository imageRecordRepo;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private UserService userService;
+
+    // Record an uploaded image (the map returned by ImageService) for a user
+    public void recordUpload(String username, Map<String, Object> image) {
+        Object datetime = image.get("datetime");
+        Object size = image.get("size");
+        recordUpload(username, (String) image.get("id"), (String) image.get("deletehash"), (String) image.get("link"),
+                size instanceof Number number ? number.longValue() : null, (String) image.get("type"),
+                datetime instanceof Number seconds ? Instant.ofEpochSecond(seconds.longValue()) : Instant.now());
+    }
+
+    public void recordUpload(String username, String imageId, String deleteHash, String link, Long size, String mimeType, Instant createdAt) {
+        Long ownerId = ownerId(username);
+        if (ownerId == null || imageId == null) {
+            return;
+        }
+        // owner by reference only, the user row isn't loaded
+        UserModel owner = userRepo.getReferenceById(ownerId);
+        imageRecordRepo.save(new ImageRecord(null, imageId, deleteHash, link, size, mimeType, createdAt, owner));
+        log.info("Recorded image {} for {}", imageId, username);
+    }
+
+    public void removeImage(String username, String imageIdOrDeleteHash) {
+        Long ownerId = ownerId(username);
+        if (ownerId != null) {
+            imageRecordRepo.deleteByOwnerIdAndKey(ownerId, imageIdOrDeleteHash);
+        }
+    }
+
+    // One page of a user's images, newest first
+    public Page<ImageSummary> listImages(String username, int page, int size) {
+        Long ownerId = ownerId(username);
+        PageRequest pageRequest = PageRequest.of(page, Math.min(Math.max(1, size), MAX_PAGE_SIZE));
+        if (ownerId == null) {
+            return Page.empty(pageRequest);
+        }
+        return imageRecordRepo.findByOwnerIdOrderByCreatedAtDesc(ownerId, pageRequest);
+    }
+
+    // The user comes from UserService's cache, so this is normally no query at all
+    private Long ownerId(String username) {
+        UserModel user = userService.getUserInfo(username);
+        return user == null ? null : user.getId();
+    }
+}
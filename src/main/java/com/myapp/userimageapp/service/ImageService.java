@@ -1,20 +1,42 @@
 package com.myapp.userimageapp.service;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.*;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpMessageConverterExtractor;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.myapp.userimageapp.model.ImgurBasicResponse;
+import com.myapp.userimageapp.model.ImgurImage;
+import com.myapp.userimageapp.model.ImgurImageListResponse;
+import com.myapp.userimageapp.model.ImgurImageResponse;
+import com.myapp.userimageapp.service.ImgurResilience.CallType;
+
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -33,20 +55,82 @@ public class ImageService {
     private static final String IMGUR_API_URL = "https://api.imgur.com/3/image";
     private static final String IMGUR_ACCOUNT_URL = "https://api.imgur.com/3/account/me/images";
 
+    // Imgur returns account images in fixed pages of 50
+    public static final int IMGUR_PAGE_SIZE = 50;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // Parses the streamed upload's response with our own converter, independent of the RestTemplate's list
+    private static final HttpMessageConverterExtractor<ImgurImageResponse> UPLOAD_RESPONSE_EXTRACTOR =
+            new HttpMessageConverterExtractor<>(ImgurImageResponse.class, List.<HttpMessageConverter<?>>of(new MappingJackson2HttpMessageConverter()));
+
+    // quotes and line breaks would end the part header early and let a filename add headers of its own
+    private static final Pattern HEADER_UNSAFE = Pattern.compile("[\"\\r\\n]");
+
+    //upper bound on pages walked by the NDJSON listing
+    @Value("${imgur.listing.max-pages:200}")
+    private int maxPages = 200;
+
+    //buffer size used when piping a streamed upload to Imgur
+    @Value("${imgur.upload.chunk-size:65536}")
+    private int chunkSize = 65536;
+
     private final RestTemplate restTemplate;
 
-    public ImageService(RestTemplate restTemplate)
+    private final ImageMetadataCache metadataCache;
+
+    private final UserImagesCache userImagesCache;
+
+    // circuit breaker, bulkhead, retry and hedging around every Imgur call
+    private final ImgurResilience resilience;
+
+    // each attempt then waits for its turn against Imgur's credit limits
+    private final ImgurRequestScheduler scheduler;
+
+    // identical lookups running at the same time share one call
+    private final RequestCoalescer coalescer;
+
+    @Autowired
+    public ImageService(RestTemplate restTemplate, ImageMetadataCache metadataCache, UserImagesCache userImagesCache,
+            ImgurResilience resilience, ImgurRequestScheduler scheduler, RequestCoalescer coalescer)
     {
         this.restTemplate=restTemplate;
+        this.metadataCache=metadataCache;
+        this.userImagesCache=userImagesCache;
+        this.resilience=resilience;
+        this.scheduler=scheduler;
+        this.coalescer=coalescer;
+    }
+
+    public ImageService(RestTemplate restTemplate, ImageMetadataCache metadataCache, UserImagesCache userImagesCache)
+    {
+        this(restTemplate, metadataCache, userImagesCache, new ImgurResilience(), new ImgurRequestScheduler(), new RequestCoalescer());
+    }
+
+    public ImageService(RestTemplate restTemplate)
+    {
+        this(restTemplate, new ImageMetadataCache(), new UserImagesCache());
     }
 
     public ImageService()
     {
-        this.restTemplate= new RestTemplate();
+        this(new RestTemplate());
     }
 
     // Upload an image to Imgur using OAuth access token
     public Map<String, Object> uploadImage(MultipartFile imageFile, String accessToken) throws IOException {
+        return uploadImage(imageFile, accessToken, UploadProgress.NONE);
+    }
+
+    // Same, reporting the bytes sent to Imgur as the body is written
+    public Map<String, Object> uploadImage(MultipartFile imageFile, String accessToken, UploadProgress progress) throws IOException {
+        return uploadImage(imageFile, accessToken, null, progress);
+    }
+
+    // Same, adding the image to username's cached listing. The user's listing stays under the username across
+    // token refreshes, without a username it's kept under the access token
+    public Map<String, Object> uploadImage(MultipartFile imageFile, String accessToken, String username, UploadProgress progress)
+            throws IOException {
         log.info("In image upload process in image service..");
         try{
             // Prepare the headers for the request
@@ -56,7 +140,8 @@ public class ImageService {
 
 
             MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-            body.add("image", imageFile.getResource());  // Add the image file to the request
+            Resource image = imageFile.getResource();
+            body.add("image", progress == UploadProgress.NONE ? image : new ProgressResource(image, progress));  // Add the image file to the request
             body.add("type", "file");
             body.add("public", "true"); // Ensure the image is public
 
@@ -64,19 +149,20 @@ public class ImageService {
             // Wrap everything in HttpEntity
             HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
 
-            // Send the request to Imgur's API
-            ResponseEntity<Map> response = restTemplate.exchange(
+            // Send the request to Imgur's API (the multipart body can be re-read, so a rejected upload may be retried)
+            ResponseEntity<ImgurImageResponse> response = resilience.call("image.upload", CallType.WRITE,
+                    () -> scheduler.run(accessToken, ImgurRequestScheduler.UPLOAD_COST, () -> restTemplate.exchange(
                     IMGUR_API_URL,
                     HttpMethod.POST,
                     requestEntity,
-                    Map.class
-            );
+                    ImgurImageResponse.class
+            )));
             // If successful, extract and return the image data
             if (response.getStatusCode() == HttpStatus.OK) {
-                Map<String, Object> responseBody = response.getBody();
-                if (responseBody != null && responseBody.containsKey("data")) {
+                ImgurImageResponse responseBody = response.getBody();
+                if (responseBody != null && responseBody.data() != null) {
                     log.info("Image upload successful in image service...");
-                    return (Map<String, Object>) responseBody.get("data");
+                    return uploaded(responseBody.data(), listingKey(username, accessToken));
                 } else {
                     throw new IOException("Failed to upload image: No 'data' field in response");
                 }
@@ -84,6 +170,10 @@ public class ImageService {
                 throw new IOException("Imgur API responded with status " + response.getStatusCode());
             }
         }
+        catch(ImgurUnavailableException ex)
+        {
+            throw ex;
+        }
         catch(Exception ex)
         {
             log.error(ex.getMessage());
@@ -91,9 +181,165 @@ public class ImageService {
         }
     }
 
-    // Get image from Imgur by ID
+    // Upload an image to Imgur by piping the incoming body straight into the outbound multipart request,
+    // only one chunk of the image is held in memory at a time
+    public Map<String, Object> uploadImageStream(InputStream imageStream, String filename, String contentType, String accessToken)
+            throws IOException {
+        return uploadImageStream(imageStream, filename, contentType, accessToken, UploadProgress.NONE);
+    }
+
+    // Same, reporting the bytes sent to Imgur as the body is written
+    public Map<String, Object> uploadImageStream(InputStream imageStream, String filename, String contentType, String accessToken,
+            UploadProgress progress) throws IOException {
+        return uploadImageStream(imageStream, filename, contentType, accessToken, null, progress);
+    }
+
+    // Same, adding the image to username's cached listing
+    public Map<String, Object> uploadImageStream(InputStream imageStream, String filename, String contentType, String accessToken,
+            String username, UploadProgress progress) throws IOException {
+        log.info("In streaming image upload process in image service..");
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        String name = (filename != null && !filename.isBlank()) ? filename : "image";
+        String type = (contentType != null && !contentType.isBlank()) ? contentType : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+
+        ImgurImageResponse responseBody;
+        try {
+            // the image stream can only be sent once, so no retries
+            responseBody = resilience.call("image.upload", CallType.ONCE,
+                    () -> scheduler.run(accessToken, ImgurRequestScheduler.UPLOAD_COST, () -> restTemplate.execute(IMGUR_API_URL, HttpMethod.POST, request -> {
+                request.getHeaders().set("Authorization", "Bearer " + accessToken);  // Use OAuth Bearer token
+                request.getHeaders().setContentType(MediaType.parseMediaType("multipart/form-data; boundary=" + boundary));
+                if (request instanceof StreamingHttpOutputMessage streamingRequest) {
+                    // Body is written lazily on the connection, nothing is buffered by the request factory
+                    streamingRequest.setBody(out -> writeMultipartBody(out, boundary, name, type, imageStream, progress));
+                } else {
+                    writeMultipartBody(request.getBody(), boundary, name, type, imageStream, progress);
+                }
+            }, response -> {
+                scheduler.record(accessToken, response.getHeaders());
+                return UPLOAD_RESPONSE_EXTRACTOR.extractData(response);
+            })));
+        } catch (RestClientException ex) {
+            // Imgur rejected the upload or the connection failed, the caller decides what the client sees
+            throw new IOException("Imgur upload failed: " + ex.getMessage(), ex);
+        }
+
+        if (responseBody == null || responseBody.data() == null) {
+            throw new IOException("Failed to upload image: No 'data' field in response");
+        }
+        log.info("Streaming image upload successful in image service...");
+        return uploaded(responseBody.data(), listingKey(username, accessToken));
+    }
+
+    // Records a new upload in the local caches and returns it in the Imgur "data" shape
+    private Map<String, Object> uploaded(ImgurImage image, String listingKey) {
+        metadataCache.put(image);
+        userImagesCache.addImage(listingKey, image);
+        return image.toMap();
+    }
+
+    // Key of a user's cached listing: the username, so a refreshed access token still finds it
+    private static String listingKey(String username, String accessToken) {
+        return username != null ? username : accessToken;
+    }
+
+    // Writes the same form fields as uploadImage, copying the image part in fixed size chunks
+    private void writeMultipartBody(OutputStream out, String boundary, String filename, String contentType, InputStream imageStream,
+            UploadProgress progress) throws IOException {
+        writeFormField(out, boundary, "type", "file");
+        writeFormField(out, boundary, "public", "true");
+        out.write(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"image\"; filename=\"" + HEADER_UNSAFE.matcher(filename).replaceAll("") + "\"\r\n"
+                + "Content-Type: " + contentType.replaceAll("[\\r\\n]", "") + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        byte[] buffer = new byte[chunkSize > 0 ? chunkSize : 65536];
+        int read;
+        long sent = 0;
+        while ((read = imageStream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            sent += read;
+            progress.bytesSent(sent);
+        }
+        out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    // Image part of uploadImage, counts the bytes as the converter reads them into the request
+    private static final class ProgressResource extends AbstractResource {
+
+        private final Resource resource;
+
+        private final UploadProgress progress;
+
+        ProgressResource(Resource resource, UploadProgress progress) {
+            this.resource = resource;
+            this.progress = progress;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(resource.getInputStream()) {
+                private long read;
+
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) {
+                        progress.bytesSent(++read);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int n = super.read(buffer, offset, length);
+                    if (n > 0) {
+                        read += n;
+                        progress.bytesSent(read);
+                    }
+                    return n;
+                }
+            };
+        }
+
+        @Override
+        public String getFilename() {
+            return resource.getFilename();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return resource.contentLength();
+        }
+
+        @Override
+        public String getDescription() {
+            return resource.getDescription();
+        }
+    }
+
+    private void writeFormField(OutputStream out, String boundary, String name, String value) throws IOException {
+        out.write(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n"
+                + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Get image from Imgur by ID. Metadata found is cached for every signed-in user, so it's always returned without
+    // the owner-only deletehash, whether it came from the cache or from Imgur (the owner's listing has the deletehash)
     public Map<String, Object> getImage(String imageId, String accessToken) {
         log.info("In image retrieval process..");
+        ImgurImage cached = metadataCache.get(imageId);
+        if (cached != null) {
+            log.info("Image metadata served from cache..");
+            return cached.toMap();
+        }
+        // concurrent misses for the same image with the same token share one Imgur call. Found metadata ends up in the
+        // shared cache anyway, the token is in the key so a refusal for one token isn't handed to callers with another
+        ImgurImage image = coalescer.execute("image", imageId + '/' + accessToken, () -> fetchImage(imageId, accessToken));
+        return image == null ? null : image.withoutDeleteHash().toMap();
+    }
+
+    // Fetch image metadata from Imgur and cache it, null if it can't be retrieved
+    private ImgurImage fetchImage(String imageId, String accessToken) {
         try{
             String url = IMGUR_API_URL + "/"+imageId;
 
@@ -104,13 +350,14 @@ public class ImageService {
             HttpEntity<String> requestEntity = new HttpEntity<>(headers);
 
             // Make a GET request to Imgur API
-            ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.GET, requestEntity, Map.class);
+            ResponseEntity<ImgurImageResponse> response = resilience.call("image.get", CallType.READ,
+                    () -> scheduler.run(accessToken, ImgurRequestScheduler.READ_COST,
+                            () -> restTemplate.exchange(url, HttpMethod.GET, requestEntity, ImgurImageResponse.class)));
 
             // Check if the response is successful and return image link
-            if (response.getStatusCode() == HttpStatus.OK) {
+            if (response.getStatusCode() == HttpStatus.OK && response.getBody().data() != null) {
                 log.info("Image retrieved successfully in image service..");
-                Map<String, Object> data = (Map<String, Object>) response.getBody().get("data");
-                return data;
+                return metadataCache.put(response.getBody().data());
             }
             else
             {
@@ -118,6 +365,10 @@ public class ImageService {
                 return null;
             }
         }   
+        catch(ImgurUnavailableException ex)
+        {
+            throw ex;
+        }
         catch(Exception ex)
         {
             log.error(ex.getMessage());
@@ -127,6 +378,11 @@ public class ImageService {
 
     // Delete an image from Imgur
     public boolean deleteImage(String deleteHash, String accessToken) {
+        return deleteImage(deleteHash, accessToken, null);
+    }
+
+    // Same, removing the image from username's cached listing
+    public boolean deleteImage(String deleteHash, String accessToken, String username) {
         log.info("In image deletion process in image service..");
 
         String url = IMGUR_API_URL + "/"+ deleteHash;
@@ -138,16 +394,34 @@ public class ImageService {
         HttpEntity<String> entity = new HttpEntity<>(headers);
 
         // Send DELETE request to Imgur API
-        ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.DELETE, entity, Map.class);
+        ResponseEntity<ImgurBasicResponse> response = resilience.call("image.delete", CallType.IDEMPOTENT,
+                () -> scheduler.run(accessToken, ImgurRequestScheduler.READ_COST,
+                        () -> restTemplate.exchange(url, HttpMethod.DELETE, entity, ImgurBasicResponse.class)));
         //System.out.println(response);
 
-        return response.getStatusCode() == HttpStatus.OK;
+        boolean isDeleted = response.getStatusCode() == HttpStatus.OK;
+        if (isDeleted) {
+            metadataCache.invalidate(deleteHash);
+            userImagesCache.removeImage(listingKey(username, accessToken), deleteHash);
+        }
+        return isDeleted;
     }
 
-    // Get all images of a user
+    // Get all images of a user, served from the per-user listing cache
     public List<Map<String, Object>> getUserImages(String accessToken) {
+        return getUserImages(accessToken, null);
+    }
+
+    // Same, from username's cached listing
+    public List<Map<String, Object>> getUserImages(String accessToken, String username) {
         log.info("In retrieval of all images of a user process...");
-        String url = IMGUR_ACCOUNT_URL;
+        // a miss and a background refresh for the same user share one Imgur call, made with this request's token
+        return toMaps(userImagesCache.get(listingKey(username, accessToken),
+                key -> coalescer.execute("user-images", key, () -> fetchUserImages(accessToken, IMGUR_ACCOUNT_URL))));
+    }
+
+    // Fetch images of a user from Imgur, url is the account images endpoint with an optional page
+    private List<ImgurImage> fetchUserImages(String accessToken, String url) {
         // Set the headers for the request
         HttpHeaders headers = new HttpHeaders();
         headers.set("Authorization", "Bearer " + accessToken);
@@ -156,13 +430,14 @@ public class ImageService {
 
         // Send GET request to Imgur API
         try {
-            ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.GET, entity, Map.class);
+            ResponseEntity<ImgurImageListResponse> response = resilience.call("account.images", CallType.READ,
+                    () -> scheduler.run(accessToken, ImgurRequestScheduler.READ_COST,
+                            () -> restTemplate.exchange(url, HttpMethod.GET, entity, ImgurImageListResponse.class)));
             
             if (response.getStatusCode() == HttpStatus.OK) {
-                Map<String, Object> responseBody = response.getBody();
+                ImgurImageListResponse responseBody = response.getBody();
                 log.info("Retrieval success in image service..");
-                System.out.println(responseBody.get("data"));
-                return (List<Map<String, Object>>) responseBody.get("data");
+                return responseBody.data();
             }
             else 
             {
@@ -172,6 +447,9 @@ public class ImageService {
                 throw new RuntimeException("Error fetching images: " + response.getStatusCode());
             }
         }
+        catch (ImgurUnavailableException ex) {
+            throw ex;
+        }
         catch (HttpClientErrorException | HttpServerErrorException ex) {
             log.error("Http error occurred: " + ex.getStatusCode() + " - " + ex.getResponseBodyAsString());
             throw new RuntimeException("HTTP error fetching user images", ex);
@@ -180,4 +458,69 @@ public class ImageService {
             throw new RuntimeException("Error fetching user images", ex);
         }
     }
+
+    // Get one page (0 based) of a user's images
+    public List<Map<String, Object>> getUserImagesPage(String accessToken, int page) {
+        log.info("In retrieval of page {} of a user's images..", page);
+        String url = IMGUR_ACCOUNT_URL + "/" + page;
+        return toMaps(coalescer.execute("user-images-page", accessToken + '/' + page, () -> fetchUserImages(accessToken, url)));
+    }
+
+    private static List<Map<String, Object>> toMaps(List<ImgurImage> images) {
+        return images == null ? null : images.stream().map(ImgurImage::toMap).toList();
+    }
+
+    // Writes every image of a user to out as NDJSON, page by page as Imgur returns them.
+    // Images are copied token by token from the Imgur response, so at most one page is in flight.
+    public int writeUserImagesAsNdjson(String accessToken, OutputStream out) throws IOException {
+        log.info("In streamed retrieval of all images of a user..");
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            int total = 0;
+            for (int page = 0; page < maxPages; page++) {
+                // pages are copied to out while they're read, a retry could repeat lines
+                String url = IMGUR_ACCOUNT_URL + "/" + page;
+                Integer written = resilience.call("account.images", CallType.ONCE,
+                        () -> scheduler.run(accessToken, ImgurRequestScheduler.READ_COST, () -> restTemplate.execute(url, HttpMethod.GET,
+                        request -> request.getHeaders().set("Authorization", "Bearer " + accessToken),
+                        response -> {
+                            scheduler.record(accessToken, response.getHeaders());
+                            return copyImagesAsLines(response.getBody(), generator);
+                        })));
+                int count = written != null ? written : 0;
+                total += count;
+                generator.flush();
+                if (count < IMGUR_PAGE_SIZE) {
+                    break;
+                }
+            }
+            log.info("Streamed {} images..", total);
+            return total;
+        }
+    }
+
+    // Copies each element of the top level "data" array to the generator, one line per image
+    private int copyImagesAsLines(InputStream body, JsonGenerator generator) throws IOException {
+        int count = 0;
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return 0;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        generator.copyCurrentStructure(parser);
+                        generator.writeRaw('\n');
+                        count++;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return count;
+    }
 }
@@ -0,0 +1,432 @@
+package com.myapp.userimageapp.service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+// Lets Imgur requests out against Imgur's credit limits, read from the X-RateLimit-* headers of every response.
+// At most max-in-flight requests run at once, the rest wait in per-user queues that are served round robin,
+// interactive requests before bulk ones. Bulk requests are held back once the client or user credits drop to their
+// reserve, so interactive ones still get through, and are shed after max-queue-wait-ms.
+@Slf4j
+@Component
+public class ImgurRequestScheduler implements MeterBinder {
+
+    public enum Priority {
+        // a user waiting on the answer
+        INTERACTIVE,
+        // batch and async uploads
+        BULK
+    }
+
+    // Imgur credits charged per request, corrected by the next response headers
+    public static final int READ_COST = 1;
+    public static final int UPLOAD_COST = 10;
+
+    private static final ThreadLocal<Priority> CURRENT_PRIORITY = ThreadLocal.withInitial(() -> Priority.INTERACTIVE);
+
+    // set by ImgurResilience around hedged reads: told when the request leaves the queue / not queued at all
+    private static final ThreadLocal<Runnable> ON_GRANTED = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> NO_QUEUE = ThreadLocal.withInitial(() -> false);
+
+    // waiting requests re-check the budget at least this often, credits also come back with time
+    private static final long RECHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int maxInFlight;
+
+    private final long maxQueueWaitNanos;
+
+    private final int maxQueuedPerUser;
+
+    private final long clientReserve;
+
+    private final long userReserve;
+
+    // credits seen in a response are trusted this long, after that a request is let through to find out again
+    private final long budgetTtlMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<Priority, Lane> lanes = new EnumMap<>(Priority.class);
+
+    private int inFlight;
+
+    private long clientRemaining = -1;
+
+    private long clientSeenAt;
+
+    // by access token, Imgur counts user credits per token
+    private final Cache<String, UserBudget> userBudgets;
+
+    private volatile MeterRegistry meterRegistry;
+
+    @Autowired
+    public ImgurRequestScheduler(@Value("${imgur.scheduler.max-in-flight:40}") int maxInFlight,
+            @Value("${imgur.scheduler.max-queue-wait-ms:5000}") long maxQueueWaitMillis,
+            @Value("${imgur.scheduler.max-queued-per-user:100}") int maxQueuedPerUser,
+            @Value("${imgur.scheduler.client-reserve:1250}") long clientReserve,
+            @Value("${imgur.scheduler.user-reserve:200}") long userReserve,
+            @Value("${imgur.scheduler.budget-ttl-seconds:60}") long budgetTtlSeconds) {
+        this.maxInFlight = maxInFlight;
+        this.maxQueueWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueWaitMillis);
+        this.maxQueuedPerUser = maxQueuedPerUser;
+        this.clientReserve = clientReserve;
+        this.userReserve = userReserve;
+        this.budgetTtlMillis = TimeUnit.SECONDS.toMillis(budgetTtlSeconds);
+        this.userBudgets = Caffeine.newBuilder()
+                .maximumSize(100000)
+                .expireAfterAccess(Duration.ofHours(1))
+                .build();
+        for (Priority priority : Priority.values()) {
+            lanes.put(priority, new Lane());
+        }
+    }
+
+    public ImgurRequestScheduler() {
+        this(40, 5000, 100, 1250, 200, 60);
+    }
+
+    // Marks the Imgur requests made by the current thread as bulk until closed:
+    // try (ImgurRequestScheduler.Scope bulk = ImgurRequestScheduler.bulk()) { ... }
+    public static Scope bulk() {
+        return priority(Priority.BULK);
+    }
+
+    // Priority of the Imgur requests made by the current thread. Not inherited by other threads,
+    // work handed to another thread takes it along with priority(...)
+    public static Priority currentPriority() {
+        return CURRENT_PRIORITY.get();
+    }
+
+    public static Scope priority(Priority priority) {
+        Priority previous = CURRENT_PRIORITY.get();
+        CURRENT_PRIORITY.set(priority);
+        return () -> CURRENT_PRIORITY.set(previous);
+    }
+
+    // Runs listener when a request made by the current thread is let out of the queue, right before it's sent
+    public static Scope onGranted(Runnable listener) {
+        Runnable previous = ON_GRANTED.get();
+        ON_GRANTED.set(listener);
+        return () -> ON_GRANTED.set(previous);
+    }
+
+    // Requests made by the current thread are turned away instead of queued when they can't go right away
+    public static Scope withoutQueueing() {
+        boolean previous = NO_QUEUE.get();
+        NO_QUEUE.set(true);
+        return () -> NO_QUEUE.set(previous);
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    // Waits for the user's turn, runs call and takes the credits left from its response.
+    // Throws ImgurUnavailableException when the request is shed.
+    public <T> T run(String user, int cost, Supplier<T> call) {
+        Ticket ticket = enqueue(user, CURRENT_PRIORITY.get(), cost, NO_QUEUE.get());
+        awaitTurn(ticket);
+        try {
+            Runnable granted = ON_GRANTED.get();
+            if (granted != null) {
+                granted.run();
+            }
+            T result = call.get();
+            if (result instanceof ResponseEntity<?> response) {
+                record(user, response.getHeaders());
+            }
+            return result;
+        } catch (HttpStatusCodeException ex) {
+            record(user, ex.getResponseHeaders());
+            throw ex;
+        } finally {
+            lock.lock();
+            try {
+                inFlight--;
+                dispatch();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Credits left according to a response, for calls whose response run() doesn't see (streamed bodies)
+    public void record(String user, HttpHeaders headers) {
+        if (headers == null) {
+            return;
+        }
+        long client = parseLong(headers.getFirst("X-RateLimit-ClientRemaining"));
+        long userRemaining = parseLong(headers.getFirst("X-RateLimit-UserRemaining"));
+        long userReset = parseLong(headers.getFirst("X-RateLimit-UserReset"));
+        if (client < 0 && userRemaining < 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            if (client >= 0) {
+                clientRemaining = client;
+                clientSeenAt = now;
+            }
+            if (userRemaining >= 0) {
+                // the reset header is an epoch second, without it the figure is trusted for budget-ttl
+                long validUntil = userReset > 0 ? userReset * 1000 : now + budgetTtlMillis;
+                userBudgets.put(user, new UserBudget(userRemaining, validUntil));
+            }
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Requests waiting for their turn
+    public int queued() {
+        lock.lock();
+        try {
+            return lanes.values().stream().mapToInt(lane -> lane.size).sum();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Ticket enqueue(String user, Priority priority, int cost, boolean noQueue) {
+        Ticket ticket = new Ticket(user, priority, cost);
+        lock.lock();
+        try {
+            Lane lane = lanes.get(priority);
+            ArrayDeque<Ticket> queue = lane.queues.get(user);
+            if (queue != null && queue.size() >= maxQueuedPerUser) {
+                throw shed(priority, "Too many queued Imgur requests", retryAfterSeconds());
+            }
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                lane.queues.put(user, queue);
+                lane.users.addLast(user);
+            }
+            queue.addLast(ticket);
+            lane.size++;
+            dispatch();
+            if (noQueue && ticket.granted.getCount() > 0) {
+                remove(ticket);
+                throw new ImgurUnavailableException("No free Imgur request slot", 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return ticket;
+    }
+
+    private void awaitTurn(Ticket ticket) {
+        long deadline = System.nanoTime() + maxQueueWaitNanos;
+        try {
+            while (!ticket.granted.await(Math.min(RECHECK_NANOS, Math.max(0, deadline - System.nanoTime())), TimeUnit.NANOSECONDS)) {
+                lock.lock();
+                try {
+                    // budgets may have expired meanwhile
+                    dispatch();
+                    if (ticket.granted.getCount() == 0) {
+                        return;
+                    }
+                    if (System.nanoTime() - deadline >= 0) {
+                        remove(ticket);
+                        throw shed(ticket.priority, "Imgur request budget exhausted", creditResetSeconds(ticket));
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            lock.lock();
+            try {
+                if (ticket.granted.getCount() == 0) {
+                    // got the slot anyway, hand it on
+                    inFlight--;
+                    dispatch();
+                } else {
+                    remove(ticket);
+                }
+            } finally {
+                lock.unlock();
+            }
+            throw new ImgurUnavailableException("Interrupted while waiting for Imgur", 1);
+        }
+    }
+
+    // Hands free slots to waiting requests: interactive first, users taking turns within a priority.
+    // Called with the lock held.
+    private void dispatch() {
+        long now = System.currentTimeMillis();
+        for (Priority priority : Priority.values()) {
+            Lane lane = lanes.get(priority);
+            int skipped = 0;
+            while (inFlight < maxInFlight && skipped < lane.users.size()) {
+                String user = lane.users.pollFirst();
+                ArrayDeque<Ticket> queue = lane.queues.get(user);
+                Ticket ticket = queue.peekFirst();
+                if (!hasBudget(ticket, now)) {
+                    lane.users.addLast(user);
+                    skipped++;
+                    continue;
+                }
+                queue.pollFirst();
+                lane.size--;
+                if (queue.isEmpty()) {
+                    lane.queues.remove(user);
+                } else {
+                    lane.users.addLast(user);
+                }
+                skipped = 0;
+                grant(ticket);
+            }
+        }
+    }
+
+    // Interactive requests may use credits down to zero, bulk ones stop at the reserve
+    private boolean hasBudget(Ticket ticket, long now) {
+        boolean bulk = ticket.priority == Priority.BULK;
+        if (clientRemaining >= 0 && now - clientSeenAt < budgetTtlMillis) {
+            if (bulk ? clientRemaining - ticket.cost < clientReserve : clientRemaining <= 0) {
+                return false;
+            }
+        }
+        UserBudget budget = userBudgets.getIfPresent(ticket.user);
+        if (budget != null && now < budget.validUntil) {
+            return bulk ? budget.remaining - ticket.cost >= userReserve : budget.remaining > 0;
+        }
+        return true;
+    }
+
+    private void grant(Ticket ticket) {
+        inFlight++;
+        // charged up front so a burst can't overshoot before the responses come back
+        if (clientRemaining >= 0) {
+            clientRemaining -= ticket.cost;
+        }
+        UserBudget budget = userBudgets.getIfPresent(ticket.user);
+        if (budget != null) {
+            budget.remaining -= ticket.cost;
+        }
+        ticket.granted.countDown();
+    }
+
+    private void remove(Ticket ticket) {
+        Lane lane = lanes.get(ticket.priority);
+        ArrayDeque<Ticket> queue = lane.queues.get(ticket.user);
+        if (queue != null && queue.remove(ticket)) {
+            lane.size--;
+            if (queue.isEmpty()) {
+                lane.queues.remove(ticket.user);
+                lane.users.remove(ticket.user);
+            }
+        }
+    }
+
+    private ImgurUnavailableException shed(Priority priority, String message, long retryAfterSeconds) {
+        log.warn("Shedding {} Imgur request: {}", priority, message);
+        MeterRegistry registry = meterRegistry;
+        if (registry != null) {
+            registry.counter("imgur.scheduler.shed", "priority", priority.name().toLowerCase()).increment();
+        }
+        return new ImgurUnavailableException(message, retryAfterSeconds);
+    }
+
+    // Budgets are trusted for budget-ttl, by then the request may get through again
+    private long retryAfterSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(budgetTtlMillis);
+    }
+
+    // When the user's credits come back (X-RateLimit-UserReset), budget-ttl when that isn't known. Called with the lock held.
+    private long creditResetSeconds(Ticket ticket) {
+        UserBudget budget = userBudgets.getIfPresent(ticket.user);
+        long now = System.currentTimeMillis();
+        if (budget != null && now < budget.validUntil && !hasBudget(ticket, now)) {
+            return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(budget.validUntil - now + 999));
+        }
+        return retryAfterSeconds();
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        meterRegistry = registry;
+        Gauge.builder("imgur.scheduler.in.flight", this, scheduler -> scheduler.inFlight).register(registry);
+        Gauge.builder("imgur.scheduler.queued", this, ImgurRequestScheduler::queued).register(registry);
+        Gauge.builder("imgur.budget.client.remaining", this, scheduler -> scheduler.clientRemaining)
+                .description("Imgur client credits left as last reported, -1 when unknown")
+                .register(registry);
+    }
+
+    // Waiting requests of one priority, one queue per user plus the order in which users get their next turn
+    private static final class Lane {
+
+        private final Map<String, ArrayDeque<Ticket>> queues = new HashMap<>();
+
+        private final ArrayDeque<String> users = new ArrayDeque<>();
+
+        private int size;
+    }
+
+    private static final class Ticket {
+
+        private final String user;
+
+        private final Priority priority;
+
+        private final int cost;
+
+        private final CountDownLatch granted = new CountDownLatch(1);
+
+        Ticket(String user, Priority priority, int cost) {
+            this.user = user;
+            this.priority = priority;
+            this.cost = cost;
+        }
+    }
+
+    private static final class UserBudget {
+
+        private long remaining;
+
+        private final long validUntil;
+
+        UserBudget(long remaining, long validUntil) {
+            this.remaining = remaining;
+            this.validUntil = validUntil;
+        }
+    }
+}
@@ -0,0 +1,539 @@
+package com.myapp.userimageapp.service;
+
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import com.myapp.userimageapp.service.ImgurRequestScheduler.Priority;
+import com.myapp.userimageapp.service.ImgurRequestScheduler.Scope;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// Wraps every blocking Imgur call (ImageService, AuthService), with separate state per endpoint:
+// - bulkhead: at most max-concurrent calls in flight, others wait up to max-wait-ms and are then turned away
+// - circuit breaker: opens when failure-rate % of the last window-size calls failed (5xx, I/O errors),
+//   lets half-open-calls probes through after open-ms and closes again when they all succeed
+// - retry: full jitter exponential backoff up to max-backoff-ms, or the wait Imgur asks for on 429 (Retry-After, rate limit
+//   reset headers) when it's at most max-rate-limit-wait-ms. Retries sleep on the caller's (request) thread, so both are
+//   kept short; a longer wait fails fast and the client gets 503 with Retry-After instead
+// - hedging: a READ still running hedge-delay-ms after ImgurRequestScheduler let it out gets a second identical request,
+//   sent only if the scheduler has a free slot for it right away. The first answer wins and the other one is cancelled
+//   (its virtual thread is interrupted, which closes its connection). Time spent queued doesn't count, so a backlog
+//   in the scheduler doesn't turn into duplicate requests; reads that don't go through the scheduler aren't hedged.
+@Slf4j
+@Component
+public class ImgurResilience implements MeterBinder {
+
+    public enum CallType {
+        // safe to repeat and to send twice at once (GET)
+        READ,
+        // safe to repeat, not worth hedging (DELETE)
+        IDEMPOTENT,
+        // only repeated when Imgur can't have acted on it (429, 503, connection refused)
+        WRITE,
+        // never repeated, e.g. the request body is a one-shot stream
+        ONCE
+    }
+
+    private final int windowSize;
+    private final int failureRatePercent;
+    private final long openMillis;
+    private final int halfOpenCalls;
+    private final int maxConcurrent;
+    private final long maxWaitMillis;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long maxRateLimitWaitMillis;
+    private final long hedgeDelayMillis;
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    // hedged reads run here, the caller's thread only waits; bounded by the bulkheads
+    private final ExecutorService hedgeExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private volatile MeterRegistry meterRegistry;
+
+    @Autowired
+    public ImgurResilience(@Value("${imgur.resilience.window-size:20}") int windowSize,
+            @Value("${imgur.resilience.failure-rate:50}") int failureRatePercent,
+            @Value("${imgur.resilience.open-ms:30000}") long openMillis,
+            @Value("${imgur.resilience.half-open-calls:3}") int halfOpenCalls,
+            @Value("${imgur.resilience.max-concurrent:50}") int maxConcurrent,
+            @Value("${imgur.resilience.max-wait-ms:500}") long maxWaitMillis,
+            @Value("${imgur.resilience.retry.max-attempts:3}") int maxAttempts,
+            @Value("${imgur.resilience.retry.base-backoff-ms:200}") long baseBackoffMillis,
+            @Value("${imgur.resilience.retry.max-backoff-ms:1000}") long maxBackoffMillis,
+            @Value("${imgur.resilience.retry.max-rate-limit-wait-ms:1000}") long maxRateLimitWaitMillis,
+            @Value("${imgur.resilience.hedge-delay-ms:800}") long hedgeDelayMillis) {
+        this.windowSize = windowSize;
+        this.failureRatePercent = failureRatePercent;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = halfOpenCalls;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMillis = maxWaitMillis;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.maxRateLimitWaitMillis = maxRateLimitWaitMillis;
+        this.hedgeDelayMillis = hedgeDelayMillis;
+    }
+
+    public ImgurResilience() {
+        this(20, 50, 30000, 3, 50, 500, 3, 200, 1000, 1000, 800);
+    }
+
+    // Runs call against the named endpoint. Imgur's own errors are rethrown once retries are used up,
+    // local rejections (circuit open, bulkhead full, rate limited beyond max-rate-limit-wait-ms) as ImgurUnavailableException.
+    public <T> T call(String endpoint, CallType type, Supplier<T> call) {
+        Endpoint target = endpoints.computeIfAbsent(endpoint, this::newEndpoint);
+        int attempts = type == CallType.ONCE ? 1 : maxAttempts;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return type == CallType.READ && hedgeDelayMillis > 0 ? hedged(target, call) : attempt(target, call, maxWaitMillis);
+            } catch (ImgurUnavailableException ex) {
+                // turned away locally, an immediate retry would be too
+                throw ex;
+            } catch (RuntimeException ex) {
+                long rateLimitWait = rateLimitWaitMillis(ex);
+                if (rateLimitWait > maxRateLimitWaitMillis || (isRateLimited(ex) && attempt >= attempts)) {
+                    throw new ImgurUnavailableException(isRateLimited(ex) ? "Imgur rate limit reached" : "Imgur unavailable",
+                            Math.max(rateLimitWait, 0) / 1000);
+                }
+                if (attempt >= attempts || !isRetryable(type, ex)) {
+                    throw ex;
+                }
+                long wait = rateLimitWait >= 0 ? rateLimitWait : backoffMillis(attempt);
+                log.warn("Imgur call {} failed ({}), retry {} in {} ms", endpoint, ex.getMessage(), attempt, wait);
+                count("imgur.calls.retried", endpoint);
+                sleep(wait);
+            }
+        }
+    }
+
+    // One attempt inside the endpoint's bulkhead and circuit breaker
+    private <T> T attempt(Endpoint target, Supplier<T> call, long waitMillis) {
+        if (!target.acquire(waitMillis)) {
+            count("imgur.calls.rejected", target.name, "reason", "bulkhead_full");
+            throw new ImgurUnavailableException("Too many concurrent Imgur calls (" + target.name + ")", 1);
+        }
+        try {
+            if (!target.breaker.tryAcquire()) {
+                count("imgur.calls.rejected", target.name, "reason", "circuit_open");
+                throw new ImgurUnavailableException("Imgur circuit open (" + target.name + ")", target.breaker.retryAfterSeconds());
+            }
+            try {
+                T result = call.get();
+                target.breaker.onSuccess();
+                return result;
+            } catch (ImgurUnavailableException ex) {
+                // shed before reaching Imgur (ImgurRequestScheduler), says nothing about Imgur's health
+                target.breaker.onIgnored();
+                throw ex;
+            } catch (RuntimeException ex) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // cancelled (the other side of a hedge won), not Imgur's fault
+                    target.breaker.onIgnored();
+                } else if (isFailure(ex)) {
+                    target.breaker.onFailure();
+                } else {
+                    // Imgur answered (404, 403, ...), so it's up
+                    target.breaker.onSuccess();
+                }
+                throw ex;
+            }
+        } finally {
+            target.bulkhead.release();
+        }
+    }
+
+    // Primary attempt, plus a second one if the primary is slow and the endpoint healthy.
+    // Both run on other threads, so they take the caller's scheduler priority along explicitly.
+    private <T> T hedged(Endpoint target, Supplier<T> call) {
+        Priority priority = ImgurRequestScheduler.currentPriority();
+        CompletableFuture<T> primaryResult = new CompletableFuture<>();
+        CompletableFuture<Void> granted = new CompletableFuture<>();
+        Future<?> primary = hedgeExecutor.submit(() -> {
+            try (Scope scope = ImgurRequestScheduler.priority(priority);
+                    Scope grant = ImgurRequestScheduler.onGranted(() -> granted.complete(null))) {
+                run(primaryResult, () -> attempt(target, call, maxWaitMillis));
+            }
+        });
+        try {
+            // the hedge delay starts once the scheduler lets the request out (the scheduler bounds the wait)
+            CompletableFuture.anyOf(granted, primaryResult).get();
+            return primaryResult.get(hedgeDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            // slow, hedge below
+        } catch (ExecutionException ex) {
+            throw unwrap(ex.getCause());
+        } catch (InterruptedException ex) {
+            primary.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ImgurUnavailableException("Interrupted while waiting for Imgur", 1);
+        }
+        if (!target.breaker.isClosed()) {
+            return await(primaryResult, primary);
+        }
+        count("imgur.calls.hedged", target.name);
+        // the hedge doesn't wait for a bulkhead permit or a scheduler slot, under load it's simply skipped
+        CompletableFuture<T> hedgeResult = new CompletableFuture<>();
+        Future<?> hedge = hedgeExecutor.submit(() -> {
+            try (Scope scope = ImgurRequestScheduler.priority(priority); Scope noQueue = ImgurRequestScheduler.withoutQueueing()) {
+                run(hedgeResult, () -> attempt(target, call, 0));
+            }
+        });
+        CompletableFuture<T> first = new CompletableFuture<>();
+        hedgeResult.whenComplete((value, error) -> {
+            if (error == null) {
+                first.complete(value);
+            }
+        });
+        // when both fail the primary's error is reported
+        primaryResult.whenComplete((value, error) -> {
+            if (error == null) {
+                first.complete(value);
+            } else {
+                hedgeResult.whenComplete((hedgeValue, hedgeError) -> {
+                    if (hedgeError != null) {
+                        first.completeExceptionally(error);
+                    }
+                });
+            }
+        });
+        // the loser is still holding a connection and a bulkhead permit, no need to wait for its answer
+        first.whenComplete((value, error) -> {
+            primary.cancel(true);
+            hedge.cancel(true);
+        });
+        return await(first, primary, hedge);
+    }
+
+    private static <T> void run(CompletableFuture<T> result, Supplier<T> attempt) {
+        try {
+            result.complete(attempt.get());
+        } catch (Throwable ex) {
+            result.completeExceptionally(ex);
+        }
+    }
+
+    // Waits for the result, cancelling the attempts when the caller is interrupted
+    private static <T> T await(CompletableFuture<T> future, Future<?>... attempts) {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw unwrap(ex.getCause());
+        } catch (InterruptedException ex) {
+            for (Future<?> attempt : attempts) {
+                attempt.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new ImgurUnavailableException("Interrupted while waiting for Imgur", 1);
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof RuntimeException runtime ? runtime : new IllegalStateException(error);
+    }
+
+    // Server errors and I/O errors count against the circuit, anything Imgur answered otherwise doesn't
+    private static boolean isFailure(RuntimeException ex) {
+        return ex instanceof ResourceAccessException
+                || (ex instanceof HttpStatusCodeException http && http.getStatusCode().is5xxServerError());
+    }
+
+    private static boolean isRetryable(CallType type, RuntimeException ex) {
+        if (ex instanceof HttpStatusCodeException http) {
+            int status = http.getStatusCode().value();
+            if (status == 429 || status == 503) {
+                return true;
+            }
+            return status >= 500 && type != CallType.WRITE;
+        }
+        if (ex instanceof ResourceAccessException) {
+            return type != CallType.WRITE || causedBy(ex, ConnectException.class);
+        }
+        return false;
+    }
+
+    private static boolean isRateLimited(RuntimeException ex) {
+        return ex instanceof HttpStatusCodeException http && http.getStatusCode().value() == 429;
+    }
+
+    private static boolean causedBy(Throwable ex, Class<? extends Throwable> type) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // How long Imgur asked us to wait, -1 without a hint
+    private static long rateLimitWaitMillis(RuntimeException ex) {
+        if (!(ex instanceof HttpStatusCodeException http) || http.getResponseHeaders() == null) {
+            return -1;
+        }
+        HttpHeaders headers = http.getResponseHeaders();
+        long retryAfter = parseLong(headers.getFirst(HttpHeaders.RETRY_AFTER));
+        if (retryAfter >= 0) {
+            return retryAfter * 1000;
+        }
+        if (headers.getFirst(HttpHeaders.RETRY_AFTER) != null) {
+            try {
+                return Math.max(0, headers.getFirstDate(HttpHeaders.RETRY_AFTER) - System.currentTimeMillis());
+            } catch (IllegalArgumentException ignored) {
+                // neither seconds nor a date, fall back to Imgur's headers
+            }
+        }
+        if (http.getStatusCode().value() != 429) {
+            return -1;
+        }
+        // seconds until the upload (POST) limit resets
+        long postReset = parseLong(headers.getFirst("X-Post-Rate-Limit-Reset"));
+        if (postReset >= 0) {
+            return postReset * 1000;
+        }
+        // epoch second at which the per-user credits come back
+        long userReset = parseLong(headers.getFirst("X-RateLimit-UserReset"));
+        if (userReset >= 0 && parseLong(headers.getFirst("X-RateLimit-UserRemaining")) == 0) {
+            return Math.max(0, userReset * 1000 - System.currentTimeMillis());
+        }
+        return -1;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    // Full jitter: anywhere between 0 and the exponential cap, so retrying callers spread out
+    private long backoffMillis(int attempt) {
+        long cap = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ImgurUnavailableException("Interrupted while waiting to retry Imgur", 1);
+        }
+    }
+
+    private Endpoint newEndpoint(String name) {
+        Endpoint endpoint = new Endpoint(name);
+        MeterRegistry registry = meterRegistry;
+        if (registry != null) {
+            endpoint.bindTo(registry);
+        }
+        return endpoint;
+    }
+
+    private void count(String metric, String endpoint, String... tags) {
+        MeterRegistry registry = meterRegistry;
+        if (registry != null) {
+            String[] allTags = Arrays.copyOf(tags, tags.length + 2);
+            allTags[tags.length] = "endpoint";
+            allTags[tags.length + 1] = endpoint;
+            registry.counter(metric, allTags).increment();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        meterRegistry = registry;
+        endpoints.values().forEach(endpoint -> endpoint.bindTo(registry));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hedgeExecutor.shutdownNow();
+    }
+
+    private final class Endpoint {
+
+        private final String name;
+
+        private final Semaphore bulkhead = new Semaphore(maxConcurrent);
+
+        private final CircuitBreaker breaker;
+
+        Endpoint(String name) {
+            this.name = name;
+            this.breaker = new CircuitBreaker(name, windowSize, failureRatePercent, openMillis, halfOpenCalls);
+        }
+
+        boolean acquire(long waitMillis) {
+            try {
+                return bulkhead.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        void bindTo(MeterRegistry registry) {
+            Gauge.builder("imgur.circuit.state", breaker, CircuitBreaker::stateCode)
+                    .description("0 closed, 1 open, 2 half open")
+                    .tag("endpoint", name)
+                    .register(registry);
+            Gauge.builder("imgur.bulkhead.available", bulkhead, Semaphore::availablePermits)
+                    .tag("endpoint", name)
+                    .register(registry);
+        }
+    }
+
+    // Count based circuit breaker over the last windowSize calls. Synchronized, it's cheap next to an HTTP call.
+    static final class CircuitBreaker {
+
+        enum State {
+            CLOSED, OPEN, HALF_OPEN
+        }
+
+        private final String name;
+        private final boolean[] window;
+        private final int failureRatePercent;
+        private final long openNanos;
+        private final int halfOpenCalls;
+
+        private State state = State.CLOSED;
+        private int next;
+        private int recorded;
+        private int failures;
+        private long openedAt;
+        private int trials;
+        private int trialSuccesses;
+
+        CircuitBreaker(String name, int windowSize, int failureRatePercent, long openMillis, int halfOpenCalls) {
+            this.name = name;
+            this.window = new boolean[Math.max(1, windowSize)];
+            this.failureRatePercent = failureRatePercent;
+            this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+            this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        }
+
+        synchronized boolean tryAcquire() {
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAt < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trials = 0;
+                trialSuccesses = 0;
+                log.info("Imgur circuit {} half open", name);
+            }
+            if (state == State.HALF_OPEN) {
+                if (trials >= halfOpenCalls) {
+                    return false;
+                }
+                trials++;
+            }
+            return true;
+        }
+
+        synchronized void onSuccess() {
+            if (state == State.HALF_OPEN) {
+                if (++trialSuccesses >= halfOpenCalls) {
+                    state = State.CLOSED;
+                    reset();
+                    log.info("Imgur circuit {} closed", name);
+                }
+            } else if (state == State.CLOSED) {
+                record(false);
+            }
+        }
+
+        synchronized void onFailure() {
+            if (state == State.HALF_OPEN) {
+                open();
+            } else if (state == State.CLOSED) {
+                record(true);
+                if (recorded == window.length && failures * 100 >= failureRatePercent * recorded) {
+                    open();
+                }
+            }
+        }
+
+        synchronized void onIgnored() {
+            if (state == State.HALF_OPEN && trials > 0) {
+                trials--;
+            }
+        }
+
+        synchronized boolean isClosed() {
+            return state == State.CLOSED;
+        }
+
+        synchronized long retryAfterSeconds() {
+            long remaining = openNanos - (System.nanoTime() - openedAt);
+            return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining));
+        }
+
+        synchronized int stateCode() {
+            return state.ordinal();
+        }
+
+        private void record(boolean failure) {
+            if (recorded == window.length) {
+                if (window[next]) {
+                    failures--;
+                }
+            } else {
+                recorded++;
+            }
+            window[next] = failure;
+            if (failure) {
+                failures++;
+            }
+            next = (next + 1) % window.length;
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            reset();
+            log.warn("Imgur circuit {} open", name);
+        }
+
+        private void reset() {
+            Arrays.fill(window, false);
+            next = 0;
+            recorded = 0;
+            failures = 0;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.myapp.userimageapp.service;
+
+// Imgur call turned away without (another) attempt: circuit open, bulkhead full or rate limited for too long.
+// Callers answer 503 with the Retry-After hint.
+public class ImgurUnavailableException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public ImgurUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,37 @@
+package com.myapp.userimageapp.service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.myapp.userimageapp.model.ImgurToken;
+
+// Tokens kept only in memory, lost on restart (imgur.token-store.type=memory)
+@Component
+@ConditionalOnProperty(name = "imgur.token-store.type", havingValue = "memory")
+public class InMemoryTokenStore implements TokenStore {
+
+    private final Map<String, ImgurToken> tokens = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<ImgurToken> find(String username) {
+        return Optional.ofNullable(tokens.get(username));
+    }
+
+    @Override
+    public void save(ImgurToken token) {
+        tokens.put(token.getUsername(), token);
+    }
+
+    @Override
+    public List<ImgurToken> findExpiringBefore(Instant instant) {
+        return tokens.values().stream()
+                .filter(token -> token.getRefreshToken() != null && token.getExpiresAt() != null && token.getExpiresAt().isBefore(instant))
+                .toList();
+    }
+}
@@ -0,0 +1,134 @@
+package com.myapp.userimageapp.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.myapp.userimageapp.model.ImgurToken;
+import com.myapp.userimageapp.repository.ImgurTokenRepository;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// Default token store: bounded in-memory tier in front of the ImgurToken table, which every instance shares.
+// Reads hit the tier, entries are dropped imgur.token-store.cache-ttl-seconds after they were loaded so tokens
+// refreshed by another instance are picked up; writes reach the table in batches.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "imgur.token-store.type", havingValue = "jpa", matchIfMissing = true)
+public class JpaTokenStore implements TokenStore {
+
+    private final ImgurTokenRepository tokenRepo;
+
+    private final Cache<String, ImgurToken> tokens;
+
+    // tokens written here and not persisted yet, latest value per user wins. Newer than the table, so looked at first
+    private final Map<String, ImgurToken> dirty = new ConcurrentHashMap<>();
+
+    @Autowired
+    public JpaTokenStore(ImgurTokenRepository tokenRepo, @Value("${imgur.token-store.max-tokens:100000}") long maxTokens,
+            @Value("${imgur.token-store.cache-ttl-seconds:60}") long cacheTtlSeconds) {
+        this.tokenRepo = tokenRepo;
+        this.tokens = Caffeine.newBuilder()
+                .maximumSize(maxTokens)
+                .expireAfterWrite(Duration.ofSeconds(cacheTtlSeconds))
+                .build();
+    }
+
+    public JpaTokenStore(ImgurTokenRepository tokenRepo) {
+        this(tokenRepo, 100000, 60);
+    }
+
+    @Override
+    public Optional<ImgurToken> find(String username) {
+        ImgurToken pending = dirty.get(username);
+        if (pending != null) {
+            return Optional.of(pending);
+        }
+        ImgurToken token = tokens.getIfPresent(username);
+        if (token != null) {
+            return Optional.of(token);
+        }
+        // loaded outside the cache so the query doesn't hold its bin lock, a token saved meanwhile is newer and wins.
+        // Unknown users aren't stored, they're looked up again next time
+        Optional<ImgurToken> loaded = tokenRepo.findById(username);
+        if (loaded.isEmpty()) {
+            return loaded;
+        }
+        ImgurToken current = tokens.asMap().putIfAbsent(username, loaded.get());
+        return Optional.of(current != null ? current : loaded.get());
+    }
+
+    // Reads the row again: another instance may have refreshed the token (and Imgur rotated the refresh token)
+    @Override
+    public Optional<ImgurToken> reload(String username) {
+        ImgurToken pending = dirty.get(username);
+        if (pending != null) {
+            return Optional.of(pending);
+        }
+        Optional<ImgurToken> loaded = tokenRepo.findById(username);
+        // a token saved while the row was read is kept
+        ImgurToken current = tokens.asMap().compute(username, (key, cached) -> {
+            ImgurToken saved = dirty.get(key);
+            return saved != null ? saved : loaded.orElse(null);
+        });
+        return Optional.ofNullable(current);
+    }
+
+    @Override
+    public void save(ImgurToken token) {
+        dirty.put(token.getUsername(), token);
+        tokens.put(token.getUsername(), token);
+    }
+
+    @Override
+    public List<ImgurToken> findExpiringBefore(Instant instant) {
+        Map<String, ImgurToken> candidates = new HashMap<>();
+        for (ImgurToken token : tokenRepo.findByRefreshTokenIsNotNullAndExpiresAtBefore(instant)) {
+            candidates.put(token.getUsername(), token);
+        }
+        // tokens not persisted yet are newer than their rows, cached ones may be older
+        candidates.putAll(dirty);
+        return candidates.values().stream()
+                .filter(token -> token.getRefreshToken() != null && token.getExpiresAt() != null && token.getExpiresAt().isBefore(instant))
+                .toList();
+    }
+
+    // Write-behind: persists everything saved since the last run in one batch. Tokens stay in dirty until their
+    // row is written, so a reload in between still sees them rather than the old row
+    @Scheduled(fixedDelayString = "${imgur.token-store.flush-interval-ms:1000}")
+    public void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<ImgurToken> batch = new ArrayList<>(dirty.values());
+        try {
+            tokenRepo.saveAll(batch);
+            log.info("Persisted {} Imgur tokens", batch.size());
+        } catch (Exception ex) {
+            // left in dirty, the next run retries
+            log.error("Persisting Imgur tokens failed: {}", ex.getMessage());
+            return;
+        }
+        // unless a newer token arrived meanwhile
+        batch.forEach(token -> dirty.remove(token.getUsername(), token));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
@@ -0,0 +1,76 @@
+package com.myapp.userimageapp.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.multipart.MultipartFile;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+// Mono based counterpart of ImageService, returns the same Imgur "data" maps. Every call goes through ImageService itself,
+// so the caches, the Imgur request scheduler and resilience apply as on the blocking endpoints. The calls run on a
+// bounded pool (imgur.reactive.threads, imgur.reactive.queue-capacity), beyond it they fail with RejectedExecutionException.
+// Failures complete empty (or false for delete) where ImageService returns null.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "imgur.reactive.enabled", havingValue = "true")
+public class ReactiveImageService {
+
+    private final ImageService imageService;
+
+    private final Scheduler scheduler;
+
+    @Autowired
+    public ReactiveImageService(ImageService imageService, @Value("${imgur.reactive.threads:200}") int threads,
+            @Value("${imgur.reactive.queue-capacity:10000}") int queueCapacity) {
+        this.imageService = imageService;
+        this.scheduler = Schedulers.newBoundedElastic(threads, queueCapacity, "imgur-rx", 60, true);
+        log.info("Reactive image calls on up to {} threads (queue {})", threads, queueCapacity);
+    }
+
+    // Upload an image to Imgur using OAuth access token, username's cached listing gets the image
+    public Mono<Map<String, Object>> uploadImage(MultipartFile imageFile, String accessToken, String username) {
+        log.info("In reactive image upload process..");
+        return Mono.fromCallable(() -> imageService.uploadImage(imageFile, accessToken, username, UploadProgress.NONE))
+                .subscribeOn(scheduler)
+                .onErrorResume(IOException.class, ex -> {
+                    log.error("Reactive upload failed: {}", ex.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    // Get image from Imgur by ID
+    public Mono<Map<String, Object>> getImage(String imageId, String accessToken) {
+        log.info("In reactive image retrieval process..");
+        return Mono.fromCallable(() -> imageService.getImage(imageId, accessToken)).subscribeOn(scheduler);
+    }
+
+    // Delete an image from Imgur
+    public Mono<Boolean> deleteImage(String deleteHash, String accessToken, String username) {
+        log.info("In reactive image deletion process..");
+        return Mono.fromCallable(() -> imageService.deleteImage(deleteHash, accessToken, username))
+                .subscribeOn(scheduler)
+                .onErrorResume(HttpClientErrorException.NotFound.class, ex -> Mono.just(false));
+    }
+
+    // Get all images of a user
+    public Mono<List<Map<String, Object>>> getUserImages(String accessToken, String username) {
+        log.info("In reactive retrieval of all images of a user..");
+        return Mono.fromCallable(() -> imageService.getUserImages(accessToken, username)).subscribeOn(scheduler);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.dispose();
+    }
+}
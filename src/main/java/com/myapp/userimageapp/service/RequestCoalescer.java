@@ -0,0 +1,67 @@
+package com.myapp.userimageapp.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+// Single flight for identical Imgur lookups: callers asking for a key while a call for it is running
+// wait for that call and get its result (or exception) instead of making their own.
+@Component
+public class RequestCoalescer implements MeterBinder {
+
+    // running calls by kind and key
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private volatile MeterRegistry meterRegistry;
+
+    // kind names the lookup ("image", "user-images", ...) for the metrics, key identifies it within the kind
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String kind, String key, Supplier<T> call) {
+        String flightKey = kind + ':' + key;
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(flightKey, flight);
+        if (running != null) {
+            count("imgur.requests.coalesced", kind);
+            try {
+                return (T) running.join();
+            } catch (CompletionException ex) {
+                throw ex.getCause() instanceof RuntimeException cause ? cause : ex;
+            }
+        }
+        count("imgur.requests.upstream", kind);
+        try {
+            T result = call.get();
+            flight.complete(result);
+            return result;
+        } catch (Throwable ex) {
+            // whatever happens, waiting callers must be released
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(flightKey, flight);
+        }
+    }
+
+    private void count(String metric, String kind) {
+        MeterRegistry registry = meterRegistry;
+        if (registry != null) {
+            registry.counter(metric, "kind", kind).increment();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        meterRegistry = registry;
+        Gauge.builder("imgur.requests.in.flight", inFlight, Map::size)
+                .description("Distinct Imgur lookups currently running")
+                .register(registry);
+    }
+}
@@ -0,0 +1,282 @@
+package com.myapp.userimageapp.service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.myapp.userimageapp.service.ImgurResilience.CallType;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// Downscaled variants of an image, limited to the sizes in imgur.thumbnails.sizes (longest side in pixels).
+// Resizes run on a bounded pool and the results are cached by image id and size, for no longer than the metadata
+// they were made from. Deleting the image drops every size.
+@Slf4j
+@Service
+public class ThumbnailService implements MeterBinder {
+
+    private final RestTemplate restTemplate;
+
+    private final ImageService imageService;
+
+    // with imgur.proxy.enabled=true originals are read from its disk cache
+    private final ImageProxyService imageProxyService;
+
+    private final ImgurResilience resilience;
+
+    private final RequestCoalescer coalescer;
+
+    private final int[] sizes;
+
+    private final Cache<String, Thumbnail> thumbnails;
+
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public ThumbnailService(RestTemplate restTemplate, ImageService imageService, Optional<ImageProxyService> imageProxyService,
+            ImgurResilience resilience, RequestCoalescer coalescer, ImageMetadataCache metadataCache,
+            @Value("${imgur.thumbnails.sizes:160,320,640,1024}") int[] sizes,
+            @Value("${imgur.thumbnails.cache.max-bytes:67108864}") long cacheMaxBytes,
+            @Value("${imgur.thumbnails.cache.expire-after-write-seconds:3600}") long expireAfterWriteSeconds,
+            @Value("${imgur.thumbnails.threads:0}") int threads,
+            @Value("${imgur.thumbnails.queue-capacity:64}") int queueCapacity) {
+        this.restTemplate = restTemplate;
+        this.imageService = imageService;
+        this.imageProxyService = imageProxyService.orElse(null);
+        this.resilience = resilience;
+        this.coalescer = coalescer;
+        this.sizes = sizes.clone();
+        this.thumbnails = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxBytes)
+                .weigher((String key, Thumbnail thumbnail) -> 64 + thumbnail.bytes().length)
+                // after write, not access: a variant kept busy must still be rebuilt from the current original
+                .expireAfterWrite(Duration.ofSeconds(expireAfterWriteSeconds))
+                .recordStats()
+                .build();
+        metadataCache.addInvalidationListener(this::invalidate);
+
+        // resizing is CPU bound like password hashing, one thread per core unless configured
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "thumbnail-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        log.info("Thumbnails in sizes {} on {} threads", Arrays.toString(this.sizes), poolSize);
+    }
+
+    public ThumbnailService(RestTemplate restTemplate, ImageService imageService, ImageMetadataCache metadataCache) {
+        this(restTemplate, imageService, Optional.empty(), new ImgurResilience(), new RequestCoalescer(), metadataCache,
+                new int[] {160, 320, 640, 1024}, 64 * 1024 * 1024, 3600, 0, 64);
+    }
+
+    // Drops every size of an image
+    public void invalidate(String imageId) {
+        for (int size : sizes) {
+            thumbnails.invalidate(imageId + '/' + size);
+        }
+    }
+
+    public boolean isSupportedSize(int size) {
+        return Arrays.stream(sizes).anyMatch(supported -> supported == size);
+    }
+
+    // The variant of an image at most size pixels on its longest side, null if Imgur doesn't have the image.
+    // Throws RejectedExecutionException when the resize queue is full.
+    public Thumbnail getThumbnail(String imageId, int size, String accessToken) throws IOException {
+        if (!isSupportedSize(size)) {
+            throw new IllegalArgumentException("Unsupported thumbnail size " + size);
+        }
+        String key = imageId + '/' + size;
+        Thumbnail cached = thumbnails.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        // concurrent requests for the same variant share one resize
+        try {
+            return coalescer.execute("thumbnail", key, () -> generate(imageId, size, accessToken, key));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private Thumbnail generate(String imageId, int size, String accessToken, String key) {
+        try {
+            Thumbnail thumbnail;
+            if (imageProxyService != null) {
+                ImageContentCache.Content content = imageProxyService.getContent(imageId, accessToken);
+                if (content == null) {
+                    return null;
+                }
+                try {
+                    thumbnail = resizeOnPool(content.getFile(), size);
+                } finally {
+                    content.release();
+                }
+            } else {
+                Path original = download(imageId, accessToken);
+                if (original == null) {
+                    return null;
+                }
+                try {
+                    thumbnail = resizeOnPool(original, size);
+                } finally {
+                    Files.deleteIfExists(original);
+                }
+            }
+            thumbnails.put(key, thumbnail);
+            log.info("Thumbnail {} generated ({} bytes)..", key, thumbnail.bytes().length);
+            return thumbnail;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // Original into a temp file, so decoding reads it a part at a time
+    private Path download(String imageId, String accessToken) throws IOException {
+        Map<String, Object> image = imageService.getImage(imageId, accessToken);
+        if (image == null || image.get("link") == null) {
+            return null;
+        }
+        String link = (String) image.get("link");
+        Path file = Files.createTempFile("thumbnail-source-", ".img");
+        try {
+            resilience.call("image.content", CallType.IDEMPOTENT, () -> restTemplate.execute(link, HttpMethod.GET, null,
+                    response -> Files.copy(response.getBody(), file, StandardCopyOption.REPLACE_EXISTING)));
+            return file;
+        } catch (HttpClientErrorException.NotFound ex) {
+            Files.deleteIfExists(file);
+            return null;
+        } catch (ResourceAccessException ex) {
+            Files.deleteIfExists(file);
+            throw new IOException(ex.getMessage(), ex);
+        } catch (RuntimeException ex) {
+            Files.deleteIfExists(file);
+            throw ex;
+        }
+    }
+
+    private Thumbnail resizeOnPool(Path original, int size) throws IOException {
+        Future<Thumbnail> future = executor.submit(() -> resize(original, size));
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new RejectedExecutionException("Interrupted while waiting for thumbnail", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (ex.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    // Decodes the original subsampled (every n-th pixel of every n-th row) so the full size raster is never built,
+    // then scales the small image smoothly to the target. Memory follows the thumbnail size, not the original's.
+    public static Thumbnail resize(Path original, int size) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                double scale = Math.min(1.0, (double) size / Math.max(width, height));
+                int targetWidth = Math.max(1, (int) Math.round(width * scale));
+                int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+                // decode at about twice the target size, the final scaling smooths what subsampling drops
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.min(width / targetWidth, height / targetHeight) / 2);
+                param.setSourceSubsampling(step, step, 0, 0);
+                BufferedImage decoded = reader.read(0, param);
+
+                boolean alpha = decoded.getColorModel().hasAlpha();
+                BufferedImage scaled = new BufferedImage(targetWidth, targetHeight,
+                        alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+                Graphics2D graphics = scaled.createGraphics();
+                try {
+                    graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                    graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                    graphics.drawImage(decoded, 0, 0, targetWidth, targetHeight, null);
+                } finally {
+                    graphics.dispose();
+                }
+
+                // PNG keeps transparency, everything else becomes JPEG
+                String format = alpha ? "png" : "jpg";
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                if (!ImageIO.write(scaled, format, out)) {
+                    throw new IOException("No writer for " + format);
+                }
+                byte[] bytes = out.toByteArray();
+                String etag = "\"" + size + "-" + Integer.toHexString(Arrays.hashCode(bytes)) + "\"";
+                return new Thumbnail(bytes, alpha ? "image/png" : "image/jpeg", etag);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, thumbnails, "imgur.image.thumbnails");
+        Gauge.builder("imgur.thumbnails.active", executor, ThreadPoolExecutor::getActiveCount).register(registry);
+        Gauge.builder("imgur.thumbnails.queued", executor, e -> e.getQueue().size()).register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public record Thumbnail(byte[] bytes, String contentType, String etag) {
+    }
+}
@@ -0,0 +1,24 @@
+package com.myapp.userimageapp.service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import com.myapp.userimageapp.model.ImgurToken;
+
+// Where AuthService keeps Imgur tokens, selected with imgur.token-store.type (jpa or memory)
+public interface TokenStore {
+
+    Optional<ImgurToken> find(String username);
+
+    // Same as find, but bypassing any copy kept in memory. Used before refreshing, when the token may have been
+    // refreshed elsewhere
+    default Optional<ImgurToken> reload(String username) {
+        return find(username);
+    }
+
+    void save(ImgurToken token);
+
+    // Refreshable tokens (refresh token known) that expire before the given instant
+    List<ImgurToken> findExpiringBefore(Instant instant);
+}
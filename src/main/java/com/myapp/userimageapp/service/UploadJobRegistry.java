@@ -0,0 +1,261 @@
+package com.myapp.userimageapp.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.myapp.userimageapp.model.UploadJobStatus;
+import com.myapp.userimageapp.model.UploadJobStatus.State;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// Upload jobs of the last while, by job id. Running jobs are kept for imgur.jobs.active-ttl-seconds,
+// finished ones only for imgur.jobs.finished-ttl-seconds. Every change is pushed to the owner's SSE streams.
+// Jobs live in this instance's memory only. Direct uploads are visible on the instance handling the request, async ones
+// are updated only on the instance whose worker consumed the job, which Kafka picks by partition assignment, not by user.
+// With several instances the submitting instance keeps showing an async job as queued, see README (upload jobs).
+@Slf4j
+@Component
+public class UploadJobRegistry implements MeterBinder {
+
+    // byte progress is pushed at most this often per job, state changes always
+    private static final long PROGRESS_INTERVAL_NANOS = 250_000_000L;
+
+    private final Cache<String, Job> jobs;
+
+    // events waiting for the publisher thread, beyond this they are dropped (GET /api/upload-jobs/{jobId} still has them)
+    private static final int PUBLISH_QUEUE_CAPACITY = 10000;
+
+    private final Map<String, Set<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    // SSE writes go to the client's socket, they run here instead of on the thread doing the upload.
+    // One thread, so a job's events reach its streams in order.
+    private final ThreadPoolExecutor publisher = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(PUBLISH_QUEUE_CAPACITY), runnable -> {
+                Thread thread = new Thread(runnable, "upload-job-events");
+                thread.setDaemon(true);
+                return thread;
+            }, (task, executor) -> log.debug("Job event queue full, dropping an update"));
+
+    @Autowired
+    public UploadJobRegistry(@Value("${imgur.jobs.max-jobs:100000}") long maxJobs,
+            @Value("${imgur.jobs.active-ttl-seconds:3600}") long activeTtlSeconds,
+            @Value("${imgur.jobs.finished-ttl-seconds:300}") long finishedTtlSeconds) {
+        long activeTtl = Duration.ofSeconds(activeTtlSeconds).toNanos();
+        long finishedTtl = Duration.ofSeconds(finishedTtlSeconds).toNanos();
+        this.jobs = Caffeine.newBuilder()
+                .maximumSize(maxJobs)
+                .expireAfter(new Expiry<String, Job>() {
+                    @Override
+                    public long expireAfterCreate(String jobId, Job job, long currentTime) {
+                        return job.isFinished() ? finishedTtl : activeTtl;
+                    }
+
+                    // called when a job is put again after a state change
+                    @Override
+                    public long expireAfterUpdate(String jobId, Job job, long currentTime, long currentDuration) {
+                        return job.isFinished() ? finishedTtl : activeTtl;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String jobId, Job job, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    public UploadJobRegistry() {
+        this(100000, 3600, 300);
+    }
+
+    // Register a new job for a user, jobId may be null to generate one. A job already registered under the id is
+    // returned as it is, so registering again (a worker picking the job up) never resets a state it already reached
+    public Job start(String username, String jobId, String filename, long totalBytes) {
+        Job created = new Job(jobId != null ? jobId : UUID.randomUUID().toString(), username, filename, totalBytes);
+        Job job = jobs.asMap().putIfAbsent(created.jobId, created);
+        if (job != null) {
+            return job;
+        }
+        publish(created);
+        return created;
+    }
+
+    // Forget a job that never got queued
+    public void remove(String jobId) {
+        jobs.invalidate(jobId);
+    }
+
+    // The job if it exists and belongs to the user
+    public UploadJobStatus find(String username, String jobId) {
+        Job job = jobs.getIfPresent(jobId);
+        return job != null && job.username.equals(username) ? job.status() : null;
+    }
+
+    // Jobs of a user, newest first (scans all jobs, only used when a stream is opened)
+    public List<UploadJobStatus> findByUser(String username) {
+        return jobs.asMap().values().stream()
+                .filter(job -> job.username.equals(username))
+                .map(Job::status)
+                .sorted(Comparator.comparing(UploadJobStatus::updatedAt).reversed())
+                .toList();
+    }
+
+    // SSE stream of a user's job updates, starting with the jobs already known
+    public SseEmitter subscribe(String username, long timeoutMillis) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Set<SseEmitter> emitters = subscribers.computeIfAbsent(username, key -> new CopyOnWriteArraySet<>());
+        emitters.add(emitter);
+        Runnable remove = () -> unsubscribe(username, emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(error -> remove.run());
+        for (UploadJobStatus status : findByUser(username)) {
+            if (!send(emitter, status)) {
+                break;
+            }
+        }
+        return emitter;
+    }
+
+    private void unsubscribe(String username, SseEmitter emitter) {
+        subscribers.computeIfPresent(username, (key, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+
+    private void publish(Job job) {
+        if (!subscribers.containsKey(job.username)) {
+            return;
+        }
+        UploadJobStatus status = job.status();
+        publisher.execute(() -> {
+            Set<SseEmitter> emitters = subscribers.get(job.username);
+            if (emitters == null) {
+                return;
+            }
+            for (SseEmitter emitter : emitters) {
+                if (!send(emitter, status)) {
+                    unsubscribe(job.username, emitter);
+                }
+            }
+        });
+    }
+
+    private boolean send(SseEmitter emitter, UploadJobStatus status) {
+        try {
+            emitter.send(SseEmitter.event().name("upload-job").id(status.jobId()).data(status, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException ex) {
+            log.debug("Dropping job stream: {}", ex.getMessage());
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        publisher.shutdown();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("upload.jobs.tracked", jobs, Cache::estimatedSize).register(registry);
+    }
+
+    // One upload, updated by the thread doing it
+    public final class Job implements UploadProgress {
+
+        private final String jobId;
+        private final String username;
+        private final String filename;
+        private final long totalBytes;
+
+        private volatile State state = State.QUEUED;
+        private volatile long bytesSent;
+        private volatile String link;
+        private volatile String error;
+        private volatile Instant updatedAt = Instant.now();
+        private volatile long lastPublished;
+
+        private Job(String jobId, String username, String filename, long totalBytes) {
+            this.jobId = jobId;
+            this.username = username;
+            this.filename = filename;
+            this.totalBytes = totalBytes;
+        }
+
+        public String getJobId() {
+            return jobId;
+        }
+
+        public void uploading() {
+            update(State.UPLOADING, null, null);
+        }
+
+        public void done(String link) {
+            update(State.DONE, link, null);
+        }
+
+        public void failed(String error) {
+            update(State.FAILED, null, error);
+        }
+
+        // Back in the queue, to be tried again later
+        public void deferred(String reason) {
+            update(State.QUEUED, null, reason);
+        }
+
+        @Override
+        public void bytesSent(long bytesSent) {
+            this.bytesSent = bytesSent;
+            long now = System.nanoTime();
+            if (now - lastPublished >= PROGRESS_INTERVAL_NANOS || (totalBytes > 0 && bytesSent >= totalBytes)) {
+                lastPublished = now;
+                updatedAt = Instant.now();
+                publish(this);
+            }
+        }
+
+        private void update(State state, String link, String error) {
+            this.state = state;
+            this.link = link;
+            this.error = error;
+            this.updatedAt = Instant.now();
+            // put again so the expiry follows the new state
+            jobs.put(jobId, this);
+            publish(this);
+        }
+
+        private boolean isFinished() {
+            return state == State.DONE || state == State.FAILED;
+        }
+
+        private UploadJobStatus status() {
+            return new UploadJobStatus(jobId, state, filename, totalBytes, bytesSent, link, error, updatedAt);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.myapp.userimageapp.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import com.myapp.userimageapp.model.UploadJob;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Consumer side of async uploads. Runs in the imgur-upload-workers group, so more app instances
+// (or imgur.upload.async.concurrency) means more parallel uploads, up to the topic's partition count.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "imgur.upload.async.enabled", havingValue = "true")
+public class UploadJobWorker {
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private ImageRecordService imageRecordService;
+
+    @Autowired
+    private UploadJobRegistry uploadJobRegistry;
+
+    @Autowired
+    private AsyncUploadService asyncUploadService;
+
+    // Exceptions are retried with backoff by the listener factory's error handler, then dead-lettered
+    @KafkaListener(topics = "${imgur.upload.async.topic:imgur-uploads}", groupId = "${imgur.upload.async.group-id:imgur-upload-workers}",
+            containerFactory = "uploadJobListenerFactory")
+    public void process(UploadJob job) throws IOException {
+        log.info("Processing upload job {}", job.jobId());
+        // (re)registered here as well, the job may have been submitted on another instance
+        UploadJobRegistry.Job status = uploadJobRegistry.start(job.username(), job.jobId(), job.filename(), job.size());
+        String accessToken = authService.getAccessTokenForUser(job.username());
+        if (accessToken == null) {
+            status.failed("No Imgur token");
+            throw new IllegalStateException("No Imgur token for " + job.username());
+        }
+
+        Path spoolFile;
+        try {
+            spoolFile = asyncUploadService.spoolFile(job);
+        } catch (IllegalStateException ex) {
+            status.failed("Invalid spool path");
+            throw ex;
+        }
+        Map<String, Object> image;
+        status.uploading();
+        // queued uploads go behind interactive Imgur requests
+        try (ImgurRequestScheduler.Scope bulk = ImgurRequestScheduler.bulk();
+                InputStream imageStream = Files.newInputStream(spoolFile)) {
+            image = imageService.uploadImageStream(imageStream, job.filename(), job.contentType(), accessToken, job.username(), status);
+        } catch (ImgurUnavailableException ex) {
+            // deferred (circuit open or out of credits), the error handler retries it after Retry-After
+            status.deferred(ex.getMessage());
+            throw ex;
+        } catch (NoSuchFileException ex) {
+            status.failed("Spooled file is gone");
+            throw new IllegalStateException("Spooled file of job " + job.jobId() + " is gone");
+        } catch (IOException ex) {
+            // shown as failed until a retry picks the job up again
+            status.failed("Imgur upload failed");
+            throw new IOException("Imgur upload of job " + job.jobId() + " failed", ex);
+        }
+        status.done((String) image.get("link"));
+
+        try {
+            imageRecordService.recordUpload(job.username(), image);
+        } catch (Exception ex) {
+            // not rethrown, a retry would upload the image to Imgur a second time
+            log.error("Recording image of job {} failed: {}", job.jobId(), ex.getMessage());
+        }
+        Files.deleteIfExists(spoolFile);
+        log.info("Upload job {} done: {}", job.jobId(), image.get("link"));
+    }
+}
@@ -0,0 +1,10 @@
+package com.myapp.userimageapp.service;
+
+// Told how many bytes of an image have been sent to Imgur so far
+@FunctionalInterface
+public interface UploadProgress {
+
+    UploadProgress NONE = bytesSent -> { };
+
+    void bytesSent(long bytesSent);
+}
@@ -0,0 +1,68 @@
+package com.myapp.userimageapp.service;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.myapp.userimageapp.model.UserModel;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+// Recently used users by username, in front of UserRepository.findByUsername.
+// UserService is the only writer of users and puts every saved user back here.
+// Entries are private copies and get() hands out a new copy, so a caller changing its user can't change the cache.
+@Slf4j
+@Component
+public class UserCache implements MeterBinder {
+
+    private static final long DEFAULT_MAX_SIZE = 10000;
+    private static final long DEFAULT_TTL_SECONDS = 600;
+
+    private final Cache<String, UserModel> users;
+
+    @Autowired
+    public UserCache(@Value("${user.cache.max-size:10000}") long maxSize,
+            @Value("${user.cache.ttl-seconds:600}") long ttlSeconds) {
+        log.info("Creating user cache (maxSize={}, ttl={}s)", maxSize, ttlSeconds);
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    public UserCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL_SECONDS);
+    }
+
+    public UserModel get(String username) {
+        UserModel user = users.getIfPresent(username);
+        return user == null ? null : copy(user);
+    }
+
+    public void put(UserModel user) {
+        if (user != null && user.getUsername() != null) {
+            users.put(user.getUsername(), copy(user));
+        }
+    }
+
+    public void invalidate(String username) {
+        users.invalidate(username);
+    }
+
+    private static UserModel copy(UserModel user) {
+        return new UserModel(user.getId(), user.getFirstname(), user.getLastname(), user.getUsername(), user.getPassword());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, users, "users");
+    }
+}
@@ -0,0 +1,181 @@
+package com.myapp.userimageapp.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.myapp.userimageapp.model.ImgurImage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// Per-user image listing kept in sync with our own uploads/deletes, keyed by username so token refreshes don't orphan it.
+// Stale listings are still served while a single background reload from Imgur runs.
+// Uploads and deletes made while a load (miss or background reload) is running are replayed onto the loaded listing
+// before it's stored.
+// Concurrent misses are left to the loader to coalesce (ImageService shares one Imgur call between them).
+@Slf4j
+@Component
+public class UserImagesCache implements MeterBinder {
+
+    private record Listing(List<ImgurImage> images, long loadedAt) {
+    }
+
+    private final Cache<String, Listing> listings;
+
+    private final long refreshAfterMillis;
+
+    // users with a background reload in progress, so each stale listing is only reloaded once
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    // loads in progress per user, with the local changes each has to replay. Changes and storing a reload
+    // run inside compute on this map, so none is missed, and users leave it when their last reload ends
+    private final Map<String, List<Reload>> reloads = new ConcurrentHashMap<>();
+
+    private final ExecutorService refreshExecutor;
+
+    @Autowired
+    public UserImagesCache(@Value("${imgur.cache.user-images.max-users:10000}") long maxUsers,
+            @Value("${imgur.cache.user-images.refresh-after-seconds:60}") long refreshAfterSeconds,
+            @Value("${imgur.cache.user-images.expire-after-access-seconds:1800}") long expireAfterAccessSeconds,
+            @Value("${imgur.cache.user-images.refresh-threads:2}") int refreshThreads) {
+        this.refreshAfterMillis = Duration.ofSeconds(refreshAfterSeconds).toMillis();
+        this.listings = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterAccess(Duration.ofSeconds(expireAfterAccessSeconds))
+                .recordStats()
+                .build();
+        this.refreshExecutor = Executors.newFixedThreadPool(refreshThreads, runnable -> {
+            Thread thread = new Thread(runnable, "user-images-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public UserImagesCache() {
+        this(10000, 60, 1800, 1);
+    }
+
+    // Returns the cached listing, loading it on a miss. A stale listing is returned as is and reloaded in the background.
+    public List<ImgurImage> get(String userKey, Function<String, List<ImgurImage>> loader) {
+        Listing listing = listings.getIfPresent(userKey);
+        if (listing == null) {
+            return load(userKey, loader);
+        }
+        if (System.currentTimeMillis() - listing.loadedAt() > refreshAfterMillis && refreshing.add(userKey)) {
+            refreshExecutor.execute(() -> refresh(userKey, loader));
+        }
+        return listing.images();
+    }
+
+    // Adds a freshly uploaded image to the front of the listing, Imgur lists newest first
+    public void addImage(String userKey, ImgurImage image) {
+        if (image == null) {
+            return;
+        }
+        apply(userKey, images -> {
+            List<ImgurImage> added = new ArrayList<>(images.size() + 1);
+            added.add(image);
+            // a reload may already list it
+            images.stream().filter(listed -> !Objects.equals(listed.id(), image.id())).forEach(added::add);
+            return added;
+        });
+    }
+
+    // Removes an image by id or deletehash
+    public void removeImage(String userKey, String imageIdOrDeleteHash) {
+        apply(userKey, images -> images.stream()
+                .filter(image -> !Objects.equals(image.id(), imageIdOrDeleteHash)
+                        && !Objects.equals(image.deletehash(), imageIdOrDeleteHash))
+                .toList());
+    }
+
+    // Applies a local change to the cached listing and records it for the reloads in progress
+    private void apply(String userKey, UnaryOperator<List<ImgurImage>> change) {
+        reloads.compute(userKey, (key, running) -> {
+            listings.asMap().computeIfPresent(key,
+                    (k, listing) -> new Listing(List.copyOf(change.apply(listing.images())), listing.loadedAt()));
+            if (running != null) {
+                running.forEach(reload -> reload.changes.add(change));
+            }
+            return running;
+        });
+    }
+
+    private void refresh(String userKey, Function<String, List<ImgurImage>> loader) {
+        try {
+            load(userKey, loader);
+        } catch (Exception ex) {
+            log.warn("Background refresh of user images failed, keeping stale listing: {}", ex.getMessage());
+        } finally {
+            refreshing.remove(userKey);
+        }
+    }
+
+    // Loads the listing and stores it with the local changes made meanwhile replayed, null when the loader has none
+    private List<ImgurImage> load(String userKey, Function<String, List<ImgurImage>> loader) {
+        Reload reload = new Reload();
+        reloads.compute(userKey, (key, running) -> {
+            List<Reload> list = running != null ? running : new ArrayList<>(1);
+            list.add(reload);
+            return list;
+        });
+        List<List<ImgurImage>> stored = new ArrayList<>(1);
+        try {
+            List<ImgurImage> images = loader.apply(userKey);
+            reloads.compute(userKey, (key, running) -> {
+                if (images != null) {
+                    // the snapshot may predate uploads and deletes made while it loaded
+                    List<ImgurImage> replayed = images;
+                    for (UnaryOperator<List<ImgurImage>> change : reload.changes) {
+                        replayed = change.apply(replayed);
+                    }
+                    Listing listing = new Listing(List.copyOf(replayed), System.currentTimeMillis());
+                    listings.put(key, listing);
+                    stored.add(listing.images());
+                }
+                running.remove(reload);
+                return running.isEmpty() ? null : running;
+            });
+        } catch (RuntimeException ex) {
+            reloads.computeIfPresent(userKey, (key, running) -> {
+                running.remove(reload);
+                return running.isEmpty() ? null : running;
+            });
+            throw ex;
+        }
+        return stored.isEmpty() ? null : stored.get(0);
+    }
+
+    // Local changes made while one load runs, guarded by compute on reloads
+    private static final class Reload {
+        private final List<UnaryOperator<List<ImgurImage>>> changes = new ArrayList<>();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, listings, "imgur.user.images");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdown();
+    }
+}
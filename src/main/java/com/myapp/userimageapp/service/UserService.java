@@ -1,11 +1,24 @@
 package com.myapp.userimageapp.service;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import com.myapp.userimageapp.model.BulkRegistrationResult;
 import com.myapp.userimageapp.model.UserModel;
+import com.myapp.userimageapp.model.UserRegistration;
+import com.myapp.userimageapp.model.UsernameEntry;
 import com.myapp.userimageapp.repository.UserRepository;
+import com.myapp.userimageapp.security.PasswordHasher;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -13,10 +26,28 @@ import lombok.extern.slf4j.Slf4j;
 @Service
 public class UserService {
 
+    private static final int FILTER_RELOAD_BATCH = 1000;
+
+    // Ids come from a sequence in blocks of 50 per instance, so a user saved now can have a lower id than one already
+    // read. Each reload reads this far back again; one that's still missed is added when it logs in on this instance
+    private static final long FILTER_RELOAD_OVERLAP_IDS = 1000;
+
     @Autowired
     private UserRepository userRepo;
 
-    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    // Hashes on a bounded pool, throws RejectedExecutionException when it's saturated
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    // Hot users by username, and a filter that rules out unknown usernames without a query
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private UsernameFilter usernameFilter;
+
+    // Highest user id added to the filter so far
+    private final AtomicLong lastFilteredUserId = new AtomicLong();
 
     //User registration
     public UserModel registerUser(String firstname,String lastname,String username,String password)
@@ -26,13 +57,57 @@ public class UserService {
         user.setFirstname(firstname);
         user.setLastname(lastname);
         user.setUsername(username);
-        user.setPassword(passwordEncoder.encode(password));
+        user.setPassword(passwordHasher.encode(password));
         log.info("User registered successfully!");
-        return userRepo.save(user);
+        // added first, so a lookup right after the save can't be ruled out by the filter
+        usernameFilter.add(username);
+        UserModel saved = userRepo.save(user);
+        userCache.put(saved);
+        return saved;
+    }
+
+    // Register many users at once: one query for existing usernames, passwords hashed in parallel,
+    // and a single saveAll whose inserts Hibernate sends in JDBC batches.
+    // Usernames already taken (or repeated in the request) and incomplete entries are skipped.
+    public BulkRegistrationResult registerUsers(List<UserRegistration> registrations)
+    {
+        log.info("Registering {} users in user service..", registrations.size());
+        List<String> usernames = registrations.stream().map(UserRegistration::username).filter(username -> username != null).toList();
+        Set<String> taken = usernames.isEmpty() ? new HashSet<>() : new HashSet<>(userRepo.findExistingUsernames(usernames));
+        List<UserRegistration> accepted = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+        for (UserRegistration registration : registrations) {
+            if (registration.username() == null || registration.password() == null) {
+                skipped.add(registration.username());
+            } else if (!taken.add(registration.username())) {
+                skipped.add(registration.username());
+            } else {
+                accepted.add(registration);
+            }
+        }
+
+        // hashed before saving, so no connection is held while hashing
+        List<String> hashes = passwordHasher.encodeAll(accepted.stream().map(UserRegistration::password).toList());
+        List<UserModel> users = new ArrayList<>(accepted.size());
+        for (int i = 0; i < accepted.size(); i++) {
+            UserRegistration registration = accepted.get(i);
+            UserModel user = new UserModel(registration.firstname(), registration.lastname(), registration.username());
+            user.setPassword(hashes.get(i));
+            usernameFilter.add(registration.username());
+            users.add(user);
+        }
+        // one transaction for all inserts, so auto-commit is switched off once per request rather than per user
+        userRepo.saveAll(users);
+        log.info("Registered {} users, skipped {}", users.size(), skipped.size());
+        return new BulkRegistrationResult(users.size(), skipped);
     }
 
     public boolean isUserAlreadyRegistered(String username) {
         log.info("Checking if user is already registered..");
+        // no filter here, another instance may have registered the username since the filter was loaded
+        if (userCache.get(username) != null) {
+            return true;
+        }
         return userRepo.existsByUsername(username);
     }
 
@@ -40,10 +115,18 @@ public class UserService {
     public UserModel authenticateUser(String username,String password)
     {
         log.info("In process of checking if user is authenticated in user service..");
-        UserModel user=userRepo.findByUsername(username).orElse(null);
-        if(user!=null && passwordEncoder.matches(password, user.getPassword()))
+        // no filter here either, so a user registered on another instance since the last reload can log in
+        UserModel user=findUser(username, false);
+        if(user!=null && passwordHasher.matches(password, user.getPassword()))
         {
             log.info("User is authenticated as credentials match!");
+            // the plain password is only at hand here, so this is where old hashes move to the configured algorithm/cost
+            if (passwordHasher.needsRehash(user.getPassword())) {
+                log.info("Rehashing password with current settings..");
+                // user is this caller's copy, the cached one changes only through put
+                user.setPassword(passwordHasher.encode(password));
+                userCache.put(userRepo.save(user));
+            }
             return user;
         }
         log.warn("User credentials does not match!");
@@ -53,6 +136,55 @@ public class UserService {
     //Retrieving user details
     public UserModel getUserInfo(String username)
     {
-        return userRepo.findByUsername(username).orElse(null);
+        return findUser(username, true);
+    }
+
+    // Load the existing usernames into the filter, until then it lets every lookup through
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadUsernameFilter() {
+        int added = addNewUsernamesToFilter();
+        usernameFilter.markLoaded();
+        log.info("Username filter loaded with {} users", added);
+    }
+
+    // Picks up users registered on other instances. Users are never deleted, so adding the ones after the last seen id is enough
+    @Scheduled(initialDelayString = "${user.filter.reload-interval-ms:60000}", fixedDelayString = "${user.filter.reload-interval-ms:60000}")
+    public void reloadUsernameFilter() {
+        if (usernameFilter.isLoaded()) {
+            addNewUsernamesToFilter();
+        }
+    }
+
+    private int addNewUsernamesToFilter() {
+        long afterId = Math.max(0, lastFilteredUserId.get() - FILTER_RELOAD_OVERLAP_IDS);
+        int added = 0;
+        List<UsernameEntry> batch;
+        do {
+            batch = userRepo.findUsernamesAfter(afterId, Limit.of(FILTER_RELOAD_BATCH));
+            for (UsernameEntry entry : batch) {
+                usernameFilter.add(entry.username());
+                afterId = entry.id();
+            }
+            added += batch.size();
+            lastFilteredUserId.accumulateAndGet(afterId, Math::max);
+        } while (batch.size() == FILTER_RELOAD_BATCH);
+        return added;
+    }
+
+    // With useFilter an unknown username is answered by the filter without a query. Authentication doesn't use it:
+    // the user may have registered on another instance since the last reload, a user found there is added to it
+    private UserModel findUser(String username, boolean useFilter) {
+        if (useFilter && !usernameFilter.mightContain(username)) {
+            return null;
+        }
+        UserModel user = userCache.get(username);
+        if (user == null) {
+            user = userRepo.findByUsername(username).orElse(null);
+            userCache.put(user);
+            if (user != null && !useFilter) {
+                usernameFilter.add(username);
+            }
+        }
+        return user;
     }
 }
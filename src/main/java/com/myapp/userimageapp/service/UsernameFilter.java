@@ -0,0 +1,126 @@
+package com.myapp.userimageapp.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+// Bloom filter of registered usernames. "No" means not registered through this instance and not in the table when
+// it was last loaded, so lookups of unknown usernames don't need the database; "maybe" still goes to the database.
+// Each instance has its own filter and users registered on another one only show up after the next periodic load
+// (UserService), so a "no" is a hint: neither login nor the duplicate check on registration rely on it.
+// Answers "maybe" for everything until it has been loaded with the existing usernames.
+@Slf4j
+@Component
+public class UsernameFilter implements MeterBinder {
+
+    private static final long DEFAULT_EXPECTED_USERS = 1_000_000;
+    private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    private final AtomicLongArray bits;
+
+    private final long bitCount;
+
+    private final int hashCount;
+
+    private volatile boolean loaded;
+
+    private Counter skippedCounter;
+
+    @Autowired
+    public UsernameFilter(@Value("${user.filter.expected-users:1000000}") long expectedUsers,
+            @Value("${user.filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        // standard sizing: m = -n ln p / (ln 2)^2, k = m/n ln 2
+        long bits = (long) Math.ceil(-expectedUsers * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = Math.max(64, bits);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedUsers * Math.log(2)));
+        this.bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+        log.info("Username filter with {} bits and {} hashes", bitCount, hashCount);
+    }
+
+    public UsernameFilter() {
+        this(DEFAULT_EXPECTED_USERS, DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    public void add(String username) {
+        long[] hashes = hash(username);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(hashes, i);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    // False only if the username was never added (and the filter has been loaded)
+    public boolean mightContain(String username) {
+        if (!loaded) {
+            return true;
+        }
+        long[] hashes = hash(username);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(hashes, i);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                if (skippedCounter != null) {
+                    skippedCounter.increment();
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Called once all existing usernames have been added
+    public void markLoaded() {
+        loaded = true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        skippedCounter = Counter.builder("users.filter.skipped")
+                .description("Username lookups answered by the filter without the database")
+                .register(registry);
+    }
+
+    // Double hashing: bit i is h1 + i * h2
+    private long index(long[] hashes, int i) {
+        return Math.floorMod(hashes[0] + i * hashes[1], bitCount);
+    }
+
+    // Two 64 bit FNV-1a style hashes with different seeds over the UTF-8 bytes
+    private static long[] hash(String username) {
+        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+        long h1 = 0xcbf29ce484222325L;
+        long h2 = 0x84222325cbf29ce4L;
+        for (byte b : bytes) {
+            h1 = (h1 ^ (b & 0xff)) * 0x100000001b3L;
+            h2 = (h2 ^ (b & 0xff)) * 0x9E3779B97F4A7C15L;
+        }
+        h2 = mix(h2) | 1;
+        return new long[] {mix(h1), h2};
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,39 @@
+-- Schema matching the JPA entities, used by the durable profile (ddl-auto=validate)
+
+create sequence user_seq start with 1 increment by 50;
+create sequence image_record_seq start with 1 increment by 50;
+
+create table user_model (
+    id bigint not null,
+    firstname varchar(255),
+    lastname varchar(255),
+    username varchar(255) not null,
+    password varchar(255) not null,
+    primary key (id),
+    constraint uk_user_model_username unique (username)
+);
+
+create table imgur_token (
+    username varchar(255) not null,
+    access_token varchar(512) not null,
+    refresh_token varchar(512),
+    expires_at timestamp(6) with time zone,
+    updated_at timestamp(6) with time zone,
+    primary key (username)
+);
+
+create table image_record (
+    id bigint not null,
+    image_id varchar(32) not null,
+    delete_hash varchar(64),
+    link varchar(512),
+    size bigint,
+    mime_type varchar(64),
+    created_at timestamp(6) with time zone not null,
+    owner_id bigint not null,
+    primary key (id),
+    constraint fk_image_record_owner foreign key (owner_id) references user_model (id)
+);
+
+create index idx_image_record_owner_created on image_record (owner_id, created_at);
+create unique index idx_image_record_image_id on image_record (image_id);
@@ -0,0 +1,58 @@
+package com.myapp.userimageapp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.MigrationInfo;
+import org.flywaydb.core.api.MigrationState;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.myapp.userimageapp.config.DatabaseWarmup;
+import com.myapp.userimageapp.model.UserModel;
+import com.myapp.userimageapp.repository.UserRepository;
+
+// Boots the durable profile on a fresh file database: the Flyway schema is applied and has to pass
+// Hibernate's ddl-auto=validate against the entities, otherwise the context doesn't start
+@SpringBootTest
+@ActiveProfiles("durable")
+class DurableProfileTests {
+
+    @DynamicPropertySource
+    static void fileDatabase(DynamicPropertyRegistry registry) throws IOException {
+        Path dataDir = Files.createTempDirectory("userimageapp-durable");
+        registry.add("spring.datasource.url", () -> "jdbc:h2:file:" + dataDir.resolve("userimageapp") + ";CACHE_SIZE=65536");
+    }
+
+    @Autowired
+    private Flyway flyway;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private DatabaseWarmup databaseWarmup;
+
+    @Test
+    void schemaComesFromFlywayAndMatchesTheEntities() {
+        MigrationInfo current = flyway.info().current();
+        assertEquals("1", current.getVersion().getVersion());
+        assertEquals(MigrationState.SUCCESS, current.getState());
+        assertNotNull(databaseWarmup);
+
+        UserModel user = new UserModel("John", "Summers", "john_summers");
+        user.setPassword("{bcrypt}$2a$10$hash");
+        userRepo.save(user);
+        assertTrue(userRepo.existsByUsername("john_summers"));
+    }
+}
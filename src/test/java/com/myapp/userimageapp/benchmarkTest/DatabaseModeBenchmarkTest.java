@@ -0,0 +1,102 @@
+package com.myapp.userimageapp.benchmarkTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import lombok.extern.slf4j.Slf4j;
+
+// In-memory H2 (default) against the file-backed H2 of the durable profile, both with the Flyway schema:
+// batched user inserts/sec, then username lookups/sec with p50/p99 latency. The file-backed users have to be there
+// after reopening the database, and with the durable profile's page cache its lookups have to keep up with memory.
+@Slf4j
+@Tag("benchmark")
+public class DatabaseModeBenchmarkTest {
+
+    private static final int USERS = 20000;
+    private static final int CHUNK = 500;
+    private static final int LOOKUPS = 20000;
+    private static final String PASSWORD = "{bcrypt}$2a$10$hash";
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void inMemoryVersusFileBacked() {
+        String fileUrl = "jdbc:h2:file:" + dataDir.resolve("benchmark") + ";CACHE_SIZE=65536";
+        Result memory = run("in-memory", "jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1");
+        Result file = run("file-backed", fileUrl);
+
+        try (HikariDataSource dataSource = dataSource(fileUrl)) {
+            assertEquals(USERS, new JdbcTemplate(dataSource).queryForObject("select count(*) from user_model", Integer.class));
+        }
+        // lookups are served from the page cache, the file only costs on writes
+        assertTrue(file.lookupsPerSecond() > memory.lookupsPerSecond() / 2,
+                "file-backed lookups " + file.lookupsPerSecond() + "/s against " + memory.lookupsPerSecond() + "/s in memory");
+        assertTrue(file.insertsPerSecond() > 0 && memory.insertsPerSecond() > 0);
+    }
+
+    private Result run(String mode, String url) {
+        try (HikariDataSource dataSource = dataSource(url)) {
+            Flyway.configure().dataSource(dataSource).load().migrate();
+
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+            long start = System.nanoTime();
+            for (int from = 0; from < USERS; from += CHUNK) {
+                List<Object[]> rows = new ArrayList<>(CHUNK);
+                for (int i = from; i < from + CHUNK; i++) {
+                    rows.add(new Object[] {i + 1L, "First" + i, "Last" + i, "user_" + i, PASSWORD});
+                }
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                        "insert into user_model (id, firstname, lastname, username, password) values (?, ?, ?, ?, ?)", rows));
+            }
+            double insertsPerSecond = USERS / ((System.nanoTime() - start) / 1_000_000_000.0);
+            assertEquals(USERS, jdbcTemplate.queryForObject("select count(*) from user_model", Integer.class));
+
+            long[] latencies = new long[LOOKUPS];
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                String username = "user_" + ThreadLocalRandom.current().nextInt(USERS);
+                long lookupStart = System.nanoTime();
+                assertEquals(PASSWORD, jdbcTemplate.queryForObject("select password from user_model where username = ?", String.class, username));
+                latencies[i] = System.nanoTime() - lookupStart;
+            }
+            double lookupsPerSecond = LOOKUPS / ((System.nanoTime() - start) / 1_000_000_000.0);
+            Arrays.sort(latencies);
+
+            log.info("{}: {} inserts/s, {} lookups/s, lookup p50 {} us, p99 {} us", mode,
+                    String.format("%.0f", insertsPerSecond), String.format("%.0f", lookupsPerSecond),
+                    latencies[LOOKUPS / 2] / 1000, latencies[LOOKUPS * 99 / 100] / 1000);
+            return new Result(insertsPerSecond, lookupsPerSecond);
+        }
+    }
+
+    private static HikariDataSource dataSource(String url) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername("user");
+        dataSource.setPassword("user123");
+        dataSource.setMaximumPoolSize(4);
+        return dataSource;
+    }
+
+    private record Result(double insertsPerSecond, double lookupsPerSecond) {
+    }
+}
@@ -0,0 +1,104 @@
+package com.myapp.userimageapp.benchmarkTest;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import com.myapp.userimageapp.config.RestClientConfig;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Compares the pooled keep-alive RestTemplate against a client that opens a connection per request, what Imgur calls
+// cost without keep-alive. The old `new RestTemplate()` default is only logged: its HttpURLConnection keeps connections
+// alive by itself and, being a lighter client, is faster here than the pool. What the pool adds over it is the
+// timeouts, the bound on connections and the pool metrics, not throughput.
+@Slf4j
+@Tag("benchmark")
+@SpringBootTest(classes = RestClientConfig.class)
+public class ImgurHttpClientBenchmarkTest {
+
+    private static final int THREADS = 16;
+    private static final int REQUESTS_PER_THREAD = 150;
+
+    @Autowired
+    private RestTemplate pooledRestTemplate;
+
+    @Test
+    public void pooledClientReusesConnections() throws Exception {
+        try (StubImgurServer stub = new StubImgurServer(0)) {
+            String url = stub.baseUrl() + "/3/image/abc123";
+
+            RestTemplate unpooled = unpooledRestTemplate();
+            run(unpooled, url);
+            stub.resetConnectionCount();
+            double unpooledThroughput = run(unpooled, url);
+            int unpooledConnections = stub.connectionCount();
+
+            stub.resetConnectionCount();
+            double simpleThroughput = run(new RestTemplate(), url);
+            int simpleConnections = stub.connectionCount();
+
+            run(pooledRestTemplate, url);
+            stub.resetConnectionCount();
+            double pooledThroughput = run(pooledRestTemplate, url);
+            int pooledConnections = stub.connectionCount();
+
+            log.info("Connection per request: {} req/s over {} connections", String.format("%.0f", unpooledThroughput), unpooledConnections);
+            log.info("Default RestTemplate: {} req/s over {} connections", String.format("%.0f", simpleThroughput), simpleConnections);
+            log.info("Pooled RestTemplate: {} req/s over {} connections", String.format("%.0f", pooledThroughput), pooledConnections);
+
+            // at most one connection per calling thread, against one per request without the pool
+            assertTrue(pooledConnections <= THREADS);
+            assertTrue(unpooledConnections > THREADS * REQUESTS_PER_THREAD / 2);
+            // and the connection setup saved shows up as throughput
+            assertTrue(pooledThroughput > unpooledThroughput,
+                    "pooled " + pooledThroughput + " req/s, connection per request " + unpooledThroughput + " req/s");
+        }
+    }
+
+    // The JDK client told to close the connection after each response
+    private static RestTemplate unpooledRestTemplate() {
+        RestTemplate restTemplate = new RestTemplate(new SimpleClientHttpRequestFactory());
+        restTemplate.getInterceptors().add((request, body, execution) -> {
+            request.getHeaders().set(HttpHeaders.CONNECTION, "close");
+            return execution.execute(request, body);
+        });
+        return restTemplate;
+    }
+
+    // Returns requests per second
+    private double run(RestTemplate restTemplate, String url) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < REQUESTS_PER_THREAD; j++) {
+                        restTemplate.getForObject(url, Map.class);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            return THREADS * REQUESTS_PER_THREAD / seconds;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.myapp.userimageapp.benchmarkTest;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myapp.userimageapp.model.ImgurImageListResponse;
+
+// Map based vs typed parsing of an account images page, run with mvn -Pjmh test (forked JVMs, not surefire).
+// The gc profiler reports gc.alloc.rate.norm (bytes allocated per parse).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(2)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ImgurResponseParsingBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private byte[] accountImagesPage;
+
+    @Setup
+    public void setUp() {
+        // One full Imgur page (50 images) with the fields Imgur actually returns
+        StringBuilder json = new StringBuilder("{\"data\":[");
+        for (int i = 0; i < 50; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"img").append(i).append("\",\"title\":null,\"description\":null,")
+                    .append("\"datetime\":1737600000,\"type\":\"image/png\",\"animated\":false,\"width\":1920,")
+                    .append("\"height\":1080,\"size\":734512,\"views\":12345,\"bandwidth\":9067683840,\"vote\":null,")
+                    .append("\"favorite\":false,\"nsfw\":null,\"section\":null,\"account_url\":\"john_summers\",")
+                    .append("\"account_id\":123456789,\"is_ad\":false,\"in_most_viral\":false,\"has_sound\":false,")
+                    .append("\"tags\":[],\"ad_type\":0,\"ad_url\":\"\",\"edited\":\"0\",\"in_gallery\":false,")
+                    .append("\"deletehash\":\"del").append(i).append("\",\"name\":\"photo").append(i).append(".png\",")
+                    .append("\"link\":\"https://i.imgur.com/img").append(i).append(".png\"}");
+        }
+        json.append("],\"success\":true,\"status\":200}");
+        accountImagesPage = json.toString().getBytes();
+    }
+
+    @Benchmark
+    public Object parseAsMap() throws Exception {
+        return objectMapper.readValue(accountImagesPage, Map.class);
+    }
+
+    @Benchmark
+    public Object parseAsTypedResponse() throws Exception {
+        return objectMapper.readValue(accountImagesPage, ImgurImageListResponse.class);
+    }
+}
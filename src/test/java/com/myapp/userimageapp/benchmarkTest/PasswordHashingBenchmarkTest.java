@@ -0,0 +1,81 @@
+package com.myapp.userimageapp.benchmarkTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.myapp.userimageapp.security.PasswordHasher;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Login throughput (password verifications per second, total and per core) for each supported algorithm.
+// Many concurrent callers must get every verification through the bounded pool, and at least half the
+// throughput of one caller per pool thread (the pool has one thread per core).
+@Slf4j
+@Tag("benchmark")
+public class PasswordHashingBenchmarkTest {
+
+    private static final long RUN_MILLIS = 3000;
+    private static final int CALLERS = 64;
+
+    @Test
+    public void loginsPerSecondPerCore() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (String algorithm : List.of("bcrypt", "argon2", "pbkdf2")) {
+            PasswordHasher hasher = new PasswordHasher(algorithm, 10, 19456, 2, 310000, 0, 1024);
+            String hash = hasher.encode("john@1234");
+            Result single = run(hasher, hash, 1);
+            Result concurrent = run(hasher, hash, CALLERS);
+            log.info("{}: {} logins/s, {} logins/s per core ({} cores), one caller {} logins/s", algorithm,
+                    String.format("%.1f", concurrent.perSecond()), String.format("%.1f", concurrent.perSecond() / cores), cores,
+                    String.format("%.1f", single.perSecond()));
+            hasher.shutdown();
+
+            assertEquals(0, concurrent.failed(), algorithm + ": rejected or failed verifications");
+            assertTrue(concurrent.perSecond() >= single.perSecond() * cores * 0.5,
+                    algorithm + ": concurrent logins don't use the hashing pool");
+        }
+    }
+
+    // Request threads logging in at once, as they would under load
+    private Result run(PasswordHasher hasher, String hash, int callerCount) throws Exception {
+        LongAdder logins = new LongAdder();
+        LongAdder failed = new LongAdder();
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        long start = System.nanoTime();
+        try (ExecutorService callers = Executors.newFixedThreadPool(callerCount)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < callerCount; i++) {
+                futures.add(callers.submit(() -> {
+                    while (System.currentTimeMillis() < deadline) {
+                        try {
+                            if (hasher.matches("john@1234", hash)) {
+                                logins.increment();
+                            } else {
+                                failed.increment();
+                            }
+                        } catch (RuntimeException ex) {
+                            failed.increment();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return new Result(logins.sum() / ((System.nanoTime() - start) / 1_000_000_000.0), failed.sum());
+    }
+
+    private record Result(double perSecond, long failed) {
+    }
+}
@@ -0,0 +1,71 @@
+package com.myapp.userimageapp.benchmarkTest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpServer;
+
+// Minimal local stand-in for api.imgur.com used by the benchmarks
+public class StubImgurServer implements AutoCloseable {
+
+    private static final byte[] IMAGE_RESPONSE = ("{\"data\":{\"id\":\"abc123\",\"deletehash\":\"del123\","
+            + "\"link\":\"https://i.imgur.com/abc123.png\",\"type\":\"image/png\",\"width\":640,\"height\":480,"
+            + "\"size\":51234},\"success\":true,\"status\":200}").getBytes(StandardCharsets.UTF_8);
+
+    static {
+        // read once, when the first server starts. The JDK server closes idle connections beyond 200 by default, which
+        // a client pool larger than that then finds dead on reuse. And it writes headers and body separately, with
+        // Nagle's algorithm on every keep-alive response would wait for the client's delayed ACK (~40 ms)
+        System.setProperty("sun.net.httpserver.maxIdleConnections", "10000");
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+
+    // remote ports seen by the stub, one per TCP connection opened by the client
+    private final Set<Integer> connections = ConcurrentHashMap.newKeySet();
+
+    public StubImgurServer(long responseDelayMillis) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/3/", exchange -> {
+            connections.add(exchange.getRemoteAddress().getPort());
+            exchange.getRequestBody().readAllBytes();
+            if (responseDelayMillis > 0) {
+                try {
+                    Thread.sleep(responseDelayMillis);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, IMAGE_RESPONSE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(IMAGE_RESPONSE);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public int connectionCount() {
+        return connections.size();
+    }
+
+    public void resetConnectionCount() {
+        connections.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
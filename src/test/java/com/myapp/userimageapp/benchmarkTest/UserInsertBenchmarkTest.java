@@ -0,0 +1,99 @@
+package com.myapp.userimageapp.benchmarkTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import com.myapp.userimageapp.model.UserModel;
+import com.myapp.userimageapp.repository.UserRepository;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+
+// Inserts/sec into the embedded database: one save per user (how /api/register writes)
+// against saveAll in chunks (how /api/register/bulk writes, batched by Hibernate).
+// Passwords are hashed once up front so only the database work is measured.
+// Hibernate statistics count the JDBC statements prepared, batched inserts share one per batch.
+@Slf4j
+@Tag("benchmark")
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class UserInsertBenchmarkTest {
+
+    private static final int USERS = 5000;
+    private static final int CHUNK = 1000;
+
+    // hibernate.jdbc.batch_size in application.properties
+    private static final int BATCH_SIZE = 50;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    public void batchedInsertsPerSecond() {
+        String password = new BCryptPasswordEncoder().encode("john@1234");
+
+        // warm up Hibernate and the JIT with a run of each
+        singleSaves("warmup-single", 500, password);
+        batchedSaves("warmup-batched", 500, password);
+        userRepo.deleteAllInBatch();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        double singlePerSecond = singleSaves("single", USERS, password);
+        long singleStatements = statistics.getPrepareStatementCount();
+        statistics.clear();
+        double batchedPerSecond = batchedSaves("batched", USERS, password);
+        long batchedStatements = statistics.getPrepareStatementCount();
+        assertEquals(USERS, statistics.getEntityInsertCount());
+        assertEquals(2L * USERS, userRepo.count());
+        userRepo.deleteAllInBatch();
+
+        log.info("{} users, one save each: {} inserts/s", USERS, String.format("%.0f", singlePerSecond));
+        log.info("{} users, saveAll in chunks of {}: {} inserts/s", USERS, CHUNK, String.format("%.0f", batchedPerSecond));
+        log.info("JDBC statements prepared: {} for single saves, {} for saveAll", singleStatements, batchedStatements);
+
+        // one statement per insert without batching; with it one per batch, plus a sequence call per 50 ids
+        assertTrue(singleStatements >= USERS);
+        assertTrue(batchedStatements <= 2L * USERS / BATCH_SIZE + USERS / CHUNK,
+                "inserts were not batched: " + batchedStatements + " statements for " + USERS + " users");
+    }
+
+    private double singleSaves(String prefix, int count, String password) {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            userRepo.save(user(prefix, i, password));
+        }
+        return count / ((System.nanoTime() - start) / 1_000_000_000.0);
+    }
+
+    private double batchedSaves(String prefix, int count, String password) {
+        long start = System.nanoTime();
+        for (int from = 0; from < count; from += CHUNK) {
+            List<UserModel> users = new ArrayList<>(CHUNK);
+            for (int i = from; i < Math.min(from + CHUNK, count); i++) {
+                users.add(user(prefix, i, password));
+            }
+            userRepo.saveAll(users);
+        }
+        return count / ((System.nanoTime() - start) / 1_000_000_000.0);
+    }
+
+    private static UserModel user(String prefix, int i, String password) {
+        UserModel user = new UserModel("First" + i, "Last" + i, prefix + "_user_" + i);
+        user.setPassword(password);
+        return user;
+    }
+}
@@ -0,0 +1,171 @@
+package com.myapp.userimageapp.benchmarkTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.support.HttpRequestWrapper;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.myapp.userimageapp.UserimageappApplication;
+import com.myapp.userimageapp.model.ImgurTokenResponse;
+import com.myapp.userimageapp.security.JwtService;
+import com.myapp.userimageapp.service.AuthService;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Boots the whole application, once on Tomcat's platform thread pool and once on virtual threads, only Imgur is
+// replaced by a slow local stub. Many users then load GET /api/{imageId} through Tomcat while probes measure how long
+// an image already in the metadata cache takes to come back.
+// The shipped scheduler, bulkhead and connection pool limits would shed most of this load before Tomcat's threads run
+// out, hiding the difference, so they're raised above the load for both runs. Then the platform run holds up to
+// TOMCAT_THREADS requests in stub calls and queues the rest, probes included, while on virtual threads every request
+// gets its own thread: the probes must be answered faster and the load finish sooner. The pool and the load are kept
+// small, a load that saturates the CPU is slow in both modes and shows no difference.
+@Slf4j
+@Tag("benchmark")
+public class VirtualThreadCapacityBenchmarkTest {
+
+    private static final int USERS = 40;
+    private static final int REQUESTS_PER_USER = 5;
+    // a small platform pool, so a load the CPU keeps up with still runs out of threads
+    private static final int TOMCAT_THREADS = 20;
+    // above the load, so only Tomcat's threads limit the platform run
+    private static final int LIMIT = 5000;
+    private static final long STUB_DELAY_MILLIS = 500;
+    private static final int PROBES = 20;
+    private static final long PROBE_INTERVAL_MILLIS = 50;
+
+    @Test
+    public void virtualThreadsKeepTomcatResponsiveUnderImgurLoad() throws Exception {
+        try (StubImgurServer stub = new StubImgurServer(STUB_DELAY_MILLIS)) {
+            Result platform = run(stub, false);
+            Result virtual = run(stub, true);
+
+            log.info("Platform threads: {} of {} requests ok in {}s, cached image probe {} ms (median)", platform.ok(),
+                    USERS * REQUESTS_PER_USER, String.format("%.2f", platform.seconds()), platform.probeMillis());
+            log.info("Virtual threads: {} of {} requests ok in {}s, cached image probe {} ms (median)", virtual.ok(),
+                    USERS * REQUESTS_PER_USER, String.format("%.2f", virtual.seconds()), virtual.probeMillis());
+
+            // nothing is shed with the raised limits
+            assertEquals(USERS * REQUESTS_PER_USER, platform.ok());
+            assertEquals(USERS * REQUESTS_PER_USER, virtual.ok());
+            // the platform run needs REQUESTS / TOMCAT_THREADS rounds of stub calls, the virtual one about a single round
+            assertTrue(virtual.seconds() < platform.seconds(), "virtual " + virtual.seconds() + "s, platform " + platform.seconds() + "s");
+            // platform probes wait behind the queued load, virtual ones don't
+            assertTrue(virtual.probeMillis() * 2 < platform.probeMillis(),
+                    "virtual probe " + virtual.probeMillis() + " ms, platform probe " + platform.probeMillis() + " ms");
+        }
+    }
+
+    private Result run(StubImgurServer stub, boolean virtualThreads) throws Exception {
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(UserimageappApplication.class)
+                .initializers(context -> context.getBeanFactory().addBeanPostProcessor(redirectTo(stub)))
+                // as arguments, builder properties are only defaults and application.properties would win over them
+                .run("--server.port=0", "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--server.tomcat.threads.max=" + TOMCAT_THREADS, "--imgur.scheduler.max-in-flight=" + LIMIT,
+                        "--imgur.scheduler.max-queued-per-user=" + LIMIT, "--imgur.resilience.max-concurrent=" + LIMIT,
+                        "--imgur.http.max-total=" + LIMIT, "--imgur.http.max-per-route=" + LIMIT)) {
+            String baseUrl = "http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port") + "/api/";
+            JwtService jwtService = app.getBean(JwtService.class);
+            AuthService authService = app.getBean(AuthService.class);
+            List<String> sessions = new ArrayList<>();
+            for (int i = 0; i < USERS; i++) {
+                String username = "bench_user_" + i;
+                authService.storeTokens(username, new ImgurTokenResponse("access_token_" + i, "refresh_token_" + i, 3600L, username));
+                sessions.add(jwtService.issueToken(username));
+            }
+
+            HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+            // the stub answers every id with image abc123, this caches it for the probe
+            get(client, baseUrl + "abc123", sessions.get(0));
+
+            try (ExecutorService load = Executors.newVirtualThreadPerTaskExecutor()) {
+                long start = System.nanoTime();
+                List<Future<HttpResponse<Void>>> responses = new ArrayList<>();
+                for (int i = 0; i < USERS * REQUESTS_PER_USER; i++) {
+                    // distinct ids, so every request goes to Imgur
+                    String url = baseUrl + "image" + i;
+                    String session = sessions.get(i % USERS);
+                    responses.add(load.submit(() -> get(client, url, session)));
+                }
+                Thread.sleep(100);
+                // spread over the time the load is in flight, each on its own thread
+                List<Future<Long>> probeFutures = new ArrayList<>();
+                for (int i = 0; i < PROBES; i++) {
+                    probeFutures.add(load.submit(() -> {
+                        long probeStart = System.nanoTime();
+                        assertEquals(200, get(client, baseUrl + "abc123", sessions.get(0)).statusCode());
+                        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - probeStart);
+                    }));
+                    Thread.sleep(PROBE_INTERVAL_MILLIS);
+                }
+                List<Long> probes = new ArrayList<>();
+                for (Future<Long> probe : probeFutures) {
+                    probes.add(probe.get());
+                }
+                int ok = 0;
+                for (Future<HttpResponse<Void>> future : responses) {
+                    HttpResponse<Void> response = future.get();
+                    if (response.statusCode() == 200) {
+                        ok++;
+                    } else {
+                        // if something is shed it's with 503 and Retry-After, never failed or left hanging
+                        assertEquals(503, response.statusCode());
+                        assertTrue(response.headers().firstValue("Retry-After").isPresent());
+                    }
+                }
+                double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+                probes.sort(null);
+                return new Result(ok, seconds, probes.get(PROBES / 2));
+            }
+        }
+    }
+
+    private static HttpResponse<Void> get(HttpClient client, String url, String session) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).header("Authorization", "Bearer " + session).GET().build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding());
+    }
+
+    // Sends the application's Imgur calls to the stub, the rest of the client (pool, timeouts) is the shipped one
+    private static BeanPostProcessor redirectTo(StubImgurServer stub) {
+        URI stubUri = URI.create(stub.baseUrl());
+        ClientHttpRequestInterceptor redirect = (request, body, execution) -> execution.execute(new HttpRequestWrapper(request) {
+            @Override
+            public URI getURI() {
+                return UriComponentsBuilder.fromUri(request.getURI()).scheme(stubUri.getScheme()).host(stubUri.getHost())
+                        .port(stubUri.getPort()).build(true).toUri();
+            }
+        }, body);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                if (bean instanceof RestTemplate restTemplate) {
+                    restTemplate.getInterceptors().add(redirect);
+                }
+                return bean;
+            }
+        };
+    }
+
+    private record Result(int ok, double seconds, long probeMillis) {
+    }
+}
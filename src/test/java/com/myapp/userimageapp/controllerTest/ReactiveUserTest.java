@@ -0,0 +1,93 @@
+package com.myapp.userimageapp.controllerTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.myapp.userimageapp.controller.ReactiveUser;
+import com.myapp.userimageapp.service.AuthService;
+import com.myapp.userimageapp.service.ImageRecordService;
+import com.myapp.userimageapp.service.ReactiveImageService;
+
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+public class ReactiveUserTest {
+
+    private static final String AUTH_HEADER = "Bearer session_token";
+
+    @Mock
+    private ReactiveImageService reactiveImageService;
+
+    @Mock
+    private AuthService authService;
+
+    @Mock
+    private ImageRecordService imageRecordService;
+
+    @InjectMocks
+    private ReactiveUser reactiveUserController;
+
+    @BeforeEach
+    public void signIn() {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("john_summers", null, Collections.emptyList()));
+        when(authService.getAccessTokenForUser("john_summers")).thenReturn("accessToken");
+    }
+
+    @AfterEach
+    public void signOut() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void testGetAllImages() {
+        List<Map<String, Object>> images = List.of(Map.of("id", "image123"), Map.of("id", "image234"));
+        when(reactiveImageService.getUserImages("accessToken", "john_summers")).thenReturn(Mono.just(images));
+
+        ResponseEntity<List<Map<String, Object>>> response = reactiveUserController.getAllImages(AUTH_HEADER).block();
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(images, response.getBody());
+    }
+
+    @Test
+    public void testGetAllImages_FailureIs500WithEmptyList() {
+        when(reactiveImageService.getUserImages("accessToken", "john_summers")).thenReturn(Mono.empty());
+
+        ResponseEntity<List<Map<String, Object>>> response = reactiveUserController.getAllImages(AUTH_HEADER).block();
+
+        assertEquals(500, response.getStatusCode().value());
+        assertEquals(Collections.emptyList(), response.getBody());
+    }
+
+    @Test
+    public void testGetImage_NotFound() {
+        when(reactiveImageService.getImage("image123", "accessToken")).thenReturn(Mono.empty());
+
+        assertEquals(404, reactiveUserController.getImage("image123", AUTH_HEADER).block().getStatusCode().value());
+    }
+
+    @Test
+    public void testDeleteImage_RemovesTheImageRecord() {
+        when(reactiveImageService.deleteImage("delete123", "accessToken", "john_summers")).thenReturn(Mono.just(true));
+
+        assertEquals(200, reactiveUserController.deleteImage("delete123", AUTH_HEADER).block().getStatusCode().value());
+        verify(imageRecordService).removeImage("john_summers", "delete123");
+    }
+}
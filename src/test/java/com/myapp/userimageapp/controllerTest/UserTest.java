@@ -4,24 +4,47 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import com.myapp.userimageapp.controller.User;
+import com.myapp.userimageapp.model.UploadJobStatus;
 import com.myapp.userimageapp.model.UserModel;
+import com.myapp.userimageapp.service.AuthService;
+import com.myapp.userimageapp.service.ImageContentCache;
+import com.myapp.userimageapp.service.ImageProxyService;
+import com.myapp.userimageapp.service.ImageRecordService;
 import com.myapp.userimageapp.service.ImageService;
+import com.myapp.userimageapp.service.UploadJobRegistry;
 import com.myapp.userimageapp.service.UserService;
 
 @SpringBootTest
@@ -40,20 +63,65 @@ public class UserTest {
     @Mock
     private ImageService imageService;
 
+    @Mock
+    private AuthService authService;
+
+    @Mock
+    private ImageRecordService imageRecordService;
+
+    @Mock
+    private UploadJobRegistry uploadJobRegistry;
+
+    @Mock
+    private ImageProxyService imageProxyService;
+
+    @TempDir
+    Path cacheDir;
+
     @InjectMocks
     private User userController;
 
+    // endpoints use the stored Imgur token of the session user
+    @BeforeEach
+    public void signIn() {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("john_summers", null, Collections.emptyList()));
+        when(authService.getAccessTokenForUser("john_summers")).thenReturn("accessToken");
+    }
+
+    @AfterEach
+    public void signOut() {
+        SecurityContextHolder.clearContext();
+    }
+
     // Test Register User API
     @Test
     public void testRegisterUser() throws Exception {
         String expectedResponse="User successfully registered, proceed to authorize";
-        when(userService.authenticateUser("john_summers", "john@1234")).thenReturn(null);
+        when(userService.isUserAlreadyRegistered("john_summers")).thenReturn(false);
 
         String actualResponse=userController.registerUser("John", "Summers", "john_summers", "john@1234").getBody();
 
         assertEquals(expectedResponse, actualResponse);
     }
 
+    // Saturated password hashing pool answers 503 instead of an error
+    @Test
+    public void testRegisterUser_HashingOverloaded() throws Exception {
+        when(userService.isUserAlreadyRegistered("john_summers")).thenReturn(false);
+        when(userService.registerUser("John", "Summers", "john_summers", "john@1234")).thenThrow(new RejectedExecutionException("queue full"));
+
+        assertEquals(503, userController.registerUser("John", "Summers", "john_summers", "john@1234").getStatusCode().value());
+    }
+
+    // Saturated password hashing pool answers 503 on bulk registration too
+    @Test
+    public void testRegisterUsers_HashingOverloaded() throws Exception {
+        when(userService.registerUsers(List.of())).thenThrow(new RejectedExecutionException("queue full"));
+
+        assertEquals(503, userController.registerUsers(List.of()).getStatusCode().value());
+    }
+
     // Test Image Upload API
     @Test
     public void testUploadImage() throws Exception {
@@ -72,6 +140,19 @@ public class UserTest {
         assertEquals(actualResponse, expectedResponse);
     }
 
+    // Imgur answering without an image fails the upload job instead of throwing
+    @Test
+    public void testUploadImage_FailedUploadFailsTheJob() throws Exception {
+        UploadJobRegistry registry = new UploadJobRegistry();
+        UploadJobRegistry.Job job = registry.start("john_summers", "job-1", "photo.png", 3);
+        MultipartFile file = mock(MultipartFile.class);
+        when(uploadJobRegistry.start("john_summers", null, null, 0L)).thenReturn(job);
+        when(imageService.uploadImage(file, "accessToken", "john_summers", job)).thenReturn(null);
+
+        assertEquals(500, userController.uploadImage(file, "Bearer accessToken").getStatusCode().value());
+        assertEquals(UploadJobStatus.State.FAILED, registry.find("john_summers", "job-1").state());
+    }
+
     // Test Get Image API
     @Test
     public void testGetImage() throws Exception {
@@ -95,7 +176,7 @@ public class UserTest {
         String authHeader = "Bearer accessToken";
         String expectedResponse="Image deleted successfully";
 
-        when(imageService.deleteImage(deleteHash, accessToken)).thenReturn(true);
+        when(imageService.deleteImage(deleteHash, accessToken, "john_summers")).thenReturn(true);
 
         String actualResponse=userController.deleteImage(deleteHash,authHeader).getBody();
         assertEquals(actualResponse, expectedResponse);
@@ -118,7 +199,7 @@ public class UserTest {
         mockImageList.add(image1);
         mockImageList.add(image2);
 
-        when(imageService.getUserImages(accessToken)).thenReturn(mockImageList);
+        when(imageService.getUserImages(accessToken, "john_summers")).thenReturn(mockImageList);
 
         List<Map<String, Object>> actualResponse=userController.getAllImages(authHeader).getBody();
 
@@ -139,5 +220,65 @@ public class UserTest {
         assertEquals(actualResponse, user);
     }
 
+    // A malformed Range header is ignored, the whole image is sent
+    @Test
+    public void testGetImageContent_MalformedRangeIgnored() throws Exception {
+        ImageContentCache contentCache = new ImageContentCache(cacheDir.toString(), 1024 * 1024);
+        ImageContentCache.Content content = pinned(contentCache.put("image123", bytes("0123456789"), "image/png", "\"abc\""));
+        when(imageProxyService.getContent("image123", "accessToken")).thenReturn(content);
+
+        ResponseEntity<StreamingResponseBody> response = userController.getImageContent("image123", "Bearer accessToken", null,
+                "bytes=oops", null, new MockHttpServletRequest());
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals("0123456789", body(response));
+    }
+
+    // A well formed range past the end of the image is 416
+    @Test
+    public void testGetImageContent_UnsatisfiableRange() throws Exception {
+        ImageContentCache contentCache = new ImageContentCache(cacheDir.toString(), 1024 * 1024);
+        ImageContentCache.Content content = pinned(contentCache.put("image123", bytes("0123456789"), "image/png", "\"abc\""));
+        when(imageProxyService.getContent("image123", "accessToken")).thenReturn(content);
+
+        ResponseEntity<StreamingResponseBody> response = userController.getImageContent("image123", "Bearer accessToken", null,
+                "bytes=20-", null, new MockHttpServletRequest());
 
+        assertEquals(416, response.getStatusCode().value());
+        assertEquals("bytes */10", response.getHeaders().getFirst("Content-Range"));
+    }
+
+    // The entry is evicted after the response is returned but before its body is written, the bytes still go out
+    // and the file is deleted once they have
+    @Test
+    public void testGetImageContent_EvictionWhileSendingKeepsFile() throws Exception {
+        ImageContentCache contentCache = new ImageContentCache(cacheDir.toString(), 1024 * 1024);
+        ImageContentCache.Content content = pinned(contentCache.put("image123", bytes("0123456789"), "image/png", "\"abc\""));
+        when(imageProxyService.getContent("image123", "accessToken")).thenReturn(content);
+
+        ResponseEntity<StreamingResponseBody> response = userController.getImageContent("image123", "Bearer accessToken", null,
+                "bytes=2-5", null, new MockHttpServletRequest());
+        contentCache.invalidate("image123");
+        assertTrue(Files.exists(content.getFile()));
+
+        assertEquals(206, response.getStatusCode().value());
+        assertEquals("2345", body(response));
+        assertFalse(Files.exists(content.getFile()));
+    }
+
+    // getContent hands out pinned content, the mock has to do the same
+    private static ImageContentCache.Content pinned(ImageContentCache.Content content) {
+        assertTrue(content.pin());
+        return content;
+    }
+
+    private static ByteArrayInputStream bytes(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String body(ResponseEntity<StreamingResponseBody> response) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
 }
@@ -0,0 +1,150 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import com.myapp.userimageapp.model.UploadJob;
+import com.myapp.userimageapp.model.UploadJobStatus;
+import com.myapp.userimageapp.service.AsyncUploadService;
+import com.myapp.userimageapp.service.AuthService;
+import com.myapp.userimageapp.service.ImageRecordService;
+import com.myapp.userimageapp.service.ImageService;
+import com.myapp.userimageapp.service.ImgurUnavailableException;
+import com.myapp.userimageapp.service.UploadJobRegistry;
+import com.myapp.userimageapp.service.UploadProgress;
+
+// Async upload pipeline end to end against the embedded Kafka broker, Imgur itself is mocked
+@SpringBootTest(properties = {
+        "imgur.upload.async.enabled=true",
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.auto-offset-reset=earliest",
+        "imgur.upload.async.partitions=1",
+        "imgur.upload.async.retry-initial-interval-ms=100",
+        "imgur.upload.async.retry-max-elapsed-ms=2000",
+        "imgur.upload.async.spool-dir=${java.io.tmpdir}/userimageapp-spool-test"})
+@EmbeddedKafka(partitions = 1, topics = {"imgur-uploads", "imgur-uploads-dlt"})
+public class AsyncUploadServiceTest {
+
+    @Autowired
+    private AsyncUploadService asyncUploadService;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafka;
+
+    @Autowired
+    private UploadJobRegistry uploadJobRegistry;
+
+    @MockitoBean
+    private ImageService imageService;
+
+    @MockitoBean
+    private AuthService authService;
+
+    @MockitoBean
+    private ImageRecordService imageRecordService;
+
+    @Test
+    public void testSubmit_UploadedByWorkerAfterRetry() throws Exception {
+        when(authService.getAccessTokenForUser("john_summers")).thenReturn("access_token_123");
+        // Imgur fails once, the retry succeeds
+        when(imageService.uploadImageStream(any(InputStream.class), eq("photo.png"), eq("image/png"), eq("access_token_123"), eq("john_summers"),
+                any(UploadProgress.class)))
+                .thenThrow(new IOException("Imgur upload failed"))
+                .thenReturn(Map.of("id", "image123", "link", "https://i.imgur.com/image123.png"));
+
+        String jobId = asyncUploadService.submit(new MockMultipartFile("file", "photo.png", "image/png", new byte[] {1, 2, 3}), "john_summers");
+
+        verify(imageRecordService, timeout(15000)).recordUpload(eq("john_summers"), anyMap());
+        verify(imageService, timeout(15000).times(2)).uploadImageStream(any(InputStream.class), eq("photo.png"), eq("image/png"), eq("access_token_123"),
+                eq("john_summers"), any(UploadProgress.class));
+        UploadJobStatus status = uploadJobRegistry.find("john_summers", jobId);
+        assertEquals(UploadJobStatus.State.DONE, status.state());
+        assertEquals("https://i.imgur.com/image123.png", status.link());
+        Path spoolFile = Path.of(System.getProperty("java.io.tmpdir"), "userimageapp-spool-test", jobId);
+        assertFalse(Files.exists(spoolFile));
+    }
+
+    @Test
+    public void testSubmit_ShedUploadWaitsForRetryAfterInsteadOfDeadLetter() throws Exception {
+        when(authService.getAccessTokenForUser("shed_user")).thenReturn("access_token_shed");
+        // out of credits for longer than retry-max-elapsed-ms, each time until 1 s later
+        ImgurUnavailableException shed = new ImgurUnavailableException("Imgur request budget exhausted", 1);
+        when(imageService.uploadImageStream(any(InputStream.class), eq("photo.png"), eq("image/png"), eq("access_token_shed"), eq("shed_user"),
+                any(UploadProgress.class)))
+                .thenThrow(shed, shed, shed)
+                .thenReturn(Map.of("id", "image456", "link", "https://i.imgur.com/image456.png"));
+
+        String jobId = asyncUploadService.submit(new MockMultipartFile("file", "photo.png", "image/png", new byte[] {1, 2, 3}), "shed_user");
+
+        verify(imageRecordService, timeout(15000)).recordUpload(eq("shed_user"), anyMap());
+        verify(imageService, times(4)).uploadImageStream(any(InputStream.class), eq("photo.png"), eq("image/png"), eq("access_token_shed"),
+                eq("shed_user"), any(UploadProgress.class));
+        assertEquals(UploadJobStatus.State.DONE, uploadJobRegistry.find("shed_user", jobId).state());
+    }
+
+    @Test
+    public void testSubmit_WithoutImgurTokenGoesToDeadLetterTopic() throws Exception {
+        when(authService.getAccessTokenForUser("no_token_user")).thenReturn(null);
+
+        try (Consumer<String, String> consumer = new DefaultKafkaConsumerFactory<>(
+                KafkaTestUtils.consumerProps("dlt-test", "true", embeddedKafka), new StringDeserializer(), new StringDeserializer()).createConsumer()) {
+            embeddedKafka.consumeFromAnEmbeddedTopic(consumer, "imgur-uploads-dlt");
+
+            String jobId = asyncUploadService.submit(new MockMultipartFile("file", "photo.png", "image/png", new byte[] {1, 2, 3}), "no_token_user");
+
+            ConsumerRecord<String, String> deadLetter = KafkaTestUtils.getSingleRecord(consumer, "imgur-uploads-dlt", Duration.ofSeconds(15));
+            assertTrue(deadLetter.value().contains(jobId));
+            // deleted right after the dead letter is published
+            Path spoolFile = Path.of(System.getProperty("java.io.tmpdir"), "userimageapp-spool-test", jobId);
+            for (int i = 0; i < 50 && Files.exists(spoolFile); i++) {
+                Thread.sleep(100);
+            }
+            assertFalse(Files.exists(spoolFile));
+        }
+        verify(imageService, never()).uploadImageStream(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void testSpoolFile_PathOutsideSpoolDirectoryIsRefused() {
+        assertThrows(IllegalStateException.class, () -> asyncUploadService.spoolFile(job("../../etc/passwd")));
+        assertThrows(IllegalStateException.class, () -> asyncUploadService.spoolFile(job("/etc/passwd")));
+        assertThrows(IllegalStateException.class, () -> asyncUploadService.spoolFile(job(".")));
+        assertEquals(Path.of(System.getProperty("java.io.tmpdir"), "userimageapp-spool-test", "job123").toAbsolutePath().normalize(),
+                asyncUploadService.spoolFile(job("job123")));
+    }
+
+    private static UploadJob job(String spoolPath) {
+        return new UploadJob("job123", "john_summers", spoolPath, "photo.png", "image/png", 3, Instant.now());
+    }
+}
@@ -0,0 +1,135 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import com.myapp.userimageapp.model.ImgurToken;
+import com.myapp.userimageapp.model.ImgurTokenResponse;
+import com.myapp.userimageapp.service.AuthService;
+import com.myapp.userimageapp.service.InMemoryTokenStore;
+
+public class AuthServiceTest {
+
+    @Test
+    public void testAuthorizationState_OneTimeAndTiedToUser() {
+        AuthService authService = new AuthService(mock(RestTemplate.class), new InMemoryTokenStore());
+
+        String state = authService.startAuthorization("testUser");
+        String otherState = authService.startAuthorization("testUser");
+
+        assertNotEquals(state, otherState);
+        assertNull(authService.completeAuthorization("testUser"));
+        assertEquals("testUser", authService.completeAuthorization(state));
+        // a replayed callback doesn't get the user again
+        assertNull(authService.completeAuthorization(state));
+        assertNull(authService.completeAuthorization(null));
+    }
+
+    @Test
+    public void testGetAccessTokenForUser_NotExpiring() {
+        RestTemplate restTemplate = mock(RestTemplate.class);
+        InMemoryTokenStore tokenStore = new InMemoryTokenStore();
+        tokenStore.save(new ImgurToken("testUser", "access_token_123", "refresh_token_123", Instant.now().plusSeconds(3600), Instant.now()));
+        AuthService authService = new AuthService(restTemplate, tokenStore);
+
+        assertEquals("access_token_123", authService.getAccessTokenForUser("testUser"));
+        verify(restTemplate, never()).exchange(anyString(), any(HttpMethod.class), any(HttpEntity.class), eq(ImgurTokenResponse.class));
+    }
+
+    @Test
+    public void testGetAccessTokenForUser_ConcurrentCallersShareOneRefresh() throws Exception {
+        RestTemplate restTemplate = mock(RestTemplate.class);
+        InMemoryTokenStore tokenStore = new InMemoryTokenStore();
+        tokenStore.save(new ImgurToken("testUser", "old_access_token", "refresh_token_123", Instant.now().plusSeconds(10), Instant.now()));
+        AuthService authService = new AuthService(restTemplate, tokenStore);
+
+        CountDownLatch release = new CountDownLatch(1);
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurTokenResponse.class))).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return new ResponseEntity<>(new ImgurTokenResponse("new_access_token", "new_refresh_token", 3600L, "testUser"), HttpStatus.OK);
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> authService.getAccessTokenForUser("testUser")));
+        }
+        Thread.sleep(100);
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("new_access_token", result.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        verify(restTemplate, times(1)).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurTokenResponse.class));
+        assertEquals("new_refresh_token", tokenStore.find("testUser").get().getRefreshToken());
+    }
+
+    @Test
+    public void testRefreshExpiringTokens_KeepsRefreshTokenWhenNotRotated() {
+        RestTemplate restTemplate = mock(RestTemplate.class);
+        InMemoryTokenStore tokenStore = new InMemoryTokenStore();
+        tokenStore.save(new ImgurToken("testUser", "old_access_token", "refresh_token_123", Instant.now().plusSeconds(10), Instant.now()));
+        tokenStore.save(new ImgurToken("otherUser", "other_access_token", "refresh_token_456", Instant.now().plusSeconds(3600), Instant.now()));
+        AuthService authService = new AuthService(restTemplate, tokenStore);
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurTokenResponse.class)))
+                .thenReturn(new ResponseEntity<>(new ImgurTokenResponse("new_access_token", null, 3600L, "testUser"), HttpStatus.OK));
+
+        authService.refreshExpiringTokens();
+
+        verify(restTemplate, times(1)).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurTokenResponse.class));
+        assertEquals("new_access_token", tokenStore.find("testUser").get().getAccessToken());
+        assertEquals("refresh_token_123", tokenStore.find("testUser").get().getRefreshToken());
+        assertEquals("other_access_token", tokenStore.find("otherUser").get().getAccessToken());
+    }
+
+    @Test
+    public void testGetAccessTokenForUser_BacksOffAfterFailedRefresh() {
+        RestTemplate restTemplate = mock(RestTemplate.class);
+        InMemoryTokenStore tokenStore = new InMemoryTokenStore();
+        tokenStore.save(new ImgurToken("testUser", "old_access_token", "refresh_token_123", Instant.now().plusSeconds(10), Instant.now()));
+        AuthService authService = new AuthService(restTemplate, tokenStore);
+        AtomicInteger refreshCalls = new AtomicInteger();
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurTokenResponse.class))).thenAnswer(invocation -> {
+            refreshCalls.incrementAndGet();
+            throw HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request", new HttpHeaders(), null, null);
+        });
+
+        assertEquals("old_access_token", authService.getAccessTokenForUser("testUser"));
+        int callsForFirstRequest = refreshCalls.get();
+        // the token is still valid, the following requests use it without calling Imgur again
+        for (int i = 0; i < 5; i++) {
+            assertEquals("old_access_token", authService.getAccessTokenForUser("testUser"));
+        }
+
+        assertEquals(callsForFirstRequest, refreshCalls.get());
+    }
+}
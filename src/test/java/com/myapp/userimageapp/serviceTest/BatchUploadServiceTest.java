@@ -0,0 +1,121 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.myapp.userimageapp.model.UploadResult;
+import com.myapp.userimageapp.service.BatchUploadService;
+import com.myapp.userimageapp.service.ImageService;
+import com.myapp.userimageapp.service.UploadProgress;
+
+public class BatchUploadServiceTest {
+
+    @Test
+    public void testUploadImages_RespectsPerUserLimit() throws Exception {
+        String accessToken = "access_token_123";
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        ImageService imageService = mock(ImageService.class);
+        when(imageService.uploadImage(any(MultipartFile.class), eq(accessToken), eq(accessToken), eq(UploadProgress.NONE))).thenAnswer(invocation -> {
+            int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            MultipartFile file = invocation.getArgument(0);
+            return Map.of("link", "https://i.imgur.com/" + file.getOriginalFilename(), "deletehash", "hash");
+        });
+
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            files.add(new MockMultipartFile("files", "image" + i + ".png", "image/png", new byte[] {1, 2, 3}));
+        }
+
+        BatchUploadService batchUploadService = new BatchUploadService(imageService, 8, 3, false);
+        List<UploadResult> results = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        batchUploadService.uploadImages(files, accessToken, accessToken, results::add, done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(12, results.size());
+        assertTrue(maxInFlight.get() <= 3);
+        assertTrue(results.stream().allMatch(result -> result.getLink() != null && result.getError() == null));
+        batchUploadService.shutdown();
+    }
+
+    @Test
+    public void testUploadImages_LargeBatchDoesNotStarveOtherUsers() throws Exception {
+        AtomicInteger uploadedByFirstUser = new AtomicInteger();
+        ImageService imageService = mock(ImageService.class);
+        when(imageService.uploadImage(any(MultipartFile.class), any(String.class), any(String.class), eq(UploadProgress.NONE))).thenAnswer(invocation -> {
+            Thread.sleep(50);
+            if ("token_a".equals(invocation.getArgument(1))) {
+                uploadedByFirstUser.incrementAndGet();
+            }
+            return Map.of("link", "https://i.imgur.com/image.png");
+        });
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            files.add(new MockMultipartFile("files", "image" + i + ".png", "image/png", new byte[] {1}));
+        }
+
+        // the first user's batch can fill the whole pool
+        BatchUploadService batchUploadService = new BatchUploadService(imageService, 2, 2, false);
+        CountDownLatch firstDone = new CountDownLatch(1);
+        batchUploadService.uploadImages(files, "user_a", "token_a", result -> { }, firstDone::countDown);
+        Thread.sleep(20);
+        CountDownLatch secondDone = new CountDownLatch(1);
+        batchUploadService.uploadImages(List.of(files.get(0)), "user_b", "token_b", result -> { }, secondDone::countDown);
+
+        // the second user's upload goes next rather than behind the rest of the first batch
+        assertTrue(secondDone.await(5, TimeUnit.SECONDS));
+        assertTrue(uploadedByFirstUser.get() <= 4);
+        assertTrue(firstDone.await(5, TimeUnit.SECONDS));
+
+        // idle users don't keep a lane
+        long deadline = System.currentTimeMillis() + 1000;
+        while (batchUploadService.activeUsers() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, batchUploadService.activeUsers());
+        batchUploadService.shutdown();
+    }
+
+    @Test
+    public void testUploadImages_ReportsFailuresPerFile() throws Exception {
+        String accessToken = "access_token_123";
+        MultipartFile good = new MockMultipartFile("files", "good.png", "image/png", new byte[] {1});
+        MultipartFile bad = new MockMultipartFile("files", "bad.png", "image/png", new byte[] {2});
+
+        ImageService imageService = mock(ImageService.class);
+        when(imageService.uploadImage(eq(good), eq(accessToken), eq(accessToken), eq(UploadProgress.NONE))).thenReturn(Map.of("link", "https://i.imgur.com/good.png"));
+        when(imageService.uploadImage(eq(bad), eq(accessToken), eq(accessToken), eq(UploadProgress.NONE))).thenReturn(null);
+
+        BatchUploadService batchUploadService = new BatchUploadService(imageService, 4, 2, true);
+        List<UploadResult> results = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        batchUploadService.uploadImages(List.of(good, bad), accessToken, accessToken, results::add, done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, results.size());
+        UploadResult failed = results.stream().filter(result -> "bad.png".equals(result.getFilename())).findFirst().orElseThrow();
+        assertEquals("Failed to upload image", failed.getError());
+        batchUploadService.shutdown();
+    }
+}
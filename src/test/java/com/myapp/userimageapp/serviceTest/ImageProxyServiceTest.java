@@ -0,0 +1,180 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestTemplate;
+
+import com.myapp.userimageapp.model.ImgurBasicResponse;
+import com.myapp.userimageapp.model.ImgurImage;
+import com.myapp.userimageapp.model.ImgurImageResponse;
+import com.myapp.userimageapp.service.ImageContentCache;
+import com.myapp.userimageapp.service.ImageMetadataCache;
+import com.myapp.userimageapp.service.ImageProxyService;
+import com.myapp.userimageapp.service.ImageService;
+import com.myapp.userimageapp.service.ImgurResilience;
+import com.myapp.userimageapp.service.RequestCoalescer;
+import com.myapp.userimageapp.service.UserImagesCache;
+
+public class ImageProxyServiceTest {
+
+    private static final String LINK = "https://i.imgur.com/image123.png";
+
+    private static final byte[] BYTES = "not really a png".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    public void testGetContent_FetchedOnceThenRevalidated() throws Exception {
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        List<String> sentIfNoneMatch = new ArrayList<>();
+        when(mockRestTemplate.execute(eq(LINK), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Object>>any()))
+                .thenAnswer(invocation -> {
+                    MockClientHttpRequest request = new MockClientHttpRequest();
+                    ((RequestCallback) invocation.getArgument(2)).doWithRequest(request);
+                    String ifNoneMatch = request.getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH);
+                    sentIfNoneMatch.add(ifNoneMatch);
+                    MockClientHttpResponse response = ifNoneMatch != null
+                            ? new MockClientHttpResponse(new byte[0], HttpStatus.NOT_MODIFIED)
+                            : new MockClientHttpResponse(BYTES, HttpStatus.OK);
+                    response.getHeaders().setETag("\"abc\"");
+                    return ((ResponseExtractor<?>) invocation.getArgument(3)).extractData(response);
+                });
+
+        // revalidated on every request
+        ImageProxyService proxyService = proxyService(mockRestTemplate, 0);
+        ImageContentCache.Content first = proxyService.getContent("image123", "access_token_123");
+        ImageContentCache.Content second = proxyService.getContent("image123", "access_token_123");
+
+        assertSame(first, second);
+        assertEquals("\"abc\"", first.getEtag());
+        assertArrayEquals(BYTES, Files.readAllBytes(first.getFile()));
+        assertEquals(Arrays.asList(null, "\"abc\""), sentIfNoneMatch);
+
+        // a range of the cached file
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel channel = first.open()) {
+            ImageContentCache.Content.transferTo(channel, 4, 6, out);
+        }
+        assertEquals("really", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testGetContent_FreshEntryServedWithoutUpstream() throws Exception {
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        when(mockRestTemplate.execute(eq(LINK), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Object>>any()))
+                .thenAnswer(invocation -> ((ResponseExtractor<?>) invocation.getArgument(3))
+                        .extractData(new MockClientHttpResponse(BYTES, HttpStatus.OK)));
+
+        ImageProxyService proxyService = proxyService(mockRestTemplate, 300);
+        ImageContentCache.Content content = proxyService.getContent("image123", "access_token_123");
+        proxyService.getContent("image123", "access_token_123");
+
+        // no upstream ETag, one is made up
+        assertEquals(BYTES.length, content.getSize());
+        assertEquals('"', content.getEtag().charAt(0));
+        verify(mockRestTemplate, times(1)).execute(eq(LINK), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Object>>any());
+    }
+
+    @Test
+    public void testGetContent_GoneUpstream() throws Exception {
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        when(mockRestTemplate.execute(eq(LINK), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Object>>any()))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", new HttpHeaders(), null, null));
+
+        assertNull(proxyService(mockRestTemplate, 300).getContent("image123", "access_token_123"));
+    }
+
+    @Test
+    public void testGetContent_EvictedFileKeptUntilReleased() throws Exception {
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        when(mockRestTemplate.execute(eq(LINK), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Object>>any()))
+                .thenAnswer(invocation -> ((ResponseExtractor<?>) invocation.getArgument(3))
+                        .extractData(new MockClientHttpResponse(BYTES, HttpStatus.OK)));
+        ImageContentCache contentCache = new ImageContentCache(cacheDir.toString(), 1024 * 1024);
+
+        ImageContentCache.Content content = proxyService(mockRestTemplate, 300, contentCache).getContent("image123", "access_token_123");
+        contentCache.invalidate("image123");
+
+        // still pinned by the caller
+        assertTrue(Files.exists(content.getFile()));
+        content.release();
+        assertFalse(Files.exists(content.getFile()));
+        // and an evicted entry can't be pinned again once its file is gone
+        assertFalse(content.pin());
+    }
+
+    @Test
+    public void testGetContent_GoneAfterDelete() throws Exception {
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        ImgurImage image = new ImgurImage("image123", null, null, null, "image/png", null, null, null, "delete123", LINK);
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageResponse.class)))
+                .thenReturn(new ResponseEntity<>(new ImgurImageResponse(image, true, 200), HttpStatus.OK))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", new HttpHeaders(), null, null));
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.DELETE), any(HttpEntity.class), eq(ImgurBasicResponse.class)))
+                .thenReturn(new ResponseEntity<>(new ImgurBasicResponse(true, 200), HttpStatus.OK));
+        when(mockRestTemplate.execute(eq(LINK), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Object>>any()))
+                .thenAnswer(invocation -> ((ResponseExtractor<?>) invocation.getArgument(3))
+                        .extractData(new MockClientHttpResponse(BYTES, HttpStatus.OK)));
+        ImageMetadataCache metadataCache = new ImageMetadataCache();
+        ImageContentCache contentCache = new ImageContentCache(cacheDir.toString(), 1024 * 1024, metadataCache);
+        ImageService imageService = new ImageService(mockRestTemplate, metadataCache, new UserImagesCache());
+        ImageProxyService proxyService = new ImageProxyService(mockRestTemplate, imageService, contentCache, new ImgurResilience(),
+                new RequestCoalescer(), 300);
+
+        ImageContentCache.Content content = proxyService.getContent("image123", "access_token_123");
+        content.release();
+        assertTrue(imageService.deleteImage("delete123", "access_token_123"));
+
+        // deleted by its deletehash, the cached bytes go too and the next request is a 404 from Imgur
+        assertNull(contentCache.get("image123"));
+        assertFalse(Files.exists(content.getFile()));
+        assertNull(proxyService.getContent("image123", "access_token_123"));
+    }
+
+    private ImageProxyService proxyService(RestTemplate restTemplate, long revalidateAfterSeconds) throws Exception {
+        return proxyService(restTemplate, revalidateAfterSeconds, new ImageContentCache(cacheDir.toString(), 1024 * 1024));
+    }
+
+    private ImageProxyService proxyService(RestTemplate restTemplate, long revalidateAfterSeconds, ImageContentCache contentCache) {
+        ImageService mockImageService = mock(ImageService.class);
+        when(mockImageService.getImage("image123", "access_token_123")).thenReturn(Map.of("id", "image123", "type", "image/png", "link", LINK));
+        return new ImageProxyService(restTemplate, mockImageService, contentCache, new ImgurResilience(), new RequestCoalescer(),
+                revalidateAfterSeconds);
+    }
+}
@@ -0,0 +1,113 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import com.myapp.userimageapp.model.ImageRecord;
+import com.myapp.userimageapp.model.UserModel;
+import com.myapp.userimageapp.repository.ImageRecordRepository;
+import com.myapp.userimageapp.repository.ImageSummary;
+import com.myapp.userimageapp.repository.UserRepository;
+import com.myapp.userimageapp.service.ImageRecordService;
+import com.myapp.userimageapp.service.UserService;
+
+@SpringBootTest
+public class ImageRecordServiceTest {
+
+    @Mock
+    private ImageRecordRepository imageRecordRepo;
+
+    @Mock
+    private UserRepository userRepo;
+
+    @Mock
+    private UserService userService;
+
+    @InjectMocks
+    private ImageRecordService imageRecordService;
+
+    private UserModel user(String username) {
+        UserModel user = new UserModel("John", "Summers", username);
+        user.setId(7L);
+        return user;
+    }
+
+    @Test
+    public void testRecordUpload() {
+        UserModel owner = user("john_summers");
+        when(userService.getUserInfo("john_summers")).thenReturn(owner);
+        when(userRepo.getReferenceById(7L)).thenReturn(owner);
+
+        imageRecordService.recordUpload("john_summers", Map.of("id", "image123", "deletehash", "hash123",
+                "link", "https://i.imgur.com/image123.png", "size", 2048, "type", "image/png", "datetime", 1737626400L));
+
+        ArgumentCaptor<ImageRecord> captor = ArgumentCaptor.forClass(ImageRecord.class);
+        verify(imageRecordRepo, times(1)).save(captor.capture());
+        ImageRecord record = captor.getValue();
+        assertEquals("image123", record.getImageId());
+        assertEquals("hash123", record.getDeleteHash());
+        assertEquals(2048L, record.getSize());
+        assertEquals("image/png", record.getMimeType());
+        assertEquals(Instant.ofEpochSecond(1737626400L), record.getCreatedAt());
+        assertEquals(owner, record.getOwner());
+    }
+
+    @Test
+    public void testRecordUpload_UnknownUser() {
+        when(userService.getUserInfo(anyString())).thenReturn(null);
+
+        imageRecordService.recordUpload("nobody", Map.of("id", "image123"));
+
+        verify(imageRecordRepo, never()).save(any(ImageRecord.class));
+    }
+
+    @Test
+    public void testRemoveImage() {
+        when(userService.getUserInfo("john_summers")).thenReturn(user("john_summers"));
+
+        imageRecordService.removeImage("john_summers", "hash123");
+
+        verify(imageRecordRepo, times(1)).deleteByOwnerIdAndKey(7L, "hash123");
+    }
+
+    @Test
+    public void testListImages_CapsPageSize() {
+        when(userService.getUserInfo("john_summers")).thenReturn(user("john_summers"));
+        when(imageRecordRepo.findByOwnerIdOrderByCreatedAtDesc(anyLong(), any(Pageable.class))).thenReturn(Page.empty());
+
+        imageRecordService.listImages("john_summers", 0, 10000);
+
+        ArgumentCaptor<Pageable> captor = ArgumentCaptor.forClass(Pageable.class);
+        verify(imageRecordRepo).findByOwnerIdOrderByCreatedAtDesc(eq(7L), captor.capture());
+        assertEquals(ImageRecordService.MAX_PAGE_SIZE, captor.getValue().getPageSize());
+    }
+
+    @Test
+    public void testListImages_UnknownUser() {
+        when(userService.getUserInfo(anyString())).thenReturn(null);
+
+        Page<ImageSummary> page = imageRecordService.listImages("nobody", 0, 50);
+
+        assertTrue(page.isEmpty());
+        verify(imageRecordRepo, never()).findByOwnerIdOrderByCreatedAtDesc(anyLong(), any(Pageable.class));
+    }
+}
@@ -1,6 +1,7 @@
 package com.myapp.userimageapp.serviceTest;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -12,24 +13,47 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.myapp.userimageapp.model.ImgurBasicResponse;
+import com.myapp.userimageapp.model.ImgurImage;
+import com.myapp.userimageapp.model.ImgurImageListResponse;
+import com.myapp.userimageapp.model.ImgurImageResponse;
+import com.myapp.userimageapp.model.ImgurTokenResponse;
 import com.myapp.userimageapp.service.AuthService;
 import com.myapp.userimageapp.service.ImageService;
+import com.myapp.userimageapp.service.UploadProgress;
 
 @SpringBootTest
 public class ImageServiceTest {
@@ -41,15 +65,14 @@ public class ImageServiceTest {
         String expectedAccessToken = "access_token_123";  // The access token we expect to receive in the mock response
 
          // Mock the response body to simulate the Imgur API's response to the authorization code exchange
-        Map<String, Object> mockResponse = new HashMap<>();
-        mockResponse.put("access_token", expectedAccessToken);
+        ImgurTokenResponse mockResponse = new ImgurTokenResponse(expectedAccessToken, "refresh_token_123", 3600L, "john");
 
         // Mock the ResponseEntity to return the mock response with status OK
-        ResponseEntity<Map> mockResponseEntity = new ResponseEntity<>(mockResponse, HttpStatus.OK);
+        ResponseEntity<ImgurTokenResponse> mockResponseEntity = new ResponseEntity<>(mockResponse, HttpStatus.OK);
 
         // Create a mock RestTemplate and inject it into the AuthService
         RestTemplate mockRestTemplate = mock(RestTemplate.class);
-        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class)))
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurTokenResponse.class)))
                 .thenReturn(mockResponseEntity);
 
         // Create the AuthService instance with the mocked RestTemplate
@@ -61,7 +84,7 @@ public class ImageServiceTest {
         // Assert: Verify that the access token is extracted correctly
         assertEquals(expectedAccessToken, accessToken);  // The method should return the mock token
 
-        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class));
+        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurTokenResponse.class));
 
     }
 
@@ -72,15 +95,12 @@ public class ImageServiceTest {
         String imageUrl = "https://imgur.com/someimage.jpg";
 
         //Prepare the mock response from Imgur API
-        Map<String,Object>mockResponse=new HashMap<>();
-        Map<String,Object>data=new HashMap<>();
-        data.put("link",imageUrl);
-        mockResponse.put("data", data);
+        ImgurImageResponse mockResponse=new ImgurImageResponse(image("image123", null, imageUrl), true, 200);
 
         // Mock RestTemplate's exchange method to return the mock response
-        ResponseEntity<Map> mockResponseEntity = new ResponseEntity<>(mockResponse, HttpStatus.OK);
+        ResponseEntity<ImgurImageResponse> mockResponseEntity = new ResponseEntity<>(mockResponse, HttpStatus.OK);
         RestTemplate mockRestTemplate = mock(RestTemplate.class);
-        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class)))
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurImageResponse.class)))
                 .thenReturn(mockResponseEntity);
         
         ImageService imageService=new ImageService(mockRestTemplate);
@@ -92,7 +112,7 @@ public class ImageServiceTest {
         assertEquals(imageUrl, actualResponse.get("link"));
 
         // Verify that RestTemplate's exchange method was called
-        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class));
+        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurImageResponse.class));
     }
 
     @Test
@@ -101,7 +121,7 @@ public class ImageServiceTest {
         MultipartFile file=mock(MockMultipartFile.class); 
 
         RestTemplate mockRestTemplate = mock(RestTemplate.class);
-        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class)))
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurImageResponse.class)))
                 .thenThrow(new RuntimeException("Failed"));
 
         ImageService imageService=new ImageService(mockRestTemplate);
@@ -110,7 +130,7 @@ public class ImageServiceTest {
 
         assertNull(actualResponse);
 
-        verify(mockRestTemplate,times(1)).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class));
+        verify(mockRestTemplate,times(1)).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurImageResponse.class));
     }
 
     @Test 
@@ -118,12 +138,11 @@ public class ImageServiceTest {
         String access_token="access_token_123";
         MultipartFile file=mock(MockMultipartFile.class); 
 
-        Map<String,Object>mockResponse=new HashMap<>();
-        mockResponse.put("error", "error");
+        ImgurImageResponse mockResponse=new ImgurImageResponse(null, false, 400);
 
-        ResponseEntity<Map>mockResponseEntity=new ResponseEntity<Map>(mockResponse, HttpStatus.OK);
+        ResponseEntity<ImgurImageResponse>mockResponseEntity=new ResponseEntity<>(mockResponse, HttpStatus.OK);
         RestTemplate mockRestTemplate = mock(RestTemplate.class);
-        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class)))
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurImageResponse.class)))
                 .thenReturn(mockResponseEntity);
 
         ImageService imageService=new ImageService(mockRestTemplate);
@@ -132,7 +151,78 @@ public class ImageServiceTest {
 
         assertNull(actualResponse);
 
-        verify(mockRestTemplate,times(1)).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class));
+        verify(mockRestTemplate,times(1)).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurImageResponse.class));
+    }
+
+    @Test
+    public void testUploadImageStreamSuccess() throws Exception {
+        String access_token="access_token_123";
+        String imageUrl = "https://imgur.com/someimage.jpg";
+        byte[] imageBytes = "fake-image-bytes".getBytes(StandardCharsets.UTF_8);
+
+        ImgurImageResponse mockResponse=new ImgurImageResponse(image("image123", null, imageUrl), true, 200);
+
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        ArgumentCaptor<RequestCallback> callback = ArgumentCaptor.forClass(RequestCallback.class);
+        when(mockRestTemplate.execute(anyString(), eq(HttpMethod.POST), callback.capture(), ArgumentMatchers.<ResponseExtractor<Object>>any()))
+                .thenReturn(mockResponse);
+
+        ImageService imageService=new ImageService(mockRestTemplate);
+
+        Map<String,Object>actualResponse=imageService.uploadImageStream(new ByteArrayInputStream(imageBytes), "cat.png", "image/png", access_token);
+        assertEquals(imageUrl, actualResponse.get("link"));
+
+        // Replay the captured callback to check what would have been sent to Imgur
+        MockClientHttpRequest request = new MockClientHttpRequest();
+        callback.getValue().doWithRequest(request);
+        String body = request.getBodyAsString();
+        assertEquals("Bearer " + access_token, request.getHeaders().getFirst("Authorization"));
+        assertTrue(request.getHeaders().getContentType().toString().startsWith("multipart/form-data"));
+        assertTrue(body.contains("filename=\"cat.png\""));
+        assertTrue(body.contains("fake-image-bytes"));
+    }
+
+    @Test
+    public void testUploadImageStream_BodyStreamedInChunks() throws Exception {
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        ArgumentCaptor<RequestCallback> callback = ArgumentCaptor.forClass(RequestCallback.class);
+        when(mockRestTemplate.execute(anyString(), eq(HttpMethod.POST), callback.capture(), ArgumentMatchers.<ResponseExtractor<Object>>any()))
+                .thenReturn(new ImgurImageResponse(image("image123", null, "https://imgur.com/someimage.jpg"), true, 200));
+
+        ImageService imageService=new ImageService(mockRestTemplate);
+        long imageSize = 64L * 1024 * 1024;
+        GeneratedImageStream imageStream = new GeneratedImageStream(imageSize);
+        imageService.uploadImageStream(imageStream, "cat\r\nX-Injected: yes.png", "image/png", "access_token_123");
+
+        // the body is handed over as a callback, nothing is read before the connection writes it
+        StreamingRequest request = new StreamingRequest();
+        callback.getValue().doWithRequest(request);
+        assertEquals(0, imageStream.read);
+
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        long[] written = {0};
+        request.body.writeTo(new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                if (head.size() < 1024) {
+                    head.write(b, off, Math.min(len, 1024 - head.size()));
+                }
+                written[0] += len;
+                // never more than one chunk read ahead of what was written
+                assertTrue(imageStream.read - written[0] <= 65536);
+            }
+        });
+
+        assertEquals(imageSize, imageStream.read);
+        assertTrue(written[0] > imageSize);
+        String header = head.toString(StandardCharsets.UTF_8);
+        assertTrue(header.contains("filename=\"catX-Injected: yes.png\""));
+        assertFalse(header.contains("\r\nX-Injected"));
     }
 
     @Test
@@ -140,14 +230,12 @@ public class ImageServiceTest {
         String imageId = "image123";
         String accessToken = "access_token_123";
         String url="https://example.com/image.jpg";
-        Map<String, Object> mockResponse = new HashMap<>();
-        Map<String,Object>data=Map.of("id", imageId, "url",url );
-        mockResponse.put("data", data);
+        ImgurImageResponse mockResponse = new ImgurImageResponse(image(imageId, null, url), true, 200);
 
         // Mock the response from restTemplate
-        ResponseEntity<Map> mockResponseEntity = new ResponseEntity<>(mockResponse, HttpStatus.OK);
+        ResponseEntity<ImgurImageResponse> mockResponseEntity = new ResponseEntity<>(mockResponse, HttpStatus.OK);
         RestTemplate mockRestTemplate = mock(RestTemplate.class);
-        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(Map.class)))
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageResponse.class)))
                 .thenReturn(mockResponseEntity);
 
         // Act: Call the method under test
@@ -158,10 +246,10 @@ public class ImageServiceTest {
         // Assert: Verify that the image data is returned correctly
         assertNotNull(actualResponse);  // Ensure that the response is not null
         assertEquals(imageId, actualResponse.get("id"));
-        assertEquals(url, actualResponse.get("url"));
+        assertEquals(url, actualResponse.get("link"));
 
         // Verify the external call to restTemplate was made
-        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(Map.class));
+        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageResponse.class));
     }
 
     @Test
@@ -169,13 +257,12 @@ public class ImageServiceTest {
         String imageId = "image123";
         String accessToken = "access_token_123";
 
-        Map<String, Object> mockResponse = new HashMap<>();
-        mockResponse.put("error", "error");
+        ImgurImageResponse mockResponse = new ImgurImageResponse(null, false, 404);
 
         // Mock the response from restTemplate
-        ResponseEntity<Map> mockResponseEntity = new ResponseEntity<>(mockResponse, HttpStatus.OK);
+        ResponseEntity<ImgurImageResponse> mockResponseEntity = new ResponseEntity<>(mockResponse, HttpStatus.OK);
         RestTemplate mockRestTemplate = mock(RestTemplate.class);
-        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(Map.class)))
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageResponse.class)))
                 .thenReturn(mockResponseEntity);
 
         // Act: Call the method under test
@@ -187,9 +274,95 @@ public class ImageServiceTest {
         assertNull(actualResponse);
 
         // Verify the external call to restTemplate was made
-        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(Map.class));
+        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageResponse.class));
+    }
+
+
+    @Test
+    public void testGetImage_ServedFromCacheUntilDeleted() throws Exception {
+        String imageId = "image123";
+        String deleteHash = "delete123";
+        String accessToken = "access_token_123";
+        ImgurImage image = image(imageId, deleteHash, "https://i.imgur.com/image123.png");
+
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageResponse.class)))
+                .thenReturn(new ResponseEntity<>(new ImgurImageResponse(image, true, 200), HttpStatus.OK));
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.DELETE), any(HttpEntity.class), eq(ImgurBasicResponse.class)))
+                .thenReturn(new ResponseEntity<>(new ImgurBasicResponse(true, 200), HttpStatus.OK));
+
+        ImageService imageService=new ImageService(mockRestTemplate);
+
+        // Second lookup is a cache hit, neither answer carries the owner's deletehash
+        Map<String, Object> fetched = imageService.getImage(imageId, accessToken);
+        assertEquals(image.withoutDeleteHash().toMap(), fetched);
+        assertFalse(fetched.containsKey("deletehash"));
+        Map<String, Object> cached = imageService.getImage(imageId, "other_users_token");
+        assertEquals(image.withoutDeleteHash().toMap(), cached);
+        assertFalse(cached.containsKey("deletehash"));
+        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageResponse.class));
+
+        // Deleting by deletehash evicts the entry, so the next lookup goes to Imgur again
+        imageService.deleteImage(deleteHash, accessToken);
+        imageService.getImage(imageId, accessToken);
+        verify(mockRestTemplate, times(2)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageResponse.class));
+    }
+
+    @Test
+    public void testGetImage_ConcurrentMissesShareOneCall() throws Exception {
+        String imageId = "image123";
+        String accessToken = "access_token_123";
+        ImgurImage image = image(imageId, "delete123", "https://i.imgur.com/image123.png");
+
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageResponse.class)))
+                .thenAnswer(invocation -> {
+                    Thread.sleep(200);
+                    return new ResponseEntity<>(new ImgurImageResponse(image, true, 200), HttpStatus.OK);
+                });
+
+        ImageService imageService=new ImageService(mockRestTemplate);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Map<String, Object>>> lookups = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            lookups.add(executor.submit(() -> imageService.getImage(imageId, accessToken)));
+        }
+        for (Future<Map<String, Object>> lookup : lookups) {
+            assertEquals(image.withoutDeleteHash().toMap(), lookup.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageResponse.class));
     }
 
+    @Test
+    public void testGetImage_ConcurrentMissesWithAnotherTokenNotShared() throws Exception {
+        String imageId = "image123";
+        ImgurImage image = image(imageId, "delete123", "https://i.imgur.com/image123.png");
+
+        // the owner's token gets the image (slowly), Imgur refuses it to the other token
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageResponse.class)))
+                .thenAnswer(invocation -> {
+                    HttpEntity<?> request = invocation.getArgument(2);
+                    if (!"Bearer owner_token".equals(request.getHeaders().getFirst("Authorization"))) {
+                        throw new HttpClientErrorException(HttpStatus.FORBIDDEN);
+                    }
+                    Thread.sleep(300);
+                    return new ResponseEntity<>(new ImgurImageResponse(image, true, 200), HttpStatus.OK);
+                });
+
+        ImageService imageService=new ImageService(mockRestTemplate);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<Map<String, Object>> owner = executor.submit(() -> imageService.getImage(imageId, "owner_token"));
+        Thread.sleep(50);
+        Future<Map<String, Object>> other = executor.submit(() -> imageService.getImage(imageId, "other_token"));
+
+        assertNull(other.get(5, TimeUnit.SECONDS));
+        assertEquals(image.withoutDeleteHash().toMap(), owner.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
 
     @Test
     public void testDeleteImage_Success() throws Exception {
@@ -197,12 +370,11 @@ public class ImageServiceTest {
         String url="https://example.com/image.jpg";
         String accessToken = "access_token";
 
-        Map<String, Object> data = Map.of("id", imageId, "url", url);
-        Map<String, Object> mockResponseBody = Map.of("data", data);
-        ResponseEntity<Map> mockResponse = new ResponseEntity<>(mockResponseBody, HttpStatus.OK);
+        ImgurBasicResponse mockResponseBody = new ImgurBasicResponse(true, 200);
+        ResponseEntity<ImgurBasicResponse> mockResponse = new ResponseEntity<>(mockResponseBody, HttpStatus.OK);
     
         RestTemplate mockRestTemplate=mock(RestTemplate.class);
-        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.DELETE), any(HttpEntity.class), eq(Map.class)))
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.DELETE), any(HttpEntity.class), eq(ImgurBasicResponse.class)))
                 .thenReturn(mockResponse);
 
         // Act: Call the method under test
@@ -214,7 +386,7 @@ public class ImageServiceTest {
         assertEquals(true, actualResponse);  // The returned value should be true as expected
 
         // Verify that the method interacts with restTemplate correctly
-        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.DELETE), any(HttpEntity.class), eq(Map.class));
+        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.DELETE), any(HttpEntity.class), eq(ImgurBasicResponse.class));
     }
 
     @Test
@@ -222,11 +394,11 @@ public class ImageServiceTest {
         String imageId = "mock-image-id";
         String accessToken = "access_token";
 
-        Map<String, Object> mockResponseBody = Map.of("error", "error");
-        ResponseEntity<Map> mockResponse = new ResponseEntity<>(mockResponseBody, HttpStatus.NOT_FOUND);
+        ImgurBasicResponse mockResponseBody = new ImgurBasicResponse(false, 404);
+        ResponseEntity<ImgurBasicResponse> mockResponse = new ResponseEntity<>(mockResponseBody, HttpStatus.NOT_FOUND);
     
         RestTemplate mockRestTemplate=mock(RestTemplate.class);
-        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.DELETE), any(HttpEntity.class), eq(Map.class)))
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.DELETE), any(HttpEntity.class), eq(ImgurBasicResponse.class)))
                 .thenReturn(mockResponse);
 
         // Act: Call the method under test
@@ -238,7 +410,7 @@ public class ImageServiceTest {
         assertEquals(false, actualResponse);  // The returned value should be true as expected
 
         // Verify that the method interacts with restTemplate correctly
-        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.DELETE), any(HttpEntity.class), eq(Map.class));
+        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.DELETE), any(HttpEntity.class), eq(ImgurBasicResponse.class));
      }
 
     @Test
@@ -246,26 +418,20 @@ public class ImageServiceTest {
         String accessToken = "access_token_123";
 
         // Mock the list of image data
-        Map<String, Object> image1 = new HashMap<>();
-        image1.put("id", "image123");
-        image1.put("url", "https://example.com/image1.jpg");
+        ImgurImage image1 = image("image123", null, "https://example.com/image1.jpg");
+        ImgurImage image2 = image("image234", null, "https://example.com/image2.jpg");
 
-        Map<String, Object> image2 = new HashMap<>();
-        image2.put("id", "image234");
-        image2.put("url", "https://example.com/image2.jpg");
-
-        // Mock the response body to return a list of maps under the "data" key
-        List<Map<String, Object>> mockImageList = new ArrayList<>();
+        // Mock the response body to return a list of images under the "data" key
+        List<ImgurImage> mockImageList = new ArrayList<>();
         mockImageList.add(image1);
         mockImageList.add(image2);
 
-        Map<String,List<Map<String, Object>>> mockResponse = new HashMap<>();
-        mockResponse.put("data", mockImageList);
+        ImgurImageListResponse mockResponse = new ImgurImageListResponse(mockImageList, true, 200);
 
         // Mock the response from restTemplate
-        ResponseEntity<Map> mockResponseEntity = new ResponseEntity<>(mockResponse, HttpStatus.OK);
+        ResponseEntity<ImgurImageListResponse> mockResponseEntity = new ResponseEntity<>(mockResponse, HttpStatus.OK);
         RestTemplate mockRestTemplate = mock(RestTemplate.class);
-        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(Map.class)))
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageListResponse.class)))
                 .thenReturn(mockResponseEntity);
 
         // Act: Call the method under test
@@ -275,22 +441,21 @@ public class ImageServiceTest {
 
         // Assert: Verify that the image data is returned correctly
         assertNotNull(actualResponse);  // Ensure that the response is not null
-        assertEquals(mockResponse.get("data").size(), actualResponse.size());
+        assertEquals(mockResponse.data().size(), actualResponse.size());
         // Verify the external call to restTemplate was made
-        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(Map.class));
+        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageListResponse.class));
     }
 
     @Test
     public void testGetAllImage_Failure_NoData() throws Exception {
         String accessToken = "access_token_123";
 
-        Map<String,String> mockResponse = new HashMap<>();
-        mockResponse.put("error", "error");
+        ImgurImageListResponse mockResponse = new ImgurImageListResponse(null, false, 403);
 
         // Mock the response from restTemplate
-        ResponseEntity<Map> mockResponseEntity = new ResponseEntity<>(mockResponse, HttpStatus.OK);
+        ResponseEntity<ImgurImageListResponse> mockResponseEntity = new ResponseEntity<>(mockResponse, HttpStatus.OK);
         RestTemplate mockRestTemplate = mock(RestTemplate.class);
-        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(Map.class)))
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageListResponse.class)))
                 .thenReturn(mockResponseEntity);
 
         // Act: Call the method under test
@@ -301,6 +466,132 @@ public class ImageServiceTest {
         // Assert: Verify that the image data is returned correctly
         assertNull(actualResponse);  // Ensure that the response is not null
         // Verify the external call to restTemplate was made
-        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(Map.class));
+        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageListResponse.class));
+    }
+
+    @Test
+    public void testGetAllImage_CachedAndUpdatedLocally() throws Exception {
+        String accessToken = "access_token_123";
+        List<ImgurImage> mockImageList = List.of(image("image123", "delete123", null), image("image234", "delete234", null));
+
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageListResponse.class)))
+                .thenReturn(new ResponseEntity<>(new ImgurImageListResponse(mockImageList, true, 200), HttpStatus.OK));
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurImageResponse.class)))
+                .thenReturn(new ResponseEntity<>(new ImgurImageResponse(image("image345", "delete345", null), true, 200), HttpStatus.OK));
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.DELETE), any(HttpEntity.class), eq(ImgurBasicResponse.class)))
+                .thenReturn(new ResponseEntity<>(new ImgurBasicResponse(true, 200), HttpStatus.OK));
+
+        ImageService imageService=new ImageService(mockRestTemplate);
+        assertEquals(2, imageService.getUserImages(accessToken).size());
+
+        // Our own upload and delete are applied to the cached listing without asking Imgur again
+        imageService.uploadImage(mock(MockMultipartFile.class), accessToken);
+        List<Map<String, Object>> afterUpload = imageService.getUserImages(accessToken);
+        assertEquals(3, afterUpload.size());
+        assertEquals("image345", afterUpload.get(0).get("id"));
+
+        imageService.deleteImage("delete123", accessToken);
+        assertEquals(2, imageService.getUserImages(accessToken).size());
+
+        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageListResponse.class));
+    }
+
+    @Test
+    public void testGetAllImage_ListingKeptAcrossTokenRefresh() throws Exception {
+        List<ImgurImage> mockImageList = List.of(image("image123", "delete123", null), image("image234", "delete234", null));
+
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageListResponse.class)))
+                .thenReturn(new ResponseEntity<>(new ImgurImageListResponse(mockImageList, true, 200), HttpStatus.OK));
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurImageResponse.class)))
+                .thenReturn(new ResponseEntity<>(new ImgurImageResponse(image("image345", "delete345", null), true, 200), HttpStatus.OK));
+
+        ImageService imageService=new ImageService(mockRestTemplate);
+        assertEquals(2, imageService.getUserImages("old_access_token", "john_summers").size());
+
+        // the user's token was refreshed, the listing and the upload made with the new token are still found
+        imageService.uploadImage(mock(MockMultipartFile.class), "new_access_token", "john_summers", UploadProgress.NONE);
+        assertEquals(3, imageService.getUserImages("new_access_token", "john_summers").size());
+
+        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageListResponse.class));
+    }
+
+    @Test
+    public void testWriteUserImagesAsNdjson() throws Exception {
+        String accessToken = "access_token_123";
+        byte[] page = ("{\"data\":[{\"id\":\"image123\",\"link\":\"https://i.imgur.com/image123.png\"},"
+                + "{\"id\":\"image234\",\"link\":\"https://i.imgur.com/image234.png\"}],\"success\":true,\"status\":200}")
+                .getBytes(StandardCharsets.UTF_8);
+
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        when(mockRestTemplate.execute(anyString(), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Object>>any()))
+                .thenAnswer(invocation -> {
+                    ResponseExtractor<?> extractor = invocation.getArgument(3);
+                    return extractor.extractData(new MockClientHttpResponse(page, HttpStatus.OK));
+                });
+
+        ImageService imageService=new ImageService(mockRestTemplate);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int written = imageService.writeUserImagesAsNdjson(accessToken, out);
+
+        // A short page ends the listing, each image is one JSON line
+        assertEquals(2, written);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("{\"id\":\"image123\",\"link\":\"https://i.imgur.com/image123.png\"}", lines[0]);
+        verify(mockRestTemplate, times(1)).execute(anyString(), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Object>>any());
+    }
+
+    // Zeros on demand, so a large image never exists in memory
+    private static final class GeneratedImageStream extends InputStream {
+
+        private final long size;
+
+        private long read;
+
+        GeneratedImageStream(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            if (read >= size) {
+                return -1;
+            }
+            read++;
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (read >= size) {
+                return -1;
+            }
+            int n = (int) Math.min(length, size - read);
+            Arrays.fill(buffer, offset, offset + n, (byte) 0);
+            read += n;
+            return n;
+        }
+    }
+
+    // Request whose body can only be set as a callback, like the pooled client's
+    private static final class StreamingRequest extends MockClientHttpRequest implements StreamingHttpOutputMessage {
+
+        private Body body;
+
+        @Override
+        public void setBody(Body body) {
+            this.body = body;
+        }
+
+        @Override
+        public OutputStream getBody() {
+            throw new AssertionError("image must not be buffered into the request");
+        }
+    }
+
+    private static ImgurImage image(String id, String deleteHash, String link) {
+        return new ImgurImage(id, null, null, null, "image/png", null, null, null, deleteHash, link);
     }
 }
@@ -0,0 +1,102 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import com.myapp.userimageapp.service.ImgurRequestScheduler;
+import com.myapp.userimageapp.service.ImgurUnavailableException;
+
+public class ImgurRequestSchedulerTest {
+
+    @Test
+    public void testRun_UsersTakeTurnsInteractiveFirst() throws Exception {
+        // one request at a time, so the order of the waiting ones shows
+        ImgurRequestScheduler scheduler = new ImgurRequestScheduler(1, 5000, 100, 0, 0, 60);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch hold = new CountDownLatch(1);
+
+        executor.submit(() -> scheduler.run("user_a", 1, () -> {
+            try {
+                hold.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return order.add("a0");
+        }));
+        waitForQueued(scheduler, 0);
+        submitBulk(executor, scheduler, "user_a", "a1", order);
+        waitForQueued(scheduler, 1);
+        submitBulk(executor, scheduler, "user_a", "a2", order);
+        waitForQueued(scheduler, 2);
+        submitBulk(executor, scheduler, "user_b", "b1", order);
+        waitForQueued(scheduler, 3);
+        executor.submit(() -> scheduler.run("user_c", 1, () -> order.add("c1")));
+        waitForQueued(scheduler, 4);
+
+        hold.countDown();
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("a0", "c1", "a1", "b1", "a2"), order);
+    }
+
+    @Test
+    public void testRun_BulkShedAtReserveInteractiveStillRuns() {
+        ImgurRequestScheduler scheduler = new ImgurRequestScheduler(10, 200, 100, 100, 0, 60);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-RateLimit-ClientRemaining", "105");
+        scheduler.record("access_token_123", headers);
+
+        try (ImgurRequestScheduler.Scope bulk = ImgurRequestScheduler.bulk()) {
+            assertThrows(ImgurUnavailableException.class,
+                    () -> scheduler.run("access_token_123", ImgurRequestScheduler.UPLOAD_COST, () -> "uploaded"));
+        }
+        assertEquals("image", scheduler.run("access_token_123", ImgurRequestScheduler.READ_COST, () -> "image"));
+        assertEquals(0, scheduler.queued());
+    }
+
+    @Test
+    public void testRun_BulkShedUntilUserCreditsReset() {
+        ImgurRequestScheduler scheduler = new ImgurRequestScheduler(10, 200, 100, 0, 100, 60);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-RateLimit-UserRemaining", "50");
+        headers.set("X-RateLimit-UserReset", String.valueOf(System.currentTimeMillis() / 1000 + 1800));
+        scheduler.record("access_token_123", headers);
+
+        try (ImgurRequestScheduler.Scope bulk = ImgurRequestScheduler.bulk()) {
+            ImgurUnavailableException ex = assertThrows(ImgurUnavailableException.class,
+                    () -> scheduler.run("access_token_123", ImgurRequestScheduler.UPLOAD_COST, () -> "uploaded"));
+            // retried when the credits come back, not after the budget ttl
+            assertTrue(ex.getRetryAfterSeconds() > 1790 && ex.getRetryAfterSeconds() <= 1800, "Retry-After " + ex.getRetryAfterSeconds());
+        }
+    }
+
+    private static void submitBulk(ExecutorService executor, ImgurRequestScheduler scheduler, String user, String label, List<String> order) {
+        executor.submit(() -> {
+            try (ImgurRequestScheduler.Scope bulk = ImgurRequestScheduler.bulk()) {
+                return scheduler.run(user, 1, () -> order.add(label));
+            }
+        });
+    }
+
+    private static void waitForQueued(ImgurRequestScheduler scheduler, int queued) throws InterruptedException {
+        // the first request runs rather than queues, give it a moment
+        long deadline = System.currentTimeMillis() + 2000;
+        while (scheduler.queued() < queued && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(20);
+    }
+}
@@ -0,0 +1,170 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import com.myapp.userimageapp.service.ImgurResilience;
+import com.myapp.userimageapp.service.ImgurRequestScheduler;
+import com.myapp.userimageapp.service.ImgurResilience.CallType;
+import com.myapp.userimageapp.service.ImgurUnavailableException;
+
+public class ImgurResilienceTest {
+
+    // window 4, open for 200 ms, 1 probe, 2 concurrent calls, 3 attempts with 1-5 ms backoff, hedge after 100 ms
+    private final ImgurResilience resilience = new ImgurResilience(4, 50, 200, 1, 2, 10, 3, 1, 5, 1000, 100);
+
+    @Test
+    public void testCall_ReadRetriedOnServerError() {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = resilience.call("image.get", CallType.READ, () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new HttpServerErrorException(HttpStatus.BAD_GATEWAY);
+            }
+            return "image";
+        });
+
+        assertEquals("image", result);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testCall_WriteNotRetriedOnServerError() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(HttpServerErrorException.class, () -> resilience.call("image.upload", CallType.WRITE, () -> {
+            calls.incrementAndGet();
+            throw new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR);
+        }));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testCall_RateLimitHonoursRetryAfter() {
+        HttpHeaders shortWait = new HttpHeaders();
+        shortWait.set(HttpHeaders.RETRY_AFTER, "0");
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = resilience.call("image.upload", CallType.WRITE, () -> {
+            if (calls.incrementAndGet() == 1) {
+                throw HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", shortWait, null, null);
+            }
+            return "uploaded";
+        });
+        assertEquals("uploaded", result);
+
+        // longer than max-rate-limit-wait-ms, given up right away
+        HttpHeaders longWait = new HttpHeaders();
+        longWait.set(HttpHeaders.RETRY_AFTER, "60");
+        ImgurUnavailableException ex = assertThrows(ImgurUnavailableException.class, () -> resilience.call("image.upload", CallType.WRITE, () -> {
+            throw HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", longWait, null, null);
+        }));
+        assertEquals(60, ex.getRetryAfterSeconds());
+    }
+
+    @Test
+    public void testCall_CircuitOpensAndRecovers() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            assertThrows(HttpServerErrorException.class, () -> resilience.call("image.delete", CallType.ONCE, () -> {
+                throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+            }));
+        }
+        AtomicInteger calls = new AtomicInteger();
+        assertThrows(ImgurUnavailableException.class, () -> resilience.call("image.delete", CallType.ONCE, calls::incrementAndGet));
+        assertEquals(0, calls.get());
+
+        // after open-ms one probe goes through and closes the circuit
+        Thread.sleep(250);
+        assertEquals(1, resilience.call("image.delete", CallType.ONCE, calls::incrementAndGet));
+        assertEquals(2, resilience.call("image.delete", CallType.ONCE, calls::incrementAndGet));
+    }
+
+    @Test
+    public void testCall_SlowReadIsHedged() throws Exception {
+        ImgurRequestScheduler scheduler = new ImgurRequestScheduler();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch slowCancelled = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        String result = resilience.call("account.images", CallType.READ, () -> scheduler.run("access_token_123", 1, () -> {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException ex) {
+                    slowCancelled.countDown();
+                    Thread.currentThread().interrupt();
+                }
+                return "slow";
+            }
+            return "fast";
+        }));
+
+        assertEquals("fast", result);
+        assertTrue(System.nanoTime() - start < 1_500_000_000L);
+        // the losing request is interrupted rather than left running
+        assertTrue(slowCancelled.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCall_TimeQueuedInSchedulerDoesntTriggerHedge() throws Exception {
+        // one request at a time, the read waits 300 ms (longer than the hedge delay) behind another one
+        ImgurRequestScheduler scheduler = new ImgurRequestScheduler(1, 5000, 100, 0, 0, 60);
+        CountDownLatch running = new CountDownLatch(1);
+        Thread other = Thread.ofVirtual().start(() -> scheduler.run("access_token_456", 1, () -> {
+            running.countDown();
+            sleep(300);
+            return "other";
+        }));
+        assertTrue(running.await(1, TimeUnit.SECONDS));
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = resilience.call("image.get", CallType.READ, () -> scheduler.run("access_token_123", 1, () -> {
+            calls.incrementAndGet();
+            sleep(50);
+            return "image";
+        }));
+
+        assertEquals("image", result);
+        assertEquals(1, calls.get());
+        other.join();
+    }
+
+    @Test
+    public void testCall_HedgeKeepsCallerPriority() {
+        ImgurRequestScheduler scheduler = new ImgurRequestScheduler();
+        List<ImgurRequestScheduler.Priority> priorities = new CopyOnWriteArrayList<>();
+
+        try (ImgurRequestScheduler.Scope bulk = ImgurRequestScheduler.bulk()) {
+            resilience.call("image.get", CallType.READ, () -> scheduler.run("access_token_123", 1, () -> {
+                priorities.add(ImgurRequestScheduler.currentPriority());
+                if (priorities.size() == 1) {
+                    sleep(300);
+                }
+                return "image";
+            }));
+        }
+
+        assertEquals(List.of(ImgurRequestScheduler.Priority.BULK, ImgurRequestScheduler.Priority.BULK), priorities);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
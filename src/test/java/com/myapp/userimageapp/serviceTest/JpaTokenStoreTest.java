@@ -0,0 +1,143 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import com.myapp.userimageapp.model.ImgurToken;
+import com.myapp.userimageapp.model.ImgurTokenResponse;
+import com.myapp.userimageapp.repository.ImgurTokenRepository;
+import com.myapp.userimageapp.service.AuthService;
+import com.myapp.userimageapp.service.JpaTokenStore;
+
+public class JpaTokenStoreTest {
+
+    @Test
+    public void testFind_LoadsFromRepositoryOnce() {
+        ImgurTokenRepository tokenRepo = mock(ImgurTokenRepository.class);
+        ImgurToken token = new ImgurToken("testUser", "access_token_123", "refresh_token_123", null, Instant.now());
+        when(tokenRepo.findById("testUser")).thenReturn(Optional.of(token));
+        JpaTokenStore tokenStore = new JpaTokenStore(tokenRepo);
+
+        assertEquals("access_token_123", tokenStore.find("testUser").get().getAccessToken());
+        assertEquals("access_token_123", tokenStore.find("testUser").get().getAccessToken());
+        verify(tokenRepo, times(1)).findById("testUser");
+    }
+
+    @Test
+    public void testFind_TokenSavedDuringLoadWins() {
+        ImgurTokenRepository tokenRepo = mock(ImgurTokenRepository.class);
+        JpaTokenStore tokenStore = new JpaTokenStore(tokenRepo);
+        // the row read from the table is older than a token saved while the query ran
+        when(tokenRepo.findById("testUser")).thenAnswer(invocation -> {
+            tokenStore.save(new ImgurToken("testUser", "new_access_token", null, null, Instant.now()));
+            return Optional.of(new ImgurToken("testUser", "old_access_token", null, null, Instant.now()));
+        });
+
+        assertEquals("new_access_token", tokenStore.find("testUser").get().getAccessToken());
+        assertEquals("new_access_token", tokenStore.find("testUser").get().getAccessToken());
+    }
+
+    @Test
+    public void testFind_UnknownUser() {
+        ImgurTokenRepository tokenRepo = mock(ImgurTokenRepository.class);
+        when(tokenRepo.findById(anyString())).thenReturn(Optional.empty());
+        JpaTokenStore tokenStore = new JpaTokenStore(tokenRepo);
+
+        assertTrue(tokenStore.find("unknownUser").isEmpty());
+    }
+
+    @Test
+    public void testSave_WritesLatestTokenOnFlush() {
+        ImgurTokenRepository tokenRepo = mock(ImgurTokenRepository.class);
+        JpaTokenStore tokenStore = new JpaTokenStore(tokenRepo);
+
+        tokenStore.save(new ImgurToken("testUser", "access_token_1", null, null, Instant.now()));
+        tokenStore.save(new ImgurToken("testUser", "access_token_2", null, null, Instant.now()));
+        // visible before it is persisted
+        assertEquals("access_token_2", tokenStore.find("testUser").get().getAccessToken());
+        verify(tokenRepo, never()).saveAll(anyList());
+
+        tokenStore.flush();
+        ArgumentCaptor<List<ImgurToken>> captor = ArgumentCaptor.captor();
+        verify(tokenRepo, times(1)).saveAll(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals("access_token_2", captor.getValue().get(0).getAccessToken());
+
+        // nothing new to write
+        tokenStore.flush();
+        verify(tokenRepo, times(1)).saveAll(anyList());
+    }
+
+    @Test
+    public void testTwoInstances_RefreshedTokenSeenByTheOther() {
+        ImgurTokenRepository tokenRepo = sharedRepository();
+        tokenRepo.saveAll(List.of(new ImgurToken("testUser", "old_access_token", "refresh_token_1", Instant.now().plusSeconds(10), Instant.now())));
+        JpaTokenStore firstStore = new JpaTokenStore(tokenRepo);
+        JpaTokenStore secondStore = new JpaTokenStore(tokenRepo);
+        // both instances have the token in memory
+        assertEquals("old_access_token", secondStore.find("testUser").get().getAccessToken());
+
+        // the first one refreshes, Imgur rotates the refresh token
+        RestTemplate firstImgur = mock(RestTemplate.class);
+        when(firstImgur.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurTokenResponse.class)))
+                .thenReturn(new ResponseEntity<>(new ImgurTokenResponse("new_access_token", "refresh_token_2", 3600L, "testUser"), HttpStatus.OK));
+        assertEquals("new_access_token", new AuthService(firstImgur, firstStore).getAccessTokenForUser("testUser"));
+        firstStore.flush();
+
+        // the second one still holds the expiring token, before refreshing it reads the row and finds the new one
+        RestTemplate secondImgur = mock(RestTemplate.class);
+        assertEquals("new_access_token", new AuthService(secondImgur, secondStore).getAccessTokenForUser("testUser"));
+        assertEquals("refresh_token_2", secondStore.find("testUser").get().getRefreshToken());
+        verify(secondImgur, never()).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(ImgurTokenResponse.class));
+    }
+
+    @Test
+    public void testFind_ReadAgainAfterTtl() throws Exception {
+        ImgurTokenRepository tokenRepo = sharedRepository();
+        tokenRepo.saveAll(List.of(new ImgurToken("testUser", "access_token_1", null, null, Instant.now())));
+        JpaTokenStore tokenStore = new JpaTokenStore(tokenRepo, 1000, 0);
+        assertEquals("access_token_1", tokenStore.find("testUser").get().getAccessToken());
+
+        // written by another instance
+        tokenRepo.saveAll(List.of(new ImgurToken("testUser", "access_token_2", null, null, Instant.now())));
+        Thread.sleep(5);
+
+        assertEquals("access_token_2", tokenStore.find("testUser").get().getAccessToken());
+    }
+
+    // Repository backed by a map, shared by the stores of two instances like the imgur_token table
+    private static ImgurTokenRepository sharedRepository() {
+        Map<String, ImgurToken> rows = new ConcurrentHashMap<>();
+        ImgurTokenRepository tokenRepo = mock(ImgurTokenRepository.class);
+        when(tokenRepo.findById(anyString())).thenAnswer(invocation -> Optional.ofNullable(rows.get(invocation.<String>getArgument(0))));
+        when(tokenRepo.saveAll(anyList())).thenAnswer(invocation -> {
+            List<ImgurToken> saved = invocation.getArgument(0);
+            saved.forEach(token -> rows.put(token.getUsername(), token));
+            return saved;
+        });
+        return tokenRepo;
+    }
+}
@@ -0,0 +1,48 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import com.myapp.userimageapp.security.JwtService;
+
+public class JwtServiceTest {
+
+    private static final String SECRET = "test-secret-0123456789abcdef0123456789abcdef";
+
+    @Test
+    public void testIssueAndVerifyToken() {
+        JwtService jwtService = new JwtService(SECRET, 3600, 100);
+
+        String token = jwtService.issueToken("testUser");
+
+        assertEquals("testUser", jwtService.verify(token));
+        // second lookup is served from the verified-token cache
+        assertEquals("testUser", jwtService.verify(token));
+    }
+
+    @Test
+    public void testVerify_RejectsTokenSignedWithOtherSecret() {
+        JwtService jwtService = new JwtService(SECRET, 3600, 100);
+        JwtService otherService = new JwtService("other-test-secret-0123456789abcdef0123456789", 3600, 100);
+
+        assertNull(jwtService.verify(otherService.issueToken("testUser")));
+        assertNull(jwtService.verify("not-a-jwt"));
+    }
+
+    @Test
+    public void testVerify_RejectsExpiredToken() {
+        JwtService jwtService = new JwtService(SECRET, -1, 100);
+
+        assertNull(jwtService.verify(jwtService.issueToken("testUser")));
+    }
+
+    @Test
+    public void testRefusesWeakSecret() {
+        assertThrows(IllegalStateException.class, () -> new JwtService("", 3600, 100));
+        assertThrows(IllegalStateException.class, () -> new JwtService("<jwt_secret_key>", 3600, 100));
+        assertThrows(IllegalStateException.class, () -> new JwtService("only-31-bytes-long-secret-xxxxx", 3600, 100));
+    }
+}
@@ -0,0 +1,184 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.myapp.userimageapp.security.LoginAttemptThrottle;
+
+public class LoginAttemptThrottleTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-23T10:00:00Z");
+
+    @Test
+    public void testBlocksUsernameAfterMaxFailures() {
+        LoginAttemptThrottle throttle = new LoginAttemptThrottle(3, 100, 100, 600, 1000, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(throttle.tryAcquire("john_summers", "10.0.0.1"));
+            throttle.recordFailure("john_summers", "10.0.0.1");
+        }
+
+        assertFalse(throttle.tryAcquire("john_summers", "10.0.0.1"));
+        assertTrue(throttle.tryAcquire("other_user", "10.0.0.1"));
+        // someone else's failures don't lock the user out from their own client
+        assertTrue(throttle.tryAcquire("john_summers", "10.0.0.2"));
+    }
+
+    @Test
+    public void testBlocksUsernameAcrossClients() {
+        LoginAttemptThrottle throttle = new LoginAttemptThrottle(3, 5, 100, 600, 1000, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        // one guess from each of many clients, each below the per-client limit
+        for (int i = 0; i < 5; i++) {
+            assertTrue(throttle.tryAcquire("john_summers", "10.0.0." + i));
+            throttle.recordFailure("john_summers", "10.0.0." + i);
+        }
+
+        assertFalse(throttle.tryAcquire("john_summers", "10.0.0.100"));
+        assertTrue(throttle.tryAcquire("other_user", "10.0.0.100"));
+    }
+
+    @Test
+    public void testParallelAttemptsDontOvershootTheLimit() throws Exception {
+        LoginAttemptThrottle throttle = new LoginAttemptThrottle(5, 100, 100, 600, 1000, Clock.fixed(NOW, ZoneOffset.UTC));
+        int attempts = 64;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger acquired = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            for (int i = 0; i < attempts; i++) {
+                pool.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    // all of them still "hashing", none has recorded its result yet
+                    if (throttle.tryAcquire("john_summers", "10.0.0.1")) {
+                        acquired.incrementAndGet();
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        assertTrue(acquired.get() <= 5, "acquired " + acquired.get());
+        assertFalse(throttle.tryAcquire("john_summers", "10.0.0.1"));
+    }
+
+    @Test
+    public void testRetryAfterIsWhenEnoughFailuresLeaveTheWindow() {
+        MutableClock clock = new MutableClock(NOW);
+        // 600 s window in 100 s buckets
+        LoginAttemptThrottle throttle = new LoginAttemptThrottle(2, 100, 100, 600, 1000, clock);
+        assertTrue(throttle.tryAcquire("john_summers", "10.0.0.1"));
+        clock.advance(Duration.ofSeconds(250));
+        assertTrue(throttle.tryAcquire("john_summers", "10.0.0.1"));
+        clock.advance(Duration.ofSeconds(30));
+        assertFalse(throttle.tryAcquire("john_summers", "10.0.0.1"));
+
+        // the first failure (bucket at 0 s) leaves at 600 s, 320 s from now, not at the next bucket boundary
+        assertEquals(320, throttle.retryAfterSeconds("john_summers", "10.0.0.1"));
+        clock.advance(Duration.ofSeconds(319));
+        assertFalse(throttle.tryAcquire("john_summers", "10.0.0.1"));
+        clock.advance(Duration.ofSeconds(1));
+        assertTrue(throttle.tryAcquire("john_summers", "10.0.0.1"));
+    }
+
+    @Test
+    public void testBlocksIpAcrossUsernames() {
+        LoginAttemptThrottle throttle = new LoginAttemptThrottle(100, 100, 3, 600, 1000, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        assertTrue(throttle.tryAcquire("user1", "10.0.0.1"));
+        assertTrue(throttle.tryAcquire("user2", "10.0.0.1"));
+        assertTrue(throttle.tryAcquire("user3", "10.0.0.1"));
+
+        assertFalse(throttle.tryAcquire("user4", "10.0.0.1"));
+        assertTrue(throttle.tryAcquire("user4", "10.0.0.2"));
+    }
+
+    @Test
+    public void testFailuresExpireWithWindow() {
+        MutableClock clock = new MutableClock(NOW);
+        LoginAttemptThrottle throttle = new LoginAttemptThrottle(2, 100, 100, 600, 1000, clock);
+        assertTrue(throttle.tryAcquire("john_summers", "10.0.0.1"));
+        clock.advance(Duration.ofSeconds(300));
+        assertTrue(throttle.tryAcquire("john_summers", "10.0.0.1"));
+        assertFalse(throttle.tryAcquire("john_summers", "10.0.0.1"));
+
+        // the first failure has left the window, the second is still in it
+        clock.advance(Duration.ofSeconds(400));
+        assertTrue(throttle.tryAcquire("john_summers", "10.0.0.1"));
+    }
+
+    @Test
+    public void testSuccessClearsUsername() {
+        LoginAttemptThrottle throttle = new LoginAttemptThrottle(2, 100, 100, 600, 1000, Clock.fixed(NOW, ZoneOffset.UTC));
+        assertTrue(throttle.tryAcquire("john_summers", "10.0.0.1"));
+        assertTrue(throttle.tryAcquire("john_summers", "10.0.0.1"));
+        throttle.recordSuccess("john_summers", "10.0.0.1");
+
+        assertTrue(throttle.tryAcquire("john_summers", "10.0.0.1"));
+    }
+
+    @Test
+    public void testSuccessAndReleaseAreNotCountedAsFailures() {
+        LoginAttemptThrottle throttle = new LoginAttemptThrottle(100, 2, 2, 600, 1000, Clock.fixed(NOW, ZoneOffset.UTC));
+        for (int i = 0; i < 5; i++) {
+            assertTrue(throttle.tryAcquire("john_summers", "10.0.0.1"));
+            throttle.recordSuccess("john_summers", "10.0.0.1");
+            assertTrue(throttle.tryAcquire("john_summers", "10.0.0.1"));
+            throttle.release("john_summers", "10.0.0.1");
+        }
+
+        assertTrue(throttle.tryAcquire("john_summers", "10.0.0.1"));
+        assertTrue(throttle.tryAcquire("john_summers", "10.0.0.1"));
+        assertFalse(throttle.tryAcquire("john_summers", "10.0.0.1"));
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import com.myapp.userimageapp.model.ImgurBasicResponse;
+import com.myapp.userimageapp.model.ImgurImage;
+import com.myapp.userimageapp.model.ImgurImageResponse;
+import com.myapp.userimageapp.service.ImageService;
+import com.myapp.userimageapp.service.ReactiveImageService;
+
+public class ReactiveImageServiceTest {
+
+    private static final ImgurImage IMAGE = new ImgurImage("image123", null, null, null, "image/png", null, null, null,
+            "delete123", "https://i.imgur.com/image123.png");
+
+    @Test
+    public void testGetImage_SharesTheMetadataCache() {
+        RestTemplate mockRestTemplate = mockImgur();
+        ImageService imageService = new ImageService(mockRestTemplate);
+        ReactiveImageService service = new ReactiveImageService(imageService, 4, 100);
+
+        Map<String, Object> image = service.getImage("image123", "access_token_123").block();
+        imageService.getImage("image123", "access_token_123");
+
+        assertEquals("image123", image.get("id"));
+        assertEquals("https://i.imgur.com/image123.png", image.get("link"));
+        verify(mockRestTemplate, times(1)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageResponse.class));
+        service.shutdown();
+    }
+
+    @Test
+    public void testDeleteImage_InvalidatesTheMetadataCache() {
+        RestTemplate mockRestTemplate = mockImgur();
+        ImageService imageService = new ImageService(mockRestTemplate);
+        ReactiveImageService service = new ReactiveImageService(imageService, 4, 100);
+        imageService.getImage("image123", "access_token_123");
+
+        assertTrue(service.deleteImage("delete123", "access_token_123", "john_summers").block());
+
+        // the blocking endpoint doesn't serve the deleted image from its cache
+        imageService.getImage("image123", "access_token_123");
+        verify(mockRestTemplate, times(2)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageResponse.class));
+        service.shutdown();
+    }
+
+    @Test
+    public void testDeleteImage_NotFound() {
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.DELETE), any(HttpEntity.class), eq(ImgurBasicResponse.class)))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", new HttpHeaders(), null, null));
+        ReactiveImageService service = new ReactiveImageService(new ImageService(mockRestTemplate), 4, 100);
+
+        assertFalse(service.deleteImage("delete123", "access_token_123", "john_summers").block());
+        service.shutdown();
+    }
+
+    @Test
+    public void testGetUserImages_ImgurErrorCompletesEmpty() {
+        ImageService mockImageService = mock(ImageService.class);
+        when(mockImageService.getUserImages("access_token_123", "john_summers")).thenReturn(null);
+        ReactiveImageService service = new ReactiveImageService(mockImageService, 4, 100);
+
+        assertNull(service.getUserImages("access_token_123", "john_summers").block());
+        service.shutdown();
+    }
+
+    @Test
+    public void testGetUserImages_RunsOnTheReactivePool() {
+        ImageService mockImageService = mock(ImageService.class);
+        when(mockImageService.getUserImages("access_token_123", "john_summers"))
+                .thenAnswer(invocation -> List.of(Map.of("thread", Thread.currentThread().getName())));
+        ReactiveImageService service = new ReactiveImageService(mockImageService, 4, 100);
+
+        List<Map<String, Object>> images = service.getUserImages("access_token_123", "john_summers").block();
+
+        assertTrue(((String) images.get(0).get("thread")).startsWith("imgur-rx"));
+        service.shutdown();
+    }
+
+    private static RestTemplate mockImgur() {
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(ImgurImageResponse.class)))
+                .thenReturn(new ResponseEntity<>(new ImgurImageResponse(IMAGE, true, 200), HttpStatus.OK));
+        when(mockRestTemplate.exchange(anyString(), eq(HttpMethod.DELETE), any(HttpEntity.class), eq(ImgurBasicResponse.class)))
+                .thenReturn(new ResponseEntity<>(new ImgurBasicResponse(true, 200), HttpStatus.OK));
+        return mockRestTemplate;
+    }
+}
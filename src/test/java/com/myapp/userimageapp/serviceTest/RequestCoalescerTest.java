@@ -0,0 +1,94 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.myapp.userimageapp.service.RequestCoalescer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class RequestCoalescerTest {
+
+    @Test
+    public void testExecute_ConcurrentCallersShareOneCall() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        coalescer.bindTo(registry);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Object result = new Object();
+
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        List<Future<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(executor.submit(() -> coalescer.execute("image", "image123", () -> {
+                calls.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return result;
+            })));
+        }
+        // let every caller arrive before the call finishes
+        long deadline = System.currentTimeMillis() + 2000;
+        while (registry.counter("imgur.requests.coalesced", "kind", "image").count() < 9 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        for (Future<Object> future : futures) {
+            assertSame(result, future.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        assertEquals(1, calls.get());
+        assertEquals(9, registry.counter("imgur.requests.coalesced", "kind", "image").count());
+        assertEquals(1, registry.counter("imgur.requests.upstream", "kind", "image").count());
+    }
+
+    @Test
+    public void testExecute_FailureReachesWaitingCallers() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<Object> leader = executor.submit(() -> coalescer.execute("image", "image123", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("Imgur down");
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<Object> follower = executor.submit(() -> coalescer.execute("image", "image123", () -> "own call"));
+        Thread.sleep(50);
+        release.countDown();
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+        ex = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertEquals("Imgur down", ex.getCause().getMessage());
+        executor.shutdown();
+
+        // finished calls aren't shared, the next caller makes its own
+        assertEquals("fresh", coalescer.execute("image", "image123", () -> "fresh"));
+    }
+}
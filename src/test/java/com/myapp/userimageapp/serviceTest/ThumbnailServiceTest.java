@@ -0,0 +1,98 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestTemplate;
+
+import com.myapp.userimageapp.model.ImgurImage;
+import com.myapp.userimageapp.service.ImageMetadataCache;
+import com.myapp.userimageapp.service.ImageService;
+import com.myapp.userimageapp.service.ThumbnailService;
+
+public class ThumbnailServiceTest {
+
+    private static final String LINK = "https://i.imgur.com/image123.jpg";
+
+    @Test
+    public void testGetThumbnail_ScaledOnceThenCached() throws Exception {
+        ByteArrayOutputStream original = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB), "jpg", original);
+
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        when(mockRestTemplate.execute(eq(LINK), eq(HttpMethod.GET), any(), ArgumentMatchers.<ResponseExtractor<Object>>any()))
+                .thenAnswer(invocation -> ((ResponseExtractor<?>) invocation.getArgument(3))
+                        .extractData(new MockClientHttpResponse(original.toByteArray(), HttpStatus.OK)));
+        ThumbnailService thumbnailService = new ThumbnailService(mockRestTemplate, imageService(), new ImageMetadataCache());
+
+        ThumbnailService.Thumbnail thumbnail = thumbnailService.getThumbnail("image123", 320, "access_token_123");
+        BufferedImage scaled = ImageIO.read(new ByteArrayInputStream(thumbnail.bytes()));
+
+        // longest side is the requested size, aspect ratio kept
+        assertEquals("image/jpeg", thumbnail.contentType());
+        assertEquals(320, scaled.getWidth());
+        assertEquals(160, scaled.getHeight());
+
+        assertSame(thumbnail, thumbnailService.getThumbnail("image123", 320, "access_token_123"));
+        verify(mockRestTemplate, times(1)).execute(eq(LINK), eq(HttpMethod.GET), any(), ArgumentMatchers.<ResponseExtractor<Object>>any());
+    }
+
+    @Test
+    public void testGetThumbnail_UnsupportedSizeAndMissingImage() throws Exception {
+        ThumbnailService thumbnailService = new ThumbnailService(mock(RestTemplate.class), imageService(), new ImageMetadataCache());
+
+        assertThrows(IllegalArgumentException.class, () -> thumbnailService.getThumbnail("image123", 333, "access_token_123"));
+        assertNull(thumbnailService.getThumbnail("missing", 160, "access_token_123"));
+    }
+
+    @Test
+    public void testGetThumbnail_DroppedWhenImageDeleted() throws Exception {
+        ByteArrayOutputStream original = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB), "jpg", original);
+
+        RestTemplate mockRestTemplate = mock(RestTemplate.class);
+        when(mockRestTemplate.execute(eq(LINK), eq(HttpMethod.GET), any(), ArgumentMatchers.<ResponseExtractor<Object>>any()))
+                .thenAnswer(invocation -> ((ResponseExtractor<?>) invocation.getArgument(3))
+                        .extractData(new MockClientHttpResponse(original.toByteArray(), HttpStatus.OK)));
+        ImageMetadataCache metadataCache = new ImageMetadataCache();
+        metadataCache.put(new ImgurImage("image123", null, null, null, "image/jpeg", null, null, null, "delete123", LINK));
+        ThumbnailService thumbnailService = new ThumbnailService(mockRestTemplate, imageService(), metadataCache);
+        ThumbnailService.Thumbnail small = thumbnailService.getThumbnail("image123", 160, "access_token_123");
+        ThumbnailService.Thumbnail large = thumbnailService.getThumbnail("image123", 1024, "access_token_123");
+
+        // deleted by its deletehash, every size is made again on the next request
+        metadataCache.invalidate("delete123");
+
+        assertNotSame(small, thumbnailService.getThumbnail("image123", 160, "access_token_123"));
+        assertNotSame(large, thumbnailService.getThumbnail("image123", 1024, "access_token_123"));
+        verify(mockRestTemplate, times(4)).execute(eq(LINK), eq(HttpMethod.GET), any(), ArgumentMatchers.<ResponseExtractor<Object>>any());
+    }
+
+    private static ImageService imageService() {
+        ImageService mockImageService = mock(ImageService.class);
+        when(mockImageService.getImage("image123", "access_token_123")).thenReturn(Map.of("id", "image123", "type", "image/jpeg", "link", LINK));
+        return mockImageService;
+    }
+}
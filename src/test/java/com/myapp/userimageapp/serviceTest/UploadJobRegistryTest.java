@@ -0,0 +1,70 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+import com.myapp.userimageapp.model.UploadJobStatus;
+import com.myapp.userimageapp.model.UploadJobStatus.State;
+import com.myapp.userimageapp.service.UploadJobRegistry;
+
+public class UploadJobRegistryTest {
+
+    @Test
+    public void testJob_StateAndProgress() {
+        UploadJobRegistry registry = new UploadJobRegistry();
+        UploadJobRegistry.Job job = registry.start("john_summers", null, "photo.png", 100);
+        assertEquals(State.QUEUED, registry.find("john_summers", job.getJobId()).state());
+
+        job.uploading();
+        job.bytesSent(100);
+        UploadJobStatus status = registry.find("john_summers", job.getJobId());
+        assertEquals(State.UPLOADING, status.state());
+        assertEquals(100, status.bytesSent());
+
+        job.done("https://i.imgur.com/image123.png");
+        status = registry.find("john_summers", job.getJobId());
+        assertEquals(State.DONE, status.state());
+        assertEquals("https://i.imgur.com/image123.png", status.link());
+    }
+
+    @Test
+    public void testFind_OnlyForOwner() {
+        UploadJobRegistry registry = new UploadJobRegistry();
+        UploadJobRegistry.Job job = registry.start("john_summers", "job-1", "photo.png", 100);
+
+        assertNotNull(registry.find("john_summers", "job-1"));
+        assertNull(registry.find("other_user", "job-1"));
+        assertEquals(1, registry.findByUser("john_summers").size());
+        assertEquals(0, registry.findByUser("other_user").size());
+        job.failed("Imgur upload failed");
+        assertEquals("Imgur upload failed", registry.find("john_summers", "job-1").error());
+    }
+
+    @Test
+    public void testFinishedJobs_ExpireSeparately() {
+        // running jobs are kept, finished ones are dropped right away
+        UploadJobRegistry registry = new UploadJobRegistry(1000, 3600, 0);
+        UploadJobRegistry.Job running = registry.start("john_summers", "running", "a.png", 100);
+        UploadJobRegistry.Job finished = registry.start("john_summers", "finished", "b.png", 100);
+
+        finished.done("https://i.imgur.com/b.png");
+
+        assertNotNull(registry.find("john_summers", running.getJobId()));
+        assertNull(registry.find("john_summers", finished.getJobId()));
+    }
+
+    @Test
+    public void testStart_KeepsStateOfKnownJob() {
+        UploadJobRegistry registry = new UploadJobRegistry();
+        UploadJobRegistry.Job job = registry.start("john_summers", "job-1", "photo.png", 100);
+        job.done("https://i.imgur.com/image123.png");
+
+        // registering the same job again (late submit, or a worker) doesn't put it back in the queue
+        assertSame(job, registry.start("john_summers", "job-1", "photo.png", 100));
+        assertEquals(State.DONE, registry.find("john_summers", "job-1").state());
+    }
+}
@@ -0,0 +1,83 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.myapp.userimageapp.model.ImgurImage;
+import com.myapp.userimageapp.service.UserImagesCache;
+
+public class UserImagesCacheTest {
+
+    @Test
+    public void testRefresh_ChangesDuringReloadAreKept() throws Exception {
+        ImgurImage old = image("old");
+        ImgurImage uploaded = image("uploaded");
+        UserImagesCache cache = new UserImagesCache(100, 0, 1800, 1);
+        cache.get("access_token_123", token -> List.of(old));
+        Thread.sleep(5);
+
+        // the background reload answers with a snapshot taken before the upload and the delete below
+        CountDownLatch reloading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch reloaded = new CountDownLatch(1);
+        cache.get("access_token_123", token -> {
+            reloading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            reloaded.countDown();
+            return List.of(old);
+        });
+        assertTrue(reloading.await(5, TimeUnit.SECONDS));
+
+        cache.addImage("access_token_123", uploaded);
+        cache.removeImage("access_token_123", "old");
+        release.countDown();
+        assertTrue(reloaded.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+
+        assertEquals(List.of(uploaded), cache.get("access_token_123", token -> List.of()));
+        cache.shutdown();
+    }
+
+    @Test
+    public void testGet_ChangesDuringMissLoadAreKept() throws Exception {
+        ImgurImage old = image("old");
+        ImgurImage uploaded = image("uploaded");
+        UserImagesCache cache = new UserImagesCache(100, 60, 1800, 1);
+
+        // the first load answers with a snapshot taken before the upload and the delete below
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread miss = Thread.ofVirtual().start(() -> cache.get("access_token_123", token -> {
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return List.of(old);
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        cache.addImage("access_token_123", uploaded);
+        cache.removeImage("access_token_123", "old");
+        release.countDown();
+        miss.join(5000);
+
+        assertEquals(List.of(uploaded), cache.get("access_token_123", token -> List.of()));
+        cache.shutdown();
+    }
+
+    private static ImgurImage image(String id) {
+        return new ImgurImage(id, null, null, null, "image/png", null, null, null, "hash_" + id, "https://i.imgur.com/" + id + ".png");
+    }
+}
@@ -5,20 +5,26 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
@@ -26,10 +32,16 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.web.client.RestTemplate;
 
+import com.myapp.userimageapp.model.BulkRegistrationResult;
 import com.myapp.userimageapp.model.UserModel;
+import com.myapp.userimageapp.model.UserRegistration;
+import com.myapp.userimageapp.model.UsernameEntry;
 import com.myapp.userimageapp.repository.UserRepository;
+import com.myapp.userimageapp.security.PasswordHasher;
 import com.myapp.userimageapp.service.ImageService;
+import com.myapp.userimageapp.service.UserCache;
 import com.myapp.userimageapp.service.UserService;
+import com.myapp.userimageapp.service.UsernameFilter;
 
 @SpringBootTest
 public class UserServiceTest {
@@ -40,6 +52,15 @@ public class UserServiceTest {
     @Mock
     private RestTemplate restTemplate;
 
+    @Spy
+    private PasswordHasher passwordHasher = new PasswordHasher();
+
+    @Spy
+    private UserCache userCache = new UserCache();
+
+    @Spy
+    private UsernameFilter usernameFilter = new UsernameFilter(1000, 0.01);
+
     @InjectMocks
     private UserService userService;
 
@@ -124,6 +145,26 @@ public class UserServiceTest {
         verify(userRepo, times(1)).findByUsername(username);
     }
 
+    @Test
+    public void testAuthenticateUser_RehashesLegacyPassword() {
+        String username = "john_summers";
+        String password = "john@1234";
+
+        // Hash stored before algorithm prefixes were used
+        UserModel user = new UserModel();
+        user.setUsername(username);
+        user.setPassword(passwordEncoder.encode(password));
+        when(userRepo.findByUsername(username)).thenReturn(Optional.of(user));
+
+        UserModel authenticatedUser = userService.authenticateUser(username, password);
+
+        // Stored again with the configured algorithm and still valid
+        assertNotNull(authenticatedUser);
+        assertTrue(authenticatedUser.getPassword().startsWith("{bcrypt}"));
+        assertNotNull(userService.authenticateUser(username, password));
+        verify(userRepo, times(1)).save(user);
+    }
+
     @Test
     public void testAuthenticateUser_Failure() {
         String username = "john_summers";
@@ -163,4 +204,99 @@ public class UserServiceTest {
         // Verify that findByUsername was called once
         verify(userRepo, times(1)).findByUsername(username);
     }
+
+    @Test
+    public void testGetUserInfo_CachesUser() {
+        String username = "john_summers";
+
+        UserModel user = new UserModel();
+        user.setUsername(username);
+        when(userRepo.findByUsername(username)).thenReturn(Optional.of(user));
+
+        // Second lookup and the duplicate check are answered from the cache
+        assertEquals(user, userService.getUserInfo(username));
+        assertEquals(user, userService.getUserInfo(username));
+        assertTrue(userService.isUserAlreadyRegistered(username));
+
+        verify(userRepo, times(1)).findByUsername(username);
+        verify(userRepo, times(0)).existsByUsername(username);
+    }
+
+    @Test
+    public void testGetUserInfo_CallerChangesDontReachCache() {
+        String username = "john_summers";
+        when(userRepo.findByUsername(username)).thenReturn(Optional.of(new UserModel("John", "Summers", username)));
+
+        userService.getUserInfo(username).setFirstname("Changed");
+
+        assertEquals("John", userService.getUserInfo(username).getFirstname());
+        verify(userRepo, times(1)).findByUsername(username);
+    }
+
+    @Test
+    public void testUsernameFilter_ReloadPicksUpUsersFromOtherInstances() {
+        String username = "registered_elsewhere";
+        when(userRepo.findUsernamesAfter(eq(0L), any(Limit.class)))
+                .thenReturn(List.of(new UsernameEntry(1L, "john_summers")))
+                .thenReturn(List.of(new UsernameEntry(1L, "john_summers"), new UsernameEntry(51L, username)));
+        when(userRepo.findByUsername(username)).thenReturn(Optional.of(new UserModel("Jane", "Summers", username)));
+        userService.loadUsernameFilter();
+
+        // registered on another instance after this one loaded its filter
+        assertNull(userService.getUserInfo(username));
+        when(userRepo.existsByUsername(username)).thenReturn(true);
+        assertTrue(userService.isUserAlreadyRegistered(username));
+
+        userService.reloadUsernameFilter();
+        assertNotNull(userService.getUserInfo(username));
+    }
+
+    @Test
+    public void testUsernameFilter_ReloadReadsOnlyRecentIds() {
+        when(userRepo.findUsernamesAfter(anyLong(), any(Limit.class))).thenReturn(List.of());
+        when(userRepo.findUsernamesAfter(eq(0L), any(Limit.class))).thenReturn(List.of(new UsernameEntry(5000L, "john_summers")));
+        userService.loadUsernameFilter();
+
+        userService.reloadUsernameFilter();
+
+        // the last seen id less the overlap for ids handed out in blocks, not the whole table again
+        verify(userRepo).findUsernamesAfter(eq(4000L), any(Limit.class));
+    }
+
+    @Test
+    public void testAuthenticateUser_RegisteredElsewhereBeforeReload() {
+        String username = "registered_elsewhere";
+        String password = "jane@1234";
+        UserModel user = new UserModel("Jane", "Summers", username);
+        user.setPassword(passwordEncoder.encode(password));
+        when(userRepo.findUsernamesAfter(anyLong(), any(Limit.class))).thenReturn(List.of());
+        when(userRepo.findByUsername(username)).thenReturn(Optional.of(user));
+        userService.loadUsernameFilter();
+
+        // the filter says no, login still finds the user and the lookups after it don't need a reload
+        assertNotNull(userService.authenticateUser(username, password));
+        assertNotNull(userService.getUserInfo(username));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testRegisterUsers_SkipsExistingAndRepeatedUsernames() {
+        when(userRepo.findExistingUsernames(anyCollection())).thenReturn(List.of("taken_user"));
+
+        BulkRegistrationResult result = userService.registerUsers(List.of(
+                new UserRegistration("John", "Summers", "john_summers", "john@1234"),
+                new UserRegistration("Taken", "User", "taken_user", "taken@1234"),
+                new UserRegistration("John", "Again", "john_summers", "john@5678"),
+                new UserRegistration("Jane", "Summers", "jane_summers", "jane@1234")));
+
+        assertEquals(2, result.registered());
+        assertEquals(List.of("taken_user", "john_summers"), result.skipped());
+
+        // One query for the duplicates and one saveAll for the new users
+        ArgumentCaptor<List<UserModel>> captor = ArgumentCaptor.captor();
+        verify(userRepo, times(1)).findExistingUsernames(anyCollection());
+        verify(userRepo, times(1)).saveAll(captor.capture());
+        assertEquals(2, captor.getValue().size());
+        assertTrue(passwordEncoder.matches("jane@1234", captor.getValue().get(1).getPassword().substring("{bcrypt}".length())));
+    }
 }
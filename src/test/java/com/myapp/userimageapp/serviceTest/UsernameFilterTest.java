@@ -0,0 +1,48 @@
+package com.myapp.userimageapp.serviceTest;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.myapp.userimageapp.service.UsernameFilter;
+
+public class UsernameFilterTest {
+
+    @Test
+    public void testMightContain_MaybeUntilLoaded() {
+        UsernameFilter filter = new UsernameFilter(1000, 0.01);
+
+        assertTrue(filter.mightContain("unknown_user"));
+    }
+
+    @Test
+    public void testMightContain_NoFalseNegatives() {
+        UsernameFilter filter = new UsernameFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("user" + i);
+        }
+        filter.markLoaded();
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain("user" + i));
+        }
+    }
+
+    @Test
+    public void testMightContain_RulesOutMostUnknownUsers() {
+        UsernameFilter filter = new UsernameFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("user" + i);
+        }
+        filter.markLoaded();
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("stranger" + i)) {
+                falsePositives++;
+            }
+        }
+        // configured for 1%, allow some slack
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+    }
+}